@@ -0,0 +1,81 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapGenerator;
+import org.gli58.game.util.MapIO;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole games on a large grid whose lines are shuffled, so cities in file order have
+ * their neighbors anywhere in memory, against the same map renumbered breadth-first
+ * and in reverse Cuthill-McKee order. Renumbering is part of building the game and
+ * not measured.
+ *
+ * The moves counter is reported per second next to the time per game. Cache misses
+ * per move come with the perf profiler on Linux, e.g.
+ * java -jar benchmarks/target/benchmarks.jar CityOrderBenchmark -prof perfnorm
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class CityOrderBenchmark {
+
+    @Param({"1000"})
+    public int gridSize;
+
+    @Param({"100000"})
+    public int monsterCount;
+
+    @Param({"50"})
+    public int minMoves;
+
+    @Param({"VIRTUAL_CLOCK", "LOCKSTEP"})
+    public Engine engine;
+
+    @Param({"FILE", "BFS", "REVERSE_CUTHILL_MCKEE"})
+    public CityOrder cityOrder;
+
+    private CityGraph graph;
+    private Game game;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long moves;
+    }
+
+    @Setup(Level.Trial)
+    public void readMap() {
+        List<String> lines = MapGenerator.grid(gridSize, gridSize);
+        Collections.shuffle(lines, new Random(17));
+        graph = MapIO.getCityGraphFromStream(lines.stream());
+    }
+
+    //a game changes the map it is played on
+    @Setup(Level.Invocation)
+    public void newGame() {
+        game = new Game.Builder(graph.copy(), monsterCount)
+                .minMoves(minMoves)
+                .threads(4)
+                .engine(engine)
+                .cityOrder(cityOrder)
+                .seed(3)
+                .durationProvider(monster -> 0)
+                .eventHandler(event -> {})
+                .build();
+    }
+
+    @Benchmark
+    public GameResult startGame(Counters counters) {
+        GameResult result = game.startGame();
+        counters.moves += result.getMoveCount();
+        return result;
+    }
+}
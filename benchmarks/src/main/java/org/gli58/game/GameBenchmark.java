@@ -0,0 +1,123 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Whole game runs through Game.startGame() on map.txt.
+ *
+ * Monsters do not stay in a city between moves (residence duration of 0), so the
+ * result measures how fast the engine computes moves rather than how long the
+ * monsters sleep. The scheduledMoves counter is the number of times monsters were
+ * scheduled to move, including retries with the default retry policy, and is reported
+ * per second next to the time per game, as are lock failures and retries.
+ *
+ * Retry policies other than the default can be compared with
+ * -p retry=RESIDENCE,SPIN,BACKOFF,YIELD, and the state kept off the heap with
+ * -p storage=HEAP,OFF_HEAP
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GameBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int threads;
+
+    @Param({"100", "1000"})
+    public int monsterCount;
+
+    @Param({"1000"})
+    public int minMoves;
+
+    @Param({"REAL_TIME", "VIRTUAL_CLOCK", "LOCKSTEP"})
+    public Engine engine;
+
+    @Param({"LOCKING", "LOCK_FREE"})
+    public Occupancy occupancy;
+
+    @Param({"RESIDENCE"})
+    public String retry;
+
+    @Param({"HEAP"})
+    public Storage storage;
+
+    private List<String> lines;
+    private Game game;
+    private Counters counters;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long scheduledMoves;
+        public long lockFailures;
+        public long retries;
+    }
+
+    @Setup(Level.Trial)
+    public void readMap() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                GameBenchmark.class.getClassLoader().getResourceAsStream("map.txt"), StandardCharsets.UTF_8))) {
+            lines = reader.lines().collect(toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //a game can only be played once, and it changes the cities it is played on
+    @Setup(Level.Invocation)
+    public void newGame(Counters counters) {
+        this.counters = counters;
+        Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+
+        game = new Game.Builder(cities, monsterCount)
+                .minMoves(minMoves)
+                .threads(threads)
+                .engine(engine)
+                .occupancy(occupancy)
+                .storage(storage)
+                .retryPolicy(retryPolicy(retry))
+                .durationProvider(monster -> {
+                    counters.scheduledMoves++;
+                    return 0;
+                })
+                .eventHandler(event -> {})
+                .build();
+    }
+
+    private static RetryPolicy retryPolicy(String retry) {
+        switch (retry) {
+            case "RESIDENCE":
+                return null;
+            case "SPIN":
+                return new SpinRetryPolicy(16, new YieldRetryPolicy());
+            case "BACKOFF":
+                return new ExponentialBackoffRetryPolicy(1, 64);
+            case "YIELD":
+                return new YieldRetryPolicy();
+        }
+        throw new IllegalArgumentException("unknown retry policy " + retry);
+    }
+
+    @Benchmark
+    public Game startGame() {
+        game.startGame();
+        counters.lockFailures += game.getLockFailureCount();
+        counters.retries += game.getRetryCount();
+        return game;
+    }
+}
@@ -0,0 +1,128 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapGenerator;
+import org.gli58.game.util.MapIO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single step of a monster, i.e. one attempt to move to a neighboring city.
+ *
+ * Monsters are driven directly by the benchmark threads instead of the game's
+ * scheduler, and each thread owns its own slice of monsters so no monster runs
+ * concurrently with itself (same guarantee the scheduler gives). Contention comes
+ * from monsters of different threads competing for the same cities, so it goes up
+ * with the thread count and the monster density. The occupancy parameter compares
+ * claiming cities with locks against claiming them with compare-and-set.
+ *
+ * Monsters fight and get killed as the benchmark runs, and a fifth or so of the steps
+ * end in a fight at these densities, so a world only lasts a few thousand steps.
+ * Each iteration is therefore a batch of STEPS steps per thread on a world rebuilt
+ * before it, outside the measured time, and a step goes to the next owned monster
+ * that is still active, so every step measured is a real attempt to move. The result
+ * is the time of a batch.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 200, batchSize = MonsterStepBenchmark.STEPS)
+@Measurement(iterations = 200, batchSize = MonsterStepBenchmark.STEPS)
+@Threads(4)
+@Fork(1)
+public class MonsterStepBenchmark {
+
+    //steps per thread in a batch, few enough that most monsters are still active at its end
+    static final int STEPS = 100;
+
+    private static final byte ACTIVE = (byte) Monster.Status.ACTIVE.ordinal();
+
+    @Param({"100"})
+    public int mapSide;
+
+    @Param({"500", "2000"})
+    public int monsterCount;
+
+    @Param({"LOCKING", "LOCK_FREE"})
+    public Occupancy occupancy;
+
+    Game game;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Set<City> cities = MapIO.getCitiesFromStream(MapGenerator.grid(mapSide, mapSide).stream());
+
+        game = new Game.Builder(cities, monsterCount)
+                .minMoves(Integer.MAX_VALUE)
+                .occupancy(occupancy)
+                .durationProvider(monster -> 0)
+                .scheduler(new DiscardingScheduler())
+                .eventHandler(event -> {})
+                .build();
+
+        game.prepareMonsters();
+        for (int i = 0; i < monsterCount; i++) {
+            //first run only places the monster. keep it out of the measurement
+            game.runMonster(i);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class OwnedMonsters {
+        //monster indexes
+        int[] monsters;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setup(MonsterStepBenchmark benchmark, ThreadParams threadParams) {
+            int threads = threadParams.getThreadCount();
+            int index = threadParams.getThreadIndex();
+
+            int count = 0;
+            for (int i = index; i < benchmark.monsterCount; i += threads) {
+                count++;
+            }
+            monsters = new int[count];
+            for (int i = index, j = 0; i < benchmark.monsterCount; i += threads, j++) {
+                monsters[j] = i;
+            }
+            next = 0;
+        }
+
+        int next() {
+            int monster = monsters[next];
+            next = next + 1 == monsters.length ? 0 : next + 1;
+            return monster;
+        }
+    }
+
+    @Benchmark
+    public void step(OwnedMonsters owned) {
+        GameState state = game.getState();
+        int monster = owned.next();
+        //skip the monsters that stopped, unless none of them is left
+        for (int i = 1; i < owned.monsters.length && state.getMonsterStatus(monster) != ACTIVE; i++) {
+            monster = owned.next();
+        }
+        game.runMonster(monster);
+    }
+
+    /**
+     * Scheduler that drops whatever the monsters schedule. The benchmark threads
+     * do the scheduling instead.
+     */
+    static class DiscardingScheduler extends ScheduledThreadPoolExecutor {
+        DiscardingScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return null;
+        }
+    }
+}
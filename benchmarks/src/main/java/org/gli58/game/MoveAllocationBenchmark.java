@@ -0,0 +1,60 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapGenerator;
+import org.gli58.game.util.MapIO;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Garbage a move makes once a game is under way: a monster that never gets tired
+ * wanders a grid on the virtual clock, and each invocation wakes it up for its next
+ * move, which schedules the one after. There is only the one monster, so it never
+ * fights or gets trapped and the game never ends. gc.alloc.rate.norm of the GC
+ * profiler is the bytes allocated per move, which is to stay at 0.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoveAllocationBenchmark {
+
+    @Param({"100"})
+    public int mapSide;
+
+    @Param({"LOCKING", "LOCK_FREE"})
+    public Occupancy occupancy;
+
+    @Param({"HEAP", "OFF_HEAP"})
+    public Storage storage;
+
+    VirtualClockMoveScheduler scheduler;
+
+    //once, as the GC profiler counts what setups allocate too. the monster keeps moving
+    @Setup(Level.Trial)
+    public void setup() {
+        Set<City> cities = MapIO.getCitiesFromStream(MapGenerator.grid(mapSide, mapSide).stream());
+
+        Game game = new Game.Builder(cities, 1)
+                .minMoves(Integer.MAX_VALUE)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .occupancy(occupancy)
+                .storage(storage)
+                .seed(1)
+                .eventHandler(event -> {})
+                .build();
+
+        game.prepareMonsters();
+        //first run only places the monster and schedules its first move
+        game.runMonster(0);
+        scheduler = (VirtualClockMoveScheduler) game.getScheduler();
+    }
+
+    @Benchmark
+    public boolean move() {
+        return scheduler.runNext();
+    }
+}
@@ -0,0 +1,91 @@
+package org.gli58.game;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling overhead of the real-time engine: every monster wakes up a number of
+ * times, each time after a random stay of up to maxDelayMillis, and does nothing
+ * else but schedule its next wake-up. One invocation is all wake-ups of all monsters,
+ * so the time of an invocation is mostly the time it takes to keep that many wake-ups
+ * pending, plus the longest chain of stays.
+ *
+ * EXECUTOR is the ScheduledThreadPoolExecutor the game uses by default, TIMING_WHEEL
+ * the per-thread hashed timing wheels.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class MoveSchedulerBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int monsterCount;
+
+    @Param({"EXECUTOR", "TIMING_WHEEL"})
+    public Scheduling scheduling;
+
+    @Param({"4"})
+    public int threads;
+
+    @Param({"10"})
+    public int wakeUps;
+
+    @Param({"20"})
+    public int maxDelayMillis;
+
+    MoveScheduler scheduler;
+    CountDownLatch done;
+
+    //random stream and wake-ups left of each monster, by index
+    SplittableRandom[] randoms;
+    int[] remaining;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        scheduler = scheduling == Scheduling.TIMING_WHEEL
+                ? new TimingWheelMoveScheduler(threads, this::wakeUp)
+                : new ExecutorMoveScheduler(Executors.newScheduledThreadPool(threads), this::wakeUp);
+
+        done = new CountDownLatch(monsterCount);
+        randoms = new SplittableRandom[monsterCount];
+        remaining = new int[monsterCount];
+        for (int i = 0; i < monsterCount; i++) {
+            randoms[i] = new SplittableRandom(i + 1);
+            remaining[i] = wakeUps;
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public void wakeUps() throws InterruptedException {
+        for (int i = 0; i < monsterCount; i++) {
+            scheduleNext(i);
+        }
+        scheduler.run();
+        done.await();
+    }
+
+    private void scheduleNext(int monster) {
+        scheduler.schedule(monster, randoms[monster].nextInt(maxDelayMillis + 1));
+    }
+
+    //a monster only schedules itself again until it woke up often enough
+    private void wakeUp(int monster) {
+        if (--remaining[monster] > 0) {
+            scheduleNext(monster);
+        } else {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.gli58.game.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic maps in the same text format as map.txt, so benchmarks
+ * can run against worlds much larger than the one shipped with the game.
+ *
+ * Cities are laid out on a width x height grid and connected to their
+ * north/south/east/west neighbors. City names only use letters, in line with
+ * the assumption that city names never contain numeric characters.
+ */
+public class MapGenerator {
+
+    private MapGenerator() {} //prevents direct instantiation by client
+
+    public static List<String> grid(int width, int height) {
+        List<String> lines = new ArrayList<>(width * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                lines.add(line(width, height, x, y));
+            }
+        }
+        return lines;
+    }
+
+    public static Path writeGrid(int width, int height, Path file) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    writer.write(line(width, height, x, y));
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write generated map to " + file, e);
+        }
+        return file;
+    }
+
+    //same neighbor order as MapIO writes, so a generated map survives a round trip unchanged
+    private static String line(int width, int height, int x, int y) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(name(y * width + x));
+        if (y > 0) {
+            sb.append(" north=").append(name((y - 1) * width + x));
+        }
+        if (y < height - 1) {
+            sb.append(" south=").append(name((y + 1) * width + x));
+        }
+        if (x < width - 1) {
+            sb.append(" east=").append(name(y * width + x + 1));
+        }
+        if (x > 0) {
+            sb.append(" west=").append(name(y * width + x - 1));
+        }
+        return sb.toString();
+    }
+
+    static String name(int index) {
+        StringBuilder sb = new StringBuilder(8);
+        int i = index;
+        do {
+            sb.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        sb.reverse();
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+}
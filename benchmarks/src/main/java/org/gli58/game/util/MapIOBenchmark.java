@@ -0,0 +1,136 @@
+package org.gli58.game.util;
+
+import org.gli58.game.City;
+import org.gli58.game.CityGraph;
+import org.gli58.game.Direction;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Parsing and writing maps through MapIO. Writing to a file compares a PrintWriter with
+ * the writer encoding chunks of cities into byte buffers, and with the lines of a map
+ * parsed from a file with one city in a hundred destroyed, copying the unchanged ones.
+ *
+ * mapSize "map.txt" uses the map shipped with the game, any other value is the
+ * side of a generated square grid, i.e. "1000" is a one million city world.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapIOBenchmark {
+
+    @Param({"map.txt", "300", "1000"})
+    public String mapSize;
+
+    private List<String> lines;
+    private Set<City> cities;
+    private Path file;
+
+    private Path sourceFile;
+    private Set<City> damagedCities;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if ("map.txt".equals(mapSize)) {
+            lines = readResource(mapSize);
+        } else {
+            int side = Integer.parseInt(mapSize);
+            lines = MapGenerator.grid(side, side);
+        }
+        cities = MapIO.getCitiesFromStream(lines.stream());
+        file = Files.createTempFile("map", ".txt");
+
+        //the same map parsed from a file, with one city in a hundred destroyed
+        sourceFile = Files.createTempFile("source", ".txt");
+        Files.write(sourceFile, lines);
+        CityGraph graph = MapIO.getCityGraphFromFile(sourceFile);
+        for (int id = 0; id < graph.size(); id += 100) {
+            for (Direction direction : Direction.values()) {
+                int neighbor = graph.getNeighbor(id, direction);
+                if (neighbor != CityGraph.NO_CITY) {
+                    graph.removeNeighbor(neighbor, Direction.opposite(direction));
+                }
+            }
+            graph.removeCity(id);
+        }
+        damagedCities = graph.getCities();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(sourceFile);
+    }
+
+    @Benchmark
+    public Set<City> getCitiesFromStream() {
+        return MapIO.getCitiesFromStream(lines.stream());
+    }
+
+    @Benchmark
+    public void writeCities() {
+        MapIO.writeCities(cities, new PrintWriter(new DiscardingWriter()));
+    }
+
+    @Benchmark
+    public void writeCitiesToFileWithPrintWriter() throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            MapIO.writeCities(cities, writer);
+        }
+    }
+
+    @Benchmark
+    public void writeCitiesToFile() {
+        MapIO.writeCitiesToFile(cities, file, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public void writeDamagedCitiesToFile() {
+        MapIO.writeCitiesToFile(damagedCities, file, Runtime.getRuntime().availableProcessors());
+    }
+
+    //resources inside the benchmark jar cannot be opened as a Path, so read them as a stream
+    private static List<String> readResource(String resourcePath) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                MapIOBenchmark.class.getClassLoader().getResourceAsStream(resourcePath), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static class DiscardingWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
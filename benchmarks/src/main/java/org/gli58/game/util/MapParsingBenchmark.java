@@ -0,0 +1,102 @@
+package org.gli58.game.util;
+
+import org.gli58.game.CityGraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Parse rate of a map file, in MB/s, reading it as lines of Strings against scanning
+ * the memory-mapped bytes, on one thread and in chunks on all processors, and loading
+ * the binary image of the same map (its rate is in MB of the image).
+ *
+ * mapSize "map.txt" uses the map shipped with the game, any other value is the side
+ * of a generated square grid, written to a temporary file. The megabytes counter is
+ * the parse rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapParsingBenchmark {
+
+    @Param({"map.txt", "1000"})
+    public String mapSize;
+
+    private Path file;
+    private long fileSize;
+
+    private Path image;
+    private long imageSize;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Rate {
+        public double megabytes;
+    }
+
+    @Setup(Level.Trial)
+    public void writeMap() throws IOException {
+        file = Files.createTempFile("map", ".txt");
+        if ("map.txt".equals(mapSize)) {
+            try (InputStream in = MapParsingBenchmark.class.getClassLoader().getResourceAsStream(mapSize)) {
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else {
+            int side = Integer.parseInt(mapSize);
+            MapGenerator.writeGrid(side, side, file);
+        }
+        fileSize = Files.size(file);
+
+        image = Files.createTempFile("map", ".img");
+        MapIO.writeCityGraphImage(MapIO.getCityGraphFromFile(file), image);
+        imageSize = Files.size(image);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteMap() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(image);
+    }
+
+    @Benchmark
+    public CityGraph parseLines(Rate rate) {
+        try (Stream<String> lines = Files.lines(file)) {
+            CityGraph graph = MapIO.getCityGraphFromStream(lines);
+            rate.megabytes += fileSize / 1e6;
+            return graph;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Benchmark
+    public CityGraph parseMappedFile(Rate rate) {
+        CityGraph graph = MapIO.getCityGraphFromFile(file, 1);
+        rate.megabytes += fileSize / 1e6;
+        return graph;
+    }
+
+    @Benchmark
+    public CityGraph parseMappedFileInParallel(Rate rate) {
+        CityGraph graph = MapIO.getCityGraphFromFile(file, Runtime.getRuntime().availableProcessors());
+        rate.megabytes += fileSize / 1e6;
+        return graph;
+    }
+
+    @Benchmark
+    public CityGraph loadImage(Rate rate) {
+        CityGraph graph = MapIO.getCityGraphFromImage(image);
+        rate.megabytes += imageSize / 1e6;
+        return graph;
+    }
+}
@@ -0,0 +1,102 @@
+package org.gli58.game.util;
+
+import org.gli58.game.CityGraph;
+import org.gli58.game.MapSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to parse a generated square grid of mapSize * mapSize cities against the number of
+ * threads, and the part of it spent building the graph from the builders of the chunks:
+ * in parallel with CityGraph.Builder.build(List, ...), and merged on one thread with
+ * addAll then build() for comparison.
+ *
+ * The chunks of buildGraph and mergeSerially are parsed once per trial, one per thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelMapParsingBenchmark {
+
+    @Param({"1000"})
+    public int mapSize;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Path file;
+    private MapSource source;
+    private List<CityGraph.Builder> chunks;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void writeMap() throws IOException {
+        file = Files.createTempFile("map", ".txt");
+        MapGenerator.writeGrid(mapSize, mapSize, file);
+        source = new MapSource(file);
+        chunks = parseChunks(file, threads);
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteMap() throws IOException {
+        executor.shutdownNow();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public CityGraph parse() {
+        return MapIO.getCityGraphFromFile(file, threads);
+    }
+
+    @Benchmark
+    public CityGraph buildGraph() {
+        return CityGraph.Builder.build(chunks, source, executor, threads);
+    }
+
+    @Benchmark
+    public CityGraph mergeSerially() {
+        CityGraph.Builder builder = new CityGraph.Builder();
+        builder.source(source);
+        for (CityGraph.Builder chunk : chunks) {
+            builder.addAll(chunk);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Splits the file at line breaks into about equal chunks, parsed into builders of their own.
+     */
+    private static List<CityGraph.Builder> parseChunks(Path file, int count) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<CityGraph.Builder> chunks = new ArrayList<>(count);
+            int start = 0;
+            for (int i = 1; i <= count; i++) {
+                int end = i == count ? buffer.limit() : Math.max(start, (int) ((long) buffer.limit() * i / count));
+                while (end < buffer.limit() && buffer.get(end - 1) != '\n') {
+                    end++;
+                }
+                CityGraph.Builder builder = new CityGraph.Builder();
+                MappedMapParser.parseLines(builder, buffer, start, end, 1, 0);
+                chunks.add(builder);
+                start = end;
+            }
+            return chunks;
+        }
+    }
+}
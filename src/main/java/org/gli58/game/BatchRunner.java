@@ -0,0 +1,327 @@
+package org.gli58.game;
+
+import org.gli58.game.exceptions.MapSavingToFileException;
+import org.gli58.game.util.MapIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays many seeded games on one map and writes the distributions of their outcomes
+ * as CSV: for each point of the parameter grid (monster count and minimum moves), the
+ * share of monsters surviving, the share of cities destroyed, how many cities are
+ * destroyed per thousand moves, and the number of moves, over all seeds.
+ *
+ * The map is loaded once; each game plays on a copy of its roads. Games are played
+ * whole on a pool of threads, one game per thread, by an engine that doesn't wait
+ * for residence durations (Engine.VIRTUAL_CLOCK by default, or Engine.LOCKSTEP on a
+ * single thread). A row is written as soon as the games of its grid point are done:
+ *
+ * java -cp coding-exercise.jar org.gli58.game.BatchRunner map.txt 100,500,1000 1000 stats.csv
+ */
+public final class BatchRunner {
+    private static Logger logger = LoggerFactory.getLogger(BatchRunner.class);
+
+    private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+    static final String HEADER = "monsters,min_moves,games," + String.join(",",
+            columns("survival"), columns("destroyed"), columns("destroyed_per_1k_moves"), columns("moves"));
+
+    private final CityGraph graph;
+    //cities on the map, which the share of destroyed ones is of
+    private final int cityCount;
+    private final int[] monsterCounts;
+    private final int[] minMoves;
+    private final int seedCount;
+    private final long firstSeed;
+    private final Engine engine;
+    private final int parallelism;
+
+    private BatchRunner(Builder builder) {
+        if (builder.graph == null || citiesOnMap(builder.graph) == 0) {
+            throw new IllegalArgumentException("map is empty");
+        }
+        if (builder.monsterCounts.length == 0 || Arrays.stream(builder.monsterCounts).anyMatch(count -> count < 1)) {
+            throw new IllegalArgumentException("monster counts need to be positive integers");
+        }
+        if (builder.minMoves.length == 0 || Arrays.stream(builder.minMoves).anyMatch(moves -> moves < 1)) {
+            throw new IllegalArgumentException("minimum moves need to be positive integers");
+        }
+        if (builder.seedCount < 1) {
+            throw new IllegalArgumentException("seed count needs to be positive integer");
+        }
+        if (builder.engine != Engine.VIRTUAL_CLOCK && builder.engine != Engine.LOCKSTEP) {
+            throw new IllegalArgumentException("batch runs are played by the virtual clock or the lockstep engine");
+        }
+        if (builder.parallelism < 1) {
+            throw new IllegalArgumentException("parallelism needs to be positive integer");
+        }
+
+        this.graph = builder.graph;
+        this.cityCount = citiesOnMap(graph);
+        this.monsterCounts = builder.monsterCounts;
+        this.minMoves = builder.minMoves;
+        this.seedCount = builder.seedCount;
+        this.firstSeed = builder.firstSeed;
+        this.engine = builder.engine;
+        this.parallelism = builder.parallelism;
+    }
+
+    private static int citiesOnMap(CityGraph graph) {
+        int count = 0;
+        for (int id = 0; id < graph.size(); id++) {
+            if (graph.isOnMap(id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Plays all games, seedCount per grid point, and writes the header and a row per
+     * grid point to out, in the order the grid points are done.
+     */
+    public void run(Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+        writer.println(HEADER);
+        writer.flush();
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "batch-" + THREAD_SEQUENCE.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Void>> games = new ArrayList<>();
+        try {
+            for (int monsterCount : monsterCounts) {
+                for (int moves : minMoves) {
+                    GridPoint point = new GridPoint(monsterCount, moves, seedCount);
+                    for (int i = 0; i < seedCount; i++) {
+                        final int seedIndex = i;
+                        games.add(CompletableFuture.runAsync(() -> {
+                            point.add(seedIndex, play(monsterCount, moves, firstSeed + seedIndex));
+                            if (point.gameDone()) {
+                                synchronized (writer) {
+                                    writer.println(point.toCsv());
+                                    writer.flush();
+                                }
+                            }
+                        }, pool));
+                    }
+                }
+            }
+            CompletableFuture.allOf(games.toArray(new CompletableFuture<?>[0])).join();
+
+        } catch (CompletionException e) {
+            //the other games are not waited for
+            games.forEach(game -> game.cancel(false));
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (writer.checkError()) {
+            throw new MapSavingToFileException("failed to write batch statistics", null);
+        }
+        logger.info("batch finished. {} games in {} ms", games.size(), System.currentTimeMillis() - start);
+    }
+
+    private GameResult play(int monsterCount, int moves, long seed) {
+        Game game = new Game.Builder(graph.copy(), monsterCount)
+                .minMoves(moves)
+                .engine(engine)
+                .threads(1)
+                .seed(seed)
+                .eventHandler(event -> {})
+                .build();
+        return game.startGame();
+    }
+
+    /**
+     * Outcomes of the games of one monster count and minimum moves, by seed. Each game
+     * adds to its own slot; the game done last sees all slots, as it counted down after
+     * the others added theirs.
+     */
+    private final class GridPoint {
+        private final int monsterCount;
+        private final int minMoves;
+        private final double[] survival;
+        private final double[] destroyed;
+        private final double[] destroyedPerKiloMove;
+        private final double[] moves;
+        private final AtomicInteger remaining;
+
+        GridPoint(int monsterCount, int minMoves, int games) {
+            this.monsterCount = monsterCount;
+            this.minMoves = minMoves;
+            this.survival = new double[games];
+            this.destroyed = new double[games];
+            this.destroyedPerKiloMove = new double[games];
+            this.moves = new double[games];
+            this.remaining = new AtomicInteger(games);
+        }
+
+        void add(int game, GameResult result) {
+            //errored monsters didn't survive the game, nor did they die in it
+            long survivors = result.getMonsterCount(Monster.Status.TIRED) + result.getMonsterCount(Monster.Status.TRAPPED)
+                    + result.getMonsterCount(Monster.Status.ACTIVE);
+            survival[game] = (double) survivors / monsterCount;
+            destroyed[game] = (double) result.getFightCount() / cityCount;
+            destroyedPerKiloMove[game] = result.getMoveCount() == 0 ? 0 : 1000.0 * result.getFightCount() / result.getMoveCount();
+            moves[game] = result.getMoveCount();
+        }
+
+        /**
+         * @return true for the last game of the grid point
+         */
+        boolean gameDone() {
+            return remaining.decrementAndGet() == 0;
+        }
+
+        String toCsv() {
+            return monsterCount + "," + minMoves + "," + survival.length + ","
+                    + distribution(survival) + "," + distribution(destroyed) + ","
+                    + distribution(destroyedPerKiloMove) + "," + distribution(moves);
+        }
+    }
+
+    private static String columns(String metric) {
+        return String.join(",", metric + "_mean", metric + "_stddev", metric + "_min",
+                metric + "_p10", metric + "_p50", metric + "_p90", metric + "_max");
+    }
+
+    /**
+     * @return mean, standard deviation, minimum, 10th, 50th and 90th percentile and maximum
+     */
+    static String distribution(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        double mean = 0;
+        for (double value : sorted) {
+            mean += value;
+        }
+        mean /= sorted.length;
+
+        double variance = 0;
+        for (double value : sorted) {
+            variance += (value - mean) * (value - mean);
+        }
+        double stddev = Math.sqrt(variance / sorted.length);
+
+        return String.format(Locale.ROOT, "%.6g,%.6g,%.6g,%.6g,%.6g,%.6g,%.6g",
+                mean, stddev, sorted[0],
+                percentile(sorted, 10), percentile(sorted, 50), percentile(sorted, 90),
+                sorted[sorted.length - 1]);
+    }
+
+    //nearest rank
+    private static double percentile(double[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    public static class Builder {
+        private final CityGraph graph;
+        private int[] monsterCounts = {};
+        private int[] minMoves = {10_000};
+        private int seedCount = 100;
+        private long firstSeed;
+        private Engine engine = Engine.VIRTUAL_CLOCK;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        public Builder(CityGraph graph) {
+            this.graph = graph;
+        }
+
+        Builder monsterCounts(int... monsterCounts) {
+            this.monsterCounts = monsterCounts;
+            return this;
+        }
+
+        Builder minMoves(int... minMoves) {
+            this.minMoves = minMoves;
+            return this;
+        }
+
+        //games per grid point, seeded firstSeed, firstSeed + 1, ...
+        Builder seeds(int seedCount) {
+            this.seedCount = seedCount;
+            return this;
+        }
+
+        Builder firstSeed(long firstSeed) {
+            this.firstSeed = firstSeed;
+            return this;
+        }
+
+        Builder engine(Engine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        //games played at the same time
+        Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public BatchRunner build() {
+            return new BatchRunner(this);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 4 || args.length > 6) {
+            System.err.println("usage: BatchRunner <map file or .img> <monster counts> <seeds> <csv file or -> [min moves] [engine]");
+            System.err.println("e.g.   BatchRunner map.txt 100,500,1000 1000 stats.csv 1000,10000 LOCKSTEP");
+            System.exit(2);
+        }
+
+        Path mapFile = Paths.get(args[0]);
+        CityGraph graph = args[0].endsWith(".img") ? MapIO.getCityGraphFromImage(mapFile) : MapIO.getCityGraphFromFile(mapFile);
+
+        Builder builder = new Builder(graph)
+                .monsterCounts(parseInts(args[1]))
+                .seeds(Integer.parseInt(args[2]));
+        if (args.length > 4) {
+            builder.minMoves(parseInts(args[4]));
+        }
+        if (args.length > 5) {
+            builder.engine(Engine.valueOf(args[5]));
+        }
+        BatchRunner runner = builder.build();
+
+        if (args[3].equals("-")) {
+            runner.run(new PrintWriter(System.out));
+            return;
+        }
+        try (Writer out = Files.newBufferedWriter(Paths.get(args[3]))) {
+            runner.run(out);
+        } catch (IOException e) {
+            throw new MapSavingToFileException("failed to write " + args[3], e);
+        }
+    }
+
+    private static int[] parseInts(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -0,0 +1,100 @@
+package org.gli58.game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Writes little endian values through one direct buffer, adding everything written
+ * to a CRC32, which finish() appends.
+ */
+class ChecksumWriter {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+
+    ChecksumWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    void putInt(int value) throws IOException {
+        ensureRemaining(4);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        ensureRemaining(8);
+        buffer.putLong(value);
+    }
+
+    void putInts(int[] values, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            ensureRemaining(4);
+            int length = Math.min(count - offset, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(values, offset, length);
+            buffer.position(buffer.position() + 4 * length);
+            offset += length;
+        }
+    }
+
+    void putByte(byte value) throws IOException {
+        ensureRemaining(1);
+        buffer.put(value);
+    }
+
+    void putBytes(byte[] values, int offset, int count) throws IOException {
+        int end = offset + count;
+        while (offset < end) {
+            ensureRemaining(1);
+            int length = Math.min(end - offset, buffer.remaining());
+            buffer.put(values, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the values, which are left with none remaining.
+     */
+    void put(ByteBuffer values) throws IOException {
+        while (values.hasRemaining()) {
+            ensureRemaining(1);
+            int length = Math.min(values.remaining(), buffer.remaining());
+            buffer.put(values.duplicate().limit(values.position() + length));
+            values.position(values.position() + length);
+        }
+    }
+
+    /**
+     * Writes what is buffered, followed by the checksum of everything written.
+     */
+    void finish() throws IOException {
+        drain();
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
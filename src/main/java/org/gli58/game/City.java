@@ -4,22 +4,28 @@ import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * City is immutable in terms of its name, but the neighbor data is mutable.
- * This way we easily have unique cities in the game and also easily update
- * the neighboring relations among them as game is played.
+ * A city on the map, as seen through the public API.
+ *
+ * The data of the city lives in its CityGraph, and City is only a view of one id
+ * in the graph. Changing the neighbors of a view changes the graph. Views are cheap
+ * and created on demand, so two views of the same city are equal but not identical.
+ *
+ * A city can also be created from its name alone. Such a city is not on any map
+ * and keeps its neighbors itself, so maps can still be built by hand and handed to
+ * Game.Builder, which turns them into a graph. Cities are identified by their names,
+ * so a standalone city also serves for looking up and comparing cities.
  *
  */
 public class City {
     private final String name;
 
-    public final Lock lock = new ReentrantLock();
+    private final CityGraph graph;
+    private final int id;
 
-    //eagerly initialize as majority of the cities should be connected anyway
-    private EnumMap<Direction, City> neighbors = new EnumMap<Direction, City>(Direction.class);
+    //neighbors of a standalone city, null for views
+    private final EnumMap<Direction, City> neighbors;
 
     public City(String name) {
         if (name == null || name.trim().length() == 0) {
@@ -27,14 +33,37 @@ public class City {
         }
 
         this.name = name.trim();
+        this.graph = null;
+        this.id = CityGraph.NO_CITY;
+        this.neighbors = new EnumMap<Direction, City>(Direction.class);
+    }
+
+    City(CityGraph graph, int id) {
+        this.name = graph.getName(id);
+        this.graph = graph;
+        this.id = id;
+        this.neighbors = null;
     }
 
     public String getName() {
         return name;
     }
 
+    CityGraph getGraph() {
+        return graph;
+    }
+
+    int getId() {
+        return id;
+    }
+
     public City getNeighbor(Direction direction) {
-        return neighbors.get(direction);
+        if (graph == null) {
+            return neighbors.get(direction);
+        }
+
+        int neighbor = graph.getNeighbor(id, direction);
+        return neighbor == CityGraph.NO_CITY ? null : graph.getCity(neighbor);
     }
 
     public void addNeighbor(Direction direction, City city) {
@@ -47,14 +76,38 @@ public class City {
         }
 
         //TODO check requirement if it is data error if there is already a different city in the same direction
-        neighbors.put(direction, city);
+        if (graph == null) {
+            neighbors.put(direction, city);
+            return;
+        }
+
+        if (city.graph != graph) {
+            throw new IllegalArgumentException("neighboring cities need to be on the same map");
+        }
+
+        graph.addNeighbor(id, direction, city.id);
     }
 
     public void removeNeighbor(Direction direction) {
-        neighbors.remove(direction);
+        if (graph == null) {
+            neighbors.remove(direction);
+        } else {
+            graph.removeNeighbor(id, direction);
+        }
     }
 
     public Map<Direction, City> getNeighbors() {
+        if (graph == null) {
+            return Collections.unmodifiableMap(neighbors);
+        }
+
+        EnumMap<Direction, City> neighbors = new EnumMap<Direction, City>(Direction.class);
+        for (Direction direction : CityGraph.DIRECTIONS) {
+            int neighbor = graph.getNeighbor(id, direction);
+            if (neighbor != CityGraph.NO_CITY) {
+                neighbors.put(direction, graph.getCity(neighbor));
+            }
+        }
         return Collections.unmodifiableMap(neighbors);
     }
 
@@ -68,7 +121,8 @@ public class City {
 
     @Override
     public int hashCode() {
-        return Objects.hash(name);
+        //same as Objects.hash(name), without the array of its varargs. strings cache their hash
+        return 31 + name.hashCode();
     }
 
     @Override
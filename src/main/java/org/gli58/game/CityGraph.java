@@ -0,0 +1,862 @@
+package org.gli58.game;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Compact representation of the world map.
+ *
+ * Cities are identified by dense int ids. The roads of city i are stored at
+ * neighbors[4 * i + direction.ordinal()], holding the id of the neighboring city or
+ * NO_CITY. Names are kept apart from the topology, as UTF-8 bytes back to back,
+ * and are only decoded when a City view is asked for its name.
+ *
+ * Roads, names and which cities are on the map are kept as per a Storage: in arrays
+ * on the heap, or in direct memory, laid out the same way except for a bitset of the
+ * cities not on the map. A game plays on a graph kept where the rest of its state is.
+ * Source lines are only kept on the heap.
+ *
+ * Ids of the cities on the map follow the order of their lines in the map file,
+ * unless the graph was renumbered in another CityOrder. Cities which are only
+ * referenced as a neighbor come after them; they are part of the graph so roads
+ * can point to them, but they are not on the map.
+ *
+ * The topology is mutable in the same way City used to be: roads can be removed as
+ * monsters find out cities are destroyed, which is not synchronized here. Writers
+ * are expected to own the city they change, e.g. by holding its lock.
+ *
+ * A graph parsed from a file knows the byte range of the line of each city in it, as
+ * long as the city is unchanged and the line is exactly how the city would be written.
+ */
+public class CityGraph {
+
+    public static final int NO_CITY = -1;
+    public static final long NO_LINE = -1;
+
+    static final Direction[] DIRECTIONS = Direction.values();
+    static final int DIRECTION_COUNT = DIRECTIONS.length;
+
+    final int cityCount;
+
+    /**
+     * roads and names of a graph on the heap, and the cities not on the map, either never
+     * defined by a line of their own or destroyed. null off the heap
+     */
+    final int[] neighbors;
+    final byte[] nameBytes;
+    final int[] nameOffsets;
+    final boolean[] removed;
+
+    /**
+     * the same for a graph off the heap, the cities not on the map as a bitset. null on the heap
+     */
+    final DirectMemory offHeapNeighbors;
+    final DirectMemory offHeapNameBytes;
+    final DirectMemory offHeapNameOffsets;
+    final DirectMemory offHeapRemoved;
+
+    /**
+     * offset and length of the line of each city in the source, including its line
+     * separator, or NO_LINE. null if the graph wasn't parsed from a file, or is off the heap
+     */
+    private final MapSource source;
+    private final long[] lineOffsets;
+    private final int[] lineLengths;
+
+    /**
+     * open addressing table of city id + 1 by the hash of the name, 0 if empty, kept at
+     * most half full and the same way as the names. built on first lookup by name only,
+     * the hot paths never need it
+     */
+    private volatile int[] nameTable;
+    private volatile DirectMemory offHeapNameTable;
+
+    CityGraph(int cityCount, int[] neighbors, byte[] nameBytes, int[] nameOffsets, boolean[] removed) {
+        this(cityCount, neighbors, nameBytes, nameOffsets, removed, null, null, null);
+    }
+
+    CityGraph(int cityCount, int[] neighbors, byte[] nameBytes, int[] nameOffsets, boolean[] removed,
+              MapSource source, long[] lineOffsets, int[] lineLengths) {
+        this.cityCount = cityCount;
+        this.neighbors = neighbors;
+        this.nameBytes = nameBytes;
+        this.nameOffsets = nameOffsets;
+        this.removed = removed;
+        this.offHeapNeighbors = null;
+        this.offHeapNameBytes = null;
+        this.offHeapNameOffsets = null;
+        this.offHeapRemoved = null;
+        this.source = source;
+        this.lineOffsets = lineOffsets;
+        this.lineLengths = lineLengths;
+    }
+
+    /**
+     * Graph off the heap
+     *
+     * @param removed bitset of the cities not on the map, see removedBitset
+     */
+    CityGraph(int cityCount, DirectMemory neighbors, DirectMemory nameBytes, DirectMemory nameOffsets, DirectMemory removed) {
+        this.cityCount = cityCount;
+        this.neighbors = null;
+        this.nameBytes = null;
+        this.nameOffsets = null;
+        this.removed = null;
+        this.offHeapNeighbors = neighbors;
+        this.offHeapNameBytes = nameBytes;
+        this.offHeapNameOffsets = nameOffsets;
+        this.offHeapRemoved = removed;
+        this.source = null;
+        this.lineOffsets = null;
+        this.lineLengths = null;
+    }
+
+    /**
+     * @return bitset off the heap, with all cities on the map
+     */
+    static DirectMemory removedBitset(int cityCount, int chunkShift) {
+        return new DirectMemory(8L * ((cityCount + 63) >>> 6), chunkShift);
+    }
+
+    /**
+     * @return copy of the roads and the cities on the map, sharing the names with this graph
+     */
+    CityGraph copy() {
+        if (getStorage() == Storage.OFF_HEAP) {
+            return new CityGraph(cityCount, offHeapNeighbors.copy(), offHeapNameBytes, offHeapNameOffsets, offHeapRemoved.copy());
+        }
+        return new CityGraph(cityCount, neighbors.clone(), nameBytes, nameOffsets, removed.clone());
+    }
+
+    /**
+     * @return where the roads and names of the graph are kept
+     */
+    Storage getStorage() {
+        return neighbors != null ? Storage.HEAP : Storage.OFF_HEAP;
+    }
+
+    CityGraph inStorage(Storage storage) {
+        return inStorage(storage, DirectMemory.CHUNK_SHIFT);
+    }
+
+    /**
+     * @return this graph if it's kept in the given storage, otherwise a copy of it kept
+     * there, which leaves this graph as it is
+     *
+     * @param chunkShift log2 of the size of the buffers off the heap. smaller ones for tests
+     */
+    CityGraph inStorage(Storage storage, int chunkShift) {
+        if (storage == getStorage()) {
+            return this;
+        }
+        int nameByteCount = nameOffset(cityCount);
+
+        if (storage == Storage.OFF_HEAP) {
+            DirectMemory offHeapNeighbors = new DirectMemory(4L * DIRECTION_COUNT * cityCount, chunkShift);
+            offHeapNeighbors.putInts(neighbors, neighbors.length);
+            DirectMemory offHeapNameBytes = new DirectMemory(nameByteCount, chunkShift);
+            offHeapNameBytes.putBytes(nameBytes);
+            DirectMemory offHeapNameOffsets = new DirectMemory(4L * (cityCount + 1), chunkShift);
+            offHeapNameOffsets.putInts(nameOffsets, nameOffsets.length);
+            CityGraph graph = new CityGraph(cityCount, offHeapNeighbors, offHeapNameBytes, offHeapNameOffsets,
+                    removedBitset(cityCount, chunkShift));
+            for (int id = 0; id < cityCount; id++) {
+                if (removed[id]) {
+                    graph.setRemoved(id);
+                }
+            }
+            return graph;
+        }
+
+        int[] neighbors = new int[cityCount * DIRECTION_COUNT];
+        offHeapNeighbors.getInts(neighbors, neighbors.length);
+        byte[] nameBytes = new byte[nameByteCount];
+        offHeapNameBytes.getBytes(nameBytes);
+        int[] nameOffsets = new int[cityCount + 1];
+        offHeapNameOffsets.getInts(nameOffsets, nameOffsets.length);
+        boolean[] removed = new boolean[cityCount];
+        for (int id = 0; id < cityCount; id++) {
+            removed[id] = !isOnMap(id);
+        }
+        return new CityGraph(cityCount, neighbors, nameBytes, nameOffsets, removed);
+    }
+
+    /**
+     * Same graph with the cities numbered in the given order, so that neighbors are close
+     * together in the arrays of the graph, and of a game played on it. Names, roads and
+     * source lines go along with their cities, kept the same way as here; this graph is
+     * left as it is.
+     *
+     * @return new graph, or this one for CityOrder.FILE
+     */
+    public CityGraph renumbered(CityOrder order) {
+        if (order == CityOrder.FILE) {
+            return this;
+        }
+        int[] newIds = CityRenumbering.newIds(this, order);
+
+        int[] oldIds = new int[cityCount];
+        for (int id = 0; id < cityCount; id++) {
+            oldIds[newIds[id]] = id;
+        }
+
+        int nameByteCount = nameOffset(cityCount);
+        CityGraph graph;
+        if (getStorage() == Storage.HEAP) {
+            graph = new CityGraph(cityCount, new int[cityCount * DIRECTION_COUNT], new byte[nameByteCount],
+                    new int[cityCount + 1], new boolean[cityCount], source,
+                    lineOffsets != null ? new long[cityCount] : null, lineLengths != null ? new int[cityCount] : null);
+        } else {
+            int chunkShift = offHeapNeighbors.chunkShift();
+            graph = new CityGraph(cityCount, new DirectMemory(4L * DIRECTION_COUNT * cityCount, chunkShift),
+                    new DirectMemory(nameByteCount, chunkShift), new DirectMemory(4L * (cityCount + 1), chunkShift),
+                    removedBitset(cityCount, chunkShift));
+        }
+
+        int nameOffset = 0;
+        for (int id = 0; id < cityCount; id++) {
+            int old = oldIds[id];
+            for (int d = 0; d < DIRECTION_COUNT; d++) {
+                int neighbor = neighbor(old, d);
+                graph.setNeighbor(id, d, neighbor == NO_CITY ? NO_CITY : newIds[neighbor]);
+            }
+
+            int nameLength = getNameLength(old);
+            if (nameBytes != null) {
+                System.arraycopy(nameBytes, nameOffsets[old], graph.nameBytes, nameOffset, nameLength);
+            } else {
+                offHeapNameBytes.copyBytes(nameOffset(old), graph.offHeapNameBytes, nameOffset, nameLength);
+            }
+            nameOffset += nameLength;
+            graph.setNameOffset(id + 1, nameOffset);
+
+            if (!isOnMap(old)) {
+                graph.setRemoved(id);
+            }
+            if (graph.lineOffsets != null) {
+                graph.lineOffsets[id] = lineOffsets[old];
+                graph.lineLengths[id] = lineLengths[old];
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * @return number of cities in the graph, including the ones that are not on the map
+     */
+    public int size() {
+        return cityCount;
+    }
+
+    /**
+     * @return offset of the name of the city in the name bytes. the one of size() is
+     * where the names end
+     */
+    int nameOffset(int id) {
+        return nameOffsets != null ? nameOffsets[id] : offHeapNameOffsets.getInt(id);
+    }
+
+    private void setNameOffset(int id, int offset) {
+        if (nameOffsets != null) {
+            nameOffsets[id] = offset;
+        } else {
+            offHeapNameOffsets.setInt(id, offset);
+        }
+    }
+
+    public String getName(int id) {
+        if (nameBytes != null) {
+            return new String(nameBytes, nameOffsets[id], nameOffsets[id + 1] - nameOffsets[id], StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[getNameLength(id)];
+        int offset = nameOffset(id);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = offHeapNameBytes.getByte(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return length of the name in UTF-8 bytes
+     */
+    public int getNameLength(int id) {
+        return nameOffset(id + 1) - nameOffset(id);
+    }
+
+    /**
+     * Copies the UTF-8 bytes of the name into the target buffer, at its position,
+     * without decoding them.
+     */
+    public void putName(int id, ByteBuffer target) {
+        if (nameBytes != null) {
+            target.put(nameBytes, nameOffsets[id], nameOffsets[id + 1] - nameOffsets[id]);
+            return;
+        }
+        int offset = nameOffset(id);
+        int length = getNameLength(id);
+        for (int i = 0; i < length; i++) {
+            target.put(offHeapNameBytes.getByte(offset + i));
+        }
+    }
+
+    public int getNeighbor(int id, Direction direction) {
+        return neighbor(id, direction.ordinal());
+    }
+
+    /**
+     * @return id of the neighbor in the direction, by Direction ordinal, or NO_CITY
+     */
+    int neighbor(int id, int direction) {
+        int index = id * DIRECTION_COUNT + direction;
+        return neighbors != null ? neighbors[index] : offHeapNeighbors.getInt(index);
+    }
+
+    private void setNeighbor(int id, int direction, int neighbor) {
+        int index = id * DIRECTION_COUNT + direction;
+        if (neighbors != null) {
+            neighbors[index] = neighbor;
+        } else {
+            offHeapNeighbors.setInt(index, neighbor);
+        }
+    }
+
+    public void addNeighbor(int id, Direction direction, int neighbor) {
+        if (neighbor < 0 || neighbor >= cityCount) {
+            throw new IllegalArgumentException("no city with id " + neighbor);
+        }
+        setNeighbor(id, direction.ordinal(), neighbor);
+        changed(id);
+    }
+
+    public void removeNeighbor(int id, Direction direction) {
+        setNeighbor(id, direction.ordinal(), NO_CITY);
+        changed(id);
+    }
+
+    public boolean isOnMap(int id) {
+        if (removed != null) {
+            return !removed[id];
+        }
+        return (offHeapRemoved.getLongAcquire(id >>> 6) & (1L << id)) == 0;
+    }
+
+    private void setRemoved(int id) {
+        if (removed != null) {
+            removed[id] = true;
+        } else {
+            offHeapRemoved.orLong(id >>> 6, 1L << id);
+        }
+    }
+
+    /**
+     * Takes a city off the map together with its own roads. Roads of other cities
+     * leading into it are left to the caller.
+     */
+    public void removeCity(int id) {
+        setRemoved(id);
+        for (int d = 0; d < DIRECTION_COUNT; d++) {
+            setNeighbor(id, d, NO_CITY);
+        }
+        changed(id);
+    }
+
+    private void changed(int id) {
+        if (lineOffsets != null) {
+            lineOffsets[id] = NO_LINE;
+        }
+    }
+
+    /**
+     * @return the file the graph was parsed from, or null
+     */
+    public MapSource getSource() {
+        return source;
+    }
+
+    /**
+     * @return offset of the line of the city in the source, or NO_LINE if there is no
+     * source, the city changed since, or its line is not as it would be written
+     */
+    public long getSourceLineOffset(int id) {
+        return lineOffsets == null ? NO_LINE : lineOffsets[id];
+    }
+
+    /**
+     * @return length of the line of the city in the source, including its line separator.
+     * only meaningful if getSourceLineOffset is not NO_LINE
+     */
+    public int getSourceLineLength(int id) {
+        return lineLengths == null ? 0 : lineLengths[id];
+    }
+
+    /**
+     * @return id of the city with the given name, or NO_CITY
+     */
+    public int indexOf(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int[] table = null;
+        DirectMemory offHeapTable = null;
+        long slots;
+        if (getStorage() == Storage.HEAP) {
+            table = nameTable();
+            slots = table.length;
+        } else {
+            offHeapTable = offHeapNameTable();
+            slots = offHeapTable.size() >>> 2;
+        }
+
+        long mask = slots - 1;
+        for (long slot = hash(bytes) & mask; ; slot = (slot + 1) & mask) {
+            int id = (table != null ? table[(int) slot] : offHeapTable.getInt(slot)) - 1;
+            if (id == NO_CITY || nameEquals(id, bytes)) {
+                return id;
+            }
+        }
+    }
+
+    private int[] nameTable() {
+        int[] table = nameTable;
+        if (table == null) {
+            table = new int[(int) nameTableSlots()];
+            int mask = table.length - 1;
+            for (int id = 0; id < cityCount; id++) {
+                int slot = nameHash(id) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id + 1;
+            }
+            nameTable = table;
+        }
+        return table;
+    }
+
+    private DirectMemory offHeapNameTable() {
+        DirectMemory table = offHeapNameTable;
+        if (table == null) {
+            long slots = nameTableSlots();
+            table = new DirectMemory(4 * slots, offHeapNameBytes.chunkShift());
+            long mask = slots - 1;
+            for (int id = 0; id < cityCount; id++) {
+                long slot = nameHash(id) & mask;
+                while (table.getInt(slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table.setInt(slot, id + 1);
+            }
+            offHeapNameTable = table;
+        }
+        return table;
+    }
+
+    private long nameTableSlots() {
+        long slots = 2;
+        while (slots < 2L * cityCount) {
+            slots <<= 1;
+        }
+        return slots;
+    }
+
+    private static int hash(byte[] name) {
+        return hash(name, 0, name.length);
+    }
+
+    //FNV-1a, with the high bits mixed in as the tables only use the low ones
+    static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private int nameHash(int id) {
+        int hash = 0x811c9dc5;
+        for (int i = nameOffset(id), end = nameOffset(id + 1); i < end; i++) {
+            hash = (hash ^ nameByte(i)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean nameEquals(int id, byte[] name) {
+        int offset = nameOffset(id);
+        if (nameOffset(id + 1) - offset != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (nameByte(offset + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte nameByte(int offset) {
+        return nameBytes != null ? nameBytes[offset] : offHeapNameBytes.getByte(offset);
+    }
+
+    /**
+     * @return id of the city in this graph, or NO_CITY. cheap for views of this graph,
+     * other cities are looked up by name
+     */
+    public int idOf(City city) {
+        return city.getGraph() == this ? city.getId() : indexOf(city.getName());
+    }
+
+    public City getCity(int id) {
+        return new City(this, id);
+    }
+
+    /**
+     * @return views of the cities on the map, in id order
+     */
+    public Set<City> getCities() {
+        Set<City> cities = new LinkedHashSet<>();
+        for (int i = 0; i < cityCount; i++) {
+            if (isOnMap(i)) {
+                cities.add(getCity(i));
+            }
+        }
+        return Collections.unmodifiableSet(cities);
+    }
+
+    /**
+     * Graph for a set of cities. If the cities are exactly what is on the map of
+     * one graph, that graph is returned as is. Otherwise a new graph is built with
+     * the given cities on the map, in iteration order.
+     */
+    public static CityGraph of(Collection<City> cities) {
+        CityGraph shared = sharedGraph(cities);
+        if (shared != null) {
+            return shared;
+        }
+
+        Builder builder = new Builder();
+        for (City city : cities) {
+            builder.addCity(city.getName());
+        }
+        for (City city : cities) {
+            int id = builder.addCity(city.getName());
+            for (Map.Entry<Direction, City> neighbor : city.getNeighbors().entrySet()) {
+                builder.addNeighbor(id, neighbor.getKey(), builder.referenceCity(neighbor.getValue().getName()));
+            }
+        }
+        return builder.build();
+    }
+
+    private static CityGraph sharedGraph(Collection<City> cities) {
+        CityGraph graph = null;
+        int onMap = 0;
+        for (City city : cities) {
+            if (city.getGraph() == null || (graph != null && city.getGraph() != graph) || !city.getGraph().isOnMap(city.getId())) {
+                return null;
+            }
+            graph = city.getGraph();
+            onMap++;
+        }
+
+        if (graph == null) {
+            return null;
+        }
+
+        for (int i = 0; i < graph.cityCount; i++) {
+            if (graph.isOnMap(i)) {
+                onMap--;
+            }
+        }
+        return onMap == 0 ? graph : null;
+    }
+
+    /**
+     * Builds a graph one city at a time, e.g. while parsing a map. Not thread safe.
+     *
+     * Cities are looked up by the UTF-8 bytes of their names, which can be given as a
+     * range of a buffer, so a parser doesn't need to create a String per name.
+     */
+    public static class Builder {
+        static final long DUPLICATE_LINE = -2;
+
+        /**
+         * open addressing hash table by name, kept at most half full. a slot holds the
+         * hash of the name in the high half and city id + 1 in the low half, 0 if empty,
+         * so most mismatches are told apart without looking at the names
+         */
+        private long[] table = new long[128];
+
+        int cityCount = 0;
+        int[] neighbors = new int[64 * DIRECTION_COUNT];
+        boolean[] onMap = new boolean[64];
+
+        byte[] nameBytes = new byte[1024];
+        int[] nameOffsets = new int[65];
+
+        //ids are handed out in order of appearance, and only turned into map order on build
+        int[] mapOrder = new int[64];
+        int onMapCount = 0;
+
+        private MapSource source;
+        long[] lineOffsets = new long[64];
+        int[] lineLengths = new int[64];
+
+        /**
+         * Puts a city on the map, in the order of the calls.
+         *
+         * @return id of the city while building. final ids are assigned by build()
+         */
+        public int addCity(String name) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            return addCity(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+
+        /**
+         * Same as addCity(String) for the UTF-8 encoded name at source[offset, offset + length).
+         * The position of the buffer is not used or changed.
+         */
+        public int addCity(ByteBuffer source, int offset, int length) {
+            int id = referenceCity(source, offset, length);
+            if (onMap[id]) {
+                //more than one line for the city. it's written as one
+                lineOffsets[id] = DUPLICATE_LINE;
+            }
+            putOnMap(id);
+            return id;
+        }
+
+        /**
+         * Sets the file the cities are parsed from.
+         */
+        public void source(MapSource source) {
+            this.source = source;
+        }
+
+        /**
+         * Records where the line of a city on the map is in the source. Only for lines
+         * which are exactly how the city would be written, so it can be copied as it is.
+         * Ignored if the city has more than one line.
+         */
+        public void sourceLine(int id, long offset, int length) {
+            if (lineOffsets[id] == NO_LINE) {
+                lineOffsets[id] = offset;
+                lineLengths[id] = length;
+            }
+        }
+
+        private void putOnMap(int id) {
+            if (!onMap[id]) {
+                onMap[id] = true;
+                if (onMapCount == mapOrder.length) {
+                    mapOrder = Arrays.copyOf(mapOrder, onMapCount * 2);
+                }
+                mapOrder[onMapCount++] = id;
+            }
+        }
+
+        /**
+         * Makes a city known to the graph, e.g. as the neighbor of another city,
+         * without putting it on the map.
+         *
+         * @return id of the city while building. final ids are assigned by build()
+         */
+        public int referenceCity(String name) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            return referenceCity(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+
+        /**
+         * Same as referenceCity(String) for the UTF-8 encoded name at source[offset, offset + length).
+         * The position of the buffer is not used or changed.
+         */
+        public int referenceCity(ByteBuffer source, int offset, int length) {
+            int hash = hash(source, offset, length);
+            int mask = table.length - 1;
+
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                long entry = table[slot];
+                if (entry == 0) {
+                    int id = newCity(source, offset, length);
+                    table[slot] = ((long) hash << 32) | (id + 1);
+                    if (cityCount * 2 > table.length) {
+                        rehash();
+                    }
+                    return id;
+                }
+
+                int id = (int) entry - 1;
+                if ((int) (entry >>> 32) == hash && nameEquals(id, source, offset, length)) {
+                    return id;
+                }
+            }
+        }
+
+        private static int hash(ByteBuffer source, int offset, int length) {
+            //FNV-1a, with the high bits mixed in as the table only uses the low ones
+            int hash = 0x811c9dc5;
+            for (int i = offset; i < offset + length; i++) {
+                hash = (hash ^ source.get(i)) * 0x01000193;
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        private boolean nameEquals(int id, ByteBuffer source, int offset, int length) {
+            int nameOffset = nameOffsets[id];
+            if (nameOffsets[id + 1] - nameOffset != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (nameBytes[nameOffset + i] != source.get(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            long[] oldTable = table;
+            table = new long[oldTable.length * 2];
+            int mask = table.length - 1;
+            for (long entry : oldTable) {
+                if (entry != 0) {
+                    int slot = (int) (entry >>> 32) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = entry;
+                }
+            }
+        }
+
+        public void addNeighbor(int id, Direction direction, int neighbor) {
+            neighbors[id * DIRECTION_COUNT + direction.ordinal()] = neighbor;
+        }
+
+        /**
+         * Adds what was added to another builder, with the same result as if all calls made
+         * on the other builder had been made on this one, after the calls made so far. So
+         * parts of a map can be parsed into builders of their own, then merged in order.
+         * Each name of the other builder is looked up once, not once per reference.
+         */
+        public void addAll(Builder other) {
+            ByteBuffer names = ByteBuffer.wrap(other.nameBytes);
+            int[] ids = new int[other.cityCount];
+            for (int id = 0; id < other.cityCount; id++) {
+                int offset = other.nameOffsets[id];
+                ids[id] = referenceCity(names, offset, other.nameOffsets[id + 1] - offset);
+            }
+
+            for (int i = 0; i < other.onMapCount; i++) {
+                int otherId = other.mapOrder[i];
+                int id = ids[otherId];
+                if (onMap[id]) {
+                    lineOffsets[id] = DUPLICATE_LINE;
+                } else {
+                    lineOffsets[id] = other.lineOffsets[otherId];
+                    lineLengths[id] = other.lineLengths[otherId];
+                }
+                putOnMap(id);
+            }
+
+            //roads not given to the other builder don't overwrite the ones given here
+            for (int id = 0; id < other.cityCount; id++) {
+                for (int d = 0; d < DIRECTION_COUNT; d++) {
+                    int neighbor = other.neighbors[id * DIRECTION_COUNT + d];
+                    if (neighbor != NO_CITY) {
+                        neighbors[ids[id] * DIRECTION_COUNT + d] = ids[neighbor];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Builds the graph of consecutive parts of a map, each added to a builder of its own,
+         * with the same result as addAll of the parts in order then build(), but with the
+         * names interned, ids assigned and roads mapped on the threads of the executor.
+         *
+         * @param source file the parts were parsed from, or null
+         * @param parallelism threads of the executor, which the work is split for
+         */
+        public static CityGraph build(List<Builder> parts, MapSource source, ExecutorService executor, int parallelism) {
+            return ParallelGraphBuild.build(parts, source, executor, parallelism);
+        }
+
+        private int newCity(ByteBuffer source, int sourceOffset, int length) {
+            int id = cityCount++;
+            if (id == onMap.length) {
+                int capacity = id * 2;
+                onMap = Arrays.copyOf(onMap, capacity);
+                neighbors = Arrays.copyOf(neighbors, capacity * DIRECTION_COUNT);
+                nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+                lineOffsets = Arrays.copyOf(lineOffsets, capacity);
+                lineLengths = Arrays.copyOf(lineLengths, capacity);
+            }
+            Arrays.fill(neighbors, id * DIRECTION_COUNT, (id + 1) * DIRECTION_COUNT, NO_CITY);
+            lineOffsets[id] = NO_LINE;
+
+            int offset = nameOffsets[id];
+            if (offset + length > nameBytes.length) {
+                nameBytes = Arrays.copyOf(nameBytes, Math.max(nameBytes.length * 2, offset + length));
+            }
+            for (int i = 0; i < length; i++) {
+                nameBytes[offset + i] = source.get(sourceOffset + i);
+            }
+            nameOffsets[id + 1] = offset + length;
+
+            return id;
+        }
+
+        public CityGraph build() {
+            //cities on the map first, in map order, then the ones only referenced
+            int[] newIds = new int[cityCount];
+            int[] oldIds = new int[cityCount];
+            for (int i = 0; i < onMapCount; i++) {
+                newIds[mapOrder[i]] = i;
+                oldIds[i] = mapOrder[i];
+            }
+            int next = onMapCount;
+            for (int id = 0; id < cityCount; id++) {
+                if (!onMap[id]) {
+                    newIds[id] = next;
+                    oldIds[next] = id;
+                    next++;
+                }
+            }
+
+            int[] finalNeighbors = new int[cityCount * DIRECTION_COUNT];
+            int[] finalOffsets = new int[cityCount + 1];
+            byte[] finalNames = new byte[nameOffsets[cityCount]];
+            boolean[] removed = new boolean[cityCount];
+            long[] finalLineOffsets = source == null ? null : new long[cityCount];
+            int[] finalLineLengths = source == null ? null : new int[cityCount];
+
+            for (int id = 0; id < cityCount; id++) {
+                int oldId = oldIds[id];
+                for (int d = 0; d < DIRECTION_COUNT; d++) {
+                    int neighbor = neighbors[oldId * DIRECTION_COUNT + d];
+                    finalNeighbors[id * DIRECTION_COUNT + d] = neighbor == NO_CITY ? NO_CITY : newIds[neighbor];
+                }
+
+                int length = nameOffsets[oldId + 1] - nameOffsets[oldId];
+                System.arraycopy(nameBytes, nameOffsets[oldId], finalNames, finalOffsets[id], length);
+                finalOffsets[id + 1] = finalOffsets[id] + length;
+
+                removed[id] = !onMap[oldId];
+
+                if (source != null) {
+                    long lineOffset = lineOffsets[oldId];
+                    finalLineOffsets[id] = lineOffset == DUPLICATE_LINE ? NO_LINE : lineOffset;
+                    finalLineLengths[id] = lineLengths[oldId];
+                }
+            }
+
+            return new CityGraph(cityCount, finalNeighbors, finalNames, finalOffsets, removed,
+                    source, finalLineOffsets, finalLineLengths);
+        }
+    }
+}
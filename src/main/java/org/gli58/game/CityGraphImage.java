@@ -0,0 +1,202 @@
+package org.gli58.game;
+
+import org.gli58.game.exceptions.MapParsingException;
+import org.gli58.game.exceptions.MapSavingToFileException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary image of a CityGraph, which loads with bulk copies of its arrays instead of
+ * parsing. The layout, little endian:
+ *
+ * magic "GLIW", int version, int city count, int name byte count,
+ * int[4 * city count] neighbors, int[city count + 1] name offsets,
+ * byte[city count] 1 for cities not on the map, byte[name byte count] names as UTF-8,
+ * int CRC32 of all bytes before it.
+ *
+ * Images are meant to be written once from a text map, see MapIO. A graph written
+ * after cities were destroyed keeps them off the map. Images are read through
+ * mappings of up to 1 GB at a time, so they can be larger than a mapping can be.
+ */
+public final class CityGraphImage {
+
+    static final int VERSION = 1;
+
+    private static final byte[] MAGIC = "GLIW".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 16;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int MAX_CITY_COUNT = (Integer.MAX_VALUE - 8) / CityGraph.DIRECTION_COUNT;
+
+    private CityGraphImage() {}
+
+    public static void write(CityGraph graph, Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(graph, channel);
+
+        } catch (IOException e) {
+            throw new MapSavingToFileException("cannot save city graph image to " + file, e);
+        }
+    }
+
+    static void write(CityGraph graph, WritableByteChannel channel) throws IOException {
+        int n = graph.cityCount;
+        int nameByteCount = graph.nameOffset(n);
+
+        ChecksumWriter writer = new ChecksumWriter(channel);
+        writer.putBytes(MAGIC, 0, MAGIC.length);
+        writer.putInt(VERSION);
+        writer.putInt(n);
+        writer.putInt(nameByteCount);
+        if (graph.getStorage() == Storage.HEAP) {
+            writer.putInts(graph.neighbors, n * CityGraph.DIRECTION_COUNT);
+            writer.putInts(graph.nameOffsets, n + 1);
+        } else {
+            graph.offHeapNeighbors.write(writer);
+            graph.offHeapNameOffsets.write(writer);
+        }
+        for (int id = 0; id < n; id++) {
+            writer.putByte(graph.isOnMap(id) ? 0 : (byte) 1);
+        }
+        if (graph.getStorage() == Storage.HEAP) {
+            writer.putBytes(graph.nameBytes, 0, nameByteCount);
+        } else {
+            graph.offHeapNameBytes.write(writer);
+        }
+        writer.finish();
+    }
+
+    /**
+     * @return size of the image of the graph, in bytes
+     */
+    static long size(CityGraph graph) {
+        return imageSize(graph.cityCount, graph.nameOffset(graph.cityCount));
+    }
+
+    private static long imageSize(int n, int nameByteCount) {
+        return HEADER_SIZE + 4L * n * CityGraph.DIRECTION_COUNT + 4L * (n + 1) + n + nameByteCount + CHECKSUM_SIZE;
+    }
+
+    public static CityGraph read(Path file) {
+        return read(file, Storage.HEAP);
+    }
+
+    /**
+     * Reads the image into the given storage. Off the heap, roads and names are copied
+     * straight from the file to direct memory, and which cities are on the map is set in
+     * a bitset there, so nothing per city is on the heap and worlds larger than the heap
+     * can be loaded.
+     */
+    public static CityGraph read(Path file, Storage storage) {
+        return read(file, storage, MappedReader.MAX_WINDOW_SIZE, DirectMemory.CHUNK_SHIFT);
+    }
+
+    //window size and chunk shift are only smaller for tests
+    static CityGraph read(Path file, Storage storage, int maxWindowSize, int chunkShift) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(new MappedReader(channel, 0, maxWindowSize), channel.size(), file, storage, chunkShift);
+
+        } catch (IOException e) {
+            throw new MapParsingException("failed to read city graph image " + file, e);
+        }
+    }
+
+    /**
+     * Reads the image of the given size that starts where the reader is, onto the heap.
+     *
+     * @param file where the image comes from, for error messages
+     */
+    static CityGraph read(MappedReader reader, long size, Object file) throws IOException {
+        return read(reader, size, file, Storage.HEAP, DirectMemory.CHUNK_SHIFT);
+    }
+
+    private static CityGraph read(MappedReader reader, long size, Object file, Storage storage, int chunkShift)
+            throws IOException {
+        if (size < HEADER_SIZE + CHECKSUM_SIZE || reader.remaining() < size) {
+            throw invalid(file, "too short");
+        }
+        reader.startChecksum();
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (reader.get() != MAGIC[i]) {
+                throw invalid(file, "not a city graph image");
+            }
+        }
+        int version = reader.getInt();
+        if (version != VERSION) {
+            throw invalid(file, "unsupported version " + version);
+        }
+        int n = reader.getInt();
+        int nameByteCount = reader.getInt();
+
+        if (n < 0 || nameByteCount < 0 || imageSize(n, nameByteCount) != size) {
+            throw invalid(file, "size doesn't match its header");
+        }
+        //roads are indexed by int, on the heap and off it
+        if (n > MAX_CITY_COUNT) {
+            throw invalid(file, "more than " + MAX_CITY_COUNT + " cities");
+        }
+
+        CityGraph graph;
+        if (storage == Storage.HEAP) {
+            int[] neighbors = new int[n * CityGraph.DIRECTION_COUNT];
+            int[] nameOffsets = new int[n + 1];
+            byte[] nameBytes = new byte[nameByteCount];
+            reader.getInts(neighbors, 0, neighbors.length);
+            reader.getInts(nameOffsets, 0, nameOffsets.length);
+            boolean[] removed = new boolean[n];
+            for (int id = 0; id < n; id++) {
+                removed[id] = reader.get() != 0;
+            }
+            reader.getBytes(nameBytes, 0, nameByteCount);
+            graph = new CityGraph(n, neighbors, nameBytes, nameOffsets, removed);
+        } else {
+            DirectMemory neighbors = new DirectMemory(4L * CityGraph.DIRECTION_COUNT * n, chunkShift);
+            DirectMemory nameOffsets = new DirectMemory(4L * (n + 1), chunkShift);
+            DirectMemory nameBytes = new DirectMemory(nameByteCount, chunkShift);
+            neighbors.read(reader);
+            nameOffsets.read(reader);
+            DirectMemory removed = CityGraph.removedBitset(n, chunkShift);
+            for (int id = 0; id < n; id++) {
+                if (reader.get() != 0) {
+                    removed.orLong(id >>> 6, 1L << id);
+                }
+            }
+            nameBytes.read(reader);
+            graph = new CityGraph(n, neighbors, nameBytes, nameOffsets, removed);
+        }
+
+        if (reader.checksum() != reader.getInt()) {
+            throw invalid(file, "checksum mismatch");
+        }
+
+        //the checksum only tells the file is as written. still don't let a bad writer
+        //cause out of bounds reads later on
+        if (graph.nameOffset(0) != 0 || graph.nameOffset(n) != nameByteCount) {
+            throw invalid(file, "bad name offsets");
+        }
+        for (int id = 0; id < n; id++) {
+            if (graph.nameOffset(id + 1) < graph.nameOffset(id)) {
+                throw invalid(file, "bad name offsets");
+            }
+        }
+        for (int id = 0; id < n; id++) {
+            for (int d = 0; d < CityGraph.DIRECTION_COUNT; d++) {
+                int neighbor = graph.neighbor(id, d);
+                if (neighbor < CityGraph.NO_CITY || neighbor >= n) {
+                    throw invalid(file, "bad neighbor " + neighbor);
+                }
+            }
+        }
+
+        return graph;
+    }
+
+    private static MapParsingException invalid(Object file, String reason) {
+        return new MapParsingException("invalid city graph image " + file + ": " + reason);
+    }
+}
@@ -0,0 +1,27 @@
+package org.gli58.game;
+
+/**
+ * Order of the city ids of a CityGraph, which is also the order of the arrays the game
+ * keeps per city. Monsters only ever move to a neighbor, so the closer neighbors are in
+ * the arrays, the more often a move finds them in a cache line it touched already.
+ */
+public enum CityOrder {
+
+    /**
+     * Ids as parsed: cities on the map in the order of their lines.
+     */
+    FILE,
+
+    /**
+     * Breadth-first from the first city of each part of the map that is not connected
+     * to the ones before.
+     */
+    BFS,
+
+    /**
+     * Reverse Cuthill-McKee: breadth-first from a city with the fewest roads, visiting
+     * the neighbors with fewer roads first, then reversed. Keeps neighbors within a
+     * narrow band of ids, e.g. about a row apart on a grid.
+     */
+    REVERSE_CUTHILL_MCKEE
+}
@@ -0,0 +1,177 @@
+package org.gli58.game;
+
+import java.util.Arrays;
+
+import static org.gli58.game.CityGraph.DIRECTION_COUNT;
+import static org.gli58.game.CityGraph.NO_CITY;
+
+/**
+ * New ids of the cities of a graph in a CityOrder. Cities on the map keep coming first,
+ * followed by the ones which are not, in the order they had.
+ *
+ * Roads are taken as they are stored, from a city to its neighbors. Map files have
+ * them both ways, and a city only reachable over roads leading out of it starts a
+ * part of its own.
+ */
+final class CityRenumbering {
+
+    private CityRenumbering() {}
+
+    /**
+     * @return new id of each city, by old id
+     */
+    static int[] newIds(CityGraph graph, CityOrder order) {
+        int[] newIds = new int[graph.cityCount];
+        Arrays.fill(newIds, NO_CITY);
+
+        //cities on the map in their new order, which is also the queue of the breadth-first search
+        int[] visits = new int[graph.cityCount];
+        int visited;
+        switch (order) {
+            case FILE:
+                visited = visitInIdOrder(graph, newIds, visits);
+                break;
+            case BFS:
+                visited = visitBreadthFirst(graph, newIds, visits);
+                break;
+            default:
+                visited = visitCuthillMcKee(graph, newIds, visits);
+                reverse(visits, visited);
+        }
+
+        for (int i = 0; i < visited; i++) {
+            newIds[visits[i]] = i;
+        }
+        int next = visited;
+        for (int id = 0; id < graph.cityCount; id++) {
+            if (!graph.isOnMap(id)) {
+                newIds[id] = next++;
+            }
+        }
+        return newIds;
+    }
+
+    private static int visitInIdOrder(CityGraph graph, int[] newIds, int[] visits) {
+        int visited = 0;
+        for (int id = 0; id < graph.cityCount; id++) {
+            if (graph.isOnMap(id)) {
+                visits[visited++] = id;
+            }
+        }
+        return visited;
+    }
+
+    private static int visitBreadthFirst(CityGraph graph, int[] newIds, int[] visits) {
+        int visited = 0;
+        for (int start = 0; start < graph.cityCount; start++) {
+            if (!graph.isOnMap(start) || newIds[start] != NO_CITY) {
+                continue;
+            }
+            int head = visited;
+            newIds[start] = visited;
+            visits[visited++] = start;
+
+            while (head < visited) {
+                int city = visits[head++];
+                for (int d = 0; d < DIRECTION_COUNT; d++) {
+                    int neighbor = graph.neighbor(city, d);
+                    if (neighbor != NO_CITY && graph.isOnMap(neighbor) && newIds[neighbor] == NO_CITY) {
+                        newIds[neighbor] = visited;
+                        visits[visited++] = neighbor;
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+
+    private static int visitCuthillMcKee(CityGraph graph, int[] newIds, int[] visits) {
+        byte[] degrees = new byte[graph.cityCount];
+        int[] countsByDegree = new int[DIRECTION_COUNT + 2];
+        for (int id = 0; id < graph.cityCount; id++) {
+            if (graph.isOnMap(id)) {
+                degrees[id] = (byte) degree(graph, id);
+                countsByDegree[degrees[id] + 1]++;
+            }
+        }
+
+        //starting points of the parts of the map: cities on the map by number of roads, then id
+        for (int d = 1; d < countsByDegree.length; d++) {
+            countsByDegree[d] += countsByDegree[d - 1];
+        }
+        int[] starts = new int[countsByDegree[countsByDegree.length - 1]];
+        for (int id = 0; id < graph.cityCount; id++) {
+            if (graph.isOnMap(id)) {
+                starts[countsByDegree[degrees[id]]++] = id;
+            }
+        }
+
+        int[] found = new int[DIRECTION_COUNT];
+        int visited = 0;
+        for (int start : starts) {
+            if (newIds[start] != NO_CITY) {
+                continue;
+            }
+            int head = visited;
+            newIds[start] = visited;
+            visits[visited++] = start;
+
+            while (head < visited) {
+                int city = visits[head++];
+
+                int foundCount = 0;
+                for (int d = 0; d < DIRECTION_COUNT; d++) {
+                    int neighbor = graph.neighbor(city, d);
+                    if (neighbor != NO_CITY && graph.isOnMap(neighbor) && newIds[neighbor] == NO_CITY
+                            && !contains(found, foundCount, neighbor)) {
+                        //insertion sort by number of roads, then id
+                        int i = foundCount++;
+                        while (i > 0 && before(degrees, neighbor, found[i - 1])) {
+                            found[i] = found[i - 1];
+                            i--;
+                        }
+                        found[i] = neighbor;
+                    }
+                }
+
+                for (int i = 0; i < foundCount; i++) {
+                    newIds[found[i]] = visited;
+                    visits[visited++] = found[i];
+                }
+            }
+        }
+        return visited;
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean before(byte[] degrees, int city, int other) {
+        return degrees[city] < degrees[other] || (degrees[city] == degrees[other] && city < other);
+    }
+
+    private static int degree(CityGraph graph, int id) {
+        int degree = 0;
+        for (int d = 0; d < DIRECTION_COUNT; d++) {
+            int neighbor = graph.neighbor(id, d);
+            if (neighbor != NO_CITY && graph.isOnMap(neighbor)) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    private static void reverse(int[] values, int length) {
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+}
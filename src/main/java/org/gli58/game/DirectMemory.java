@@ -0,0 +1,198 @@
+package org.gli58.game;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * An array of bytes, ints or longs in direct buffers of 1 << chunkShift bytes, outside
+ * the Java heap. Elements are aligned to their size, so none spans two buffers. Values
+ * are little endian, as in images, so arrays of an image are copied in as they are.
+ * The memory is freed once the array is no longer reachable.
+ */
+final class DirectMemory {
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    static final int CHUNK_SHIFT = 30;
+
+    private final long size;
+    private final ByteBuffer[] chunks;
+    private final int chunkShift;
+    private final int chunkMask;
+
+    DirectMemory(long bytes, int chunkShift) {
+        this.size = bytes;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+        this.chunks = new ByteBuffer[(int) ((bytes + chunkMask) >>> chunkShift)];
+        for (int i = 0; i < chunks.length; i++) {
+            //atomic access needs aligned addresses. the slice is rounded to 8 bytes on both ends
+            int alignedSize = (chunkSize(i) + 7) & ~7;
+            chunks[i] = ByteBuffer.allocateDirect(alignedSize + 8).alignedSlice(8).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * @return size of the array, in bytes
+     */
+    long size() {
+        return size;
+    }
+
+    int chunkShift() {
+        return chunkShift;
+    }
+
+    private int chunkSize(int chunk) {
+        return (int) Math.min(1L << chunkShift, size - ((long) chunk << chunkShift));
+    }
+
+    private ByteBuffer chunk(long offset) {
+        return chunks[(int) (offset >>> chunkShift)];
+    }
+
+    private int position(long offset) {
+        return (int) offset & chunkMask;
+    }
+
+    byte getByte(long offset) {
+        return chunk(offset).get(position(offset));
+    }
+
+    void setByte(long offset, byte value) {
+        chunk(offset).put(position(offset), value);
+    }
+
+    int getInt(long index) {
+        long offset = index << 2;
+        return (int) INTS.get(chunk(offset), position(offset));
+    }
+
+    void setInt(long index, int value) {
+        long offset = index << 2;
+        INTS.set(chunk(offset), position(offset), value);
+    }
+
+    int getIntAcquire(long index) {
+        long offset = index << 2;
+        return (int) INTS.getAcquire(chunk(offset), position(offset));
+    }
+
+    void setIntRelease(long index, int value) {
+        long offset = index << 2;
+        INTS.setRelease(chunk(offset), position(offset), value);
+    }
+
+    int getIntVolatile(long index) {
+        long offset = index << 2;
+        return (int) INTS.getVolatile(chunk(offset), position(offset));
+    }
+
+    void setIntVolatile(long index, int value) {
+        long offset = index << 2;
+        INTS.setVolatile(chunk(offset), position(offset), value);
+    }
+
+    boolean compareAndSetInt(long index, int expected, int value) {
+        long offset = index << 2;
+        return INTS.compareAndSet(chunk(offset), position(offset), expected, value);
+    }
+
+    long getLongAcquire(long index) {
+        long offset = index << 3;
+        return (long) LONGS.getAcquire(chunk(offset), position(offset));
+    }
+
+    void setLongRelease(long index, long value) {
+        long offset = index << 3;
+        LONGS.setRelease(chunk(offset), position(offset), value);
+    }
+
+    long getLongVolatile(long index) {
+        long offset = index << 3;
+        return (long) LONGS.getVolatile(chunk(offset), position(offset));
+    }
+
+    void orLong(long index, long bits) {
+        long offset = index << 3;
+        LONGS.getAndBitwiseOr(chunk(offset), position(offset), bits);
+    }
+
+    /**
+     * Copies values[0, length) to the start of the array, a chunk at a time.
+     */
+    void putInts(int[] values, int length) {
+        int intsPerChunk = 1 << (chunkShift - 2);
+        for (int from = 0; from < length; from += intsPerChunk) {
+            target(from).put(values, from, Math.min(intsPerChunk, length - from));
+        }
+    }
+
+    /**
+     * Copies the start of the array to values[0, length), a chunk at a time.
+     */
+    void getInts(int[] values, int length) {
+        int intsPerChunk = 1 << (chunkShift - 2);
+        for (int from = 0; from < length; from += intsPerChunk) {
+            target(from).get(values, from, Math.min(intsPerChunk, length - from));
+        }
+    }
+
+    private IntBuffer target(int intIndex) {
+        return chunk((long) intIndex << 2).duplicate().clear().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    void putBytes(byte[] values) {
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i].duplicate().clear().put(values, i << chunkShift, chunkSize(i));
+        }
+    }
+
+    void getBytes(byte[] values) {
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i].duplicate().clear().get(values, i << chunkShift, chunkSize(i));
+        }
+    }
+
+    /**
+     * Copies [from, from + length) of this array to [to, to + length) of the target.
+     * One byte at a time, for the few bytes of a name.
+     */
+    void copyBytes(long from, DirectMemory target, long to, int length) {
+        for (int i = 0; i < length; i++) {
+            target.setByte(to + i, getByte(from + i));
+        }
+    }
+
+    DirectMemory copy() {
+        DirectMemory copy = new DirectMemory(size, chunkShift);
+        for (int i = 0; i < chunks.length; i++) {
+            copy.chunks[i].duplicate().clear().put(contents(i));
+        }
+        return copy;
+    }
+
+    /**
+     * Fills the array with the next size() bytes of the reader.
+     */
+    void read(MappedReader reader) throws IOException {
+        for (int i = 0; i < chunks.length; i++) {
+            ByteBuffer target = chunks[i].duplicate().clear().limit(chunkSize(i));
+            reader.get(target);
+        }
+    }
+
+    void write(ChecksumWriter writer) throws IOException {
+        for (int i = 0; i < chunks.length; i++) {
+            writer.put(contents(i));
+        }
+    }
+
+    private ByteBuffer contents(int chunk) {
+        return chunks[chunk].duplicate().clear().limit(chunkSize(chunk));
+    }
+}
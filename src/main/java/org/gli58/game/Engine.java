@@ -0,0 +1,36 @@
+package org.gli58.game;
+
+/**
+ * How a game advances time for its monsters.
+ */
+public enum Engine {
+
+    /**
+     * Monsters really stay in a city for the residence duration before moving on,
+     * and move concurrently on the game's scheduler threads.
+     */
+    REAL_TIME,
+
+    /**
+     * Monsters wake up in the order of a simulated clock which jumps straight to
+     * the next pending wake-up, so a game runs as fast as moves can be computed.
+     * Residence durations keep their meaning, they are just not slept through.
+     * Moves are computed one at a time on the thread that starts the game.
+     */
+    VIRTUAL_CLOCK,
+
+    /**
+     * Monsters move in ticks: every active monster moves once per tick, and the
+     * moves are applied in parallel. Conflicts are resolved by a fixed rule, so the
+     * outcome does not depend on the number of threads. Residence durations are not
+     * used.
+     */
+    LOCKSTEP,
+
+    /**
+     * Plays back the move journal of an earlier game (see Game.Builder.journal) on the
+     * thread that starts the game, without waiting. Providers are not used: monsters
+     * make the moves and fights of the journal, and end up as they did in that game.
+     */
+    REPLAY
+}
@@ -0,0 +1,62 @@
+package org.gli58.game;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Real-time scheduling on a ScheduledExecutorService. Monsters move concurrently on
+ * the executor's threads.
+ *
+ * The executor can be shared by games. It is only shut down with the game if the
+ * scheduler owns it. Each run is a task of its own on the executor's queue.
+ */
+class ExecutorMoveScheduler implements MoveScheduler {
+
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final IntConsumer runMonster;
+
+    ExecutorMoveScheduler(ScheduledExecutorService executor, IntConsumer runMonster) {
+        this(executor, true, runMonster);
+    }
+
+    ExecutorMoveScheduler(ScheduledExecutorService executor, boolean ownsExecutor, IntConsumer runMonster) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null");
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.runMonster = runMonster;
+    }
+
+    @Override
+    public void schedule(int monster, int delayInMillis) {
+        try {
+            executor.schedule(() -> runMonster.accept(monster), delayInMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //shut down by the game being stopped, or by the owner of a shared executor
+            if (!executor.isShutdown()) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        //nothing to do. monsters run on the executor threads
+    }
+
+    @Override
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,30 @@
+package org.gli58.game;
+
+/**
+ * Waits up to twice as long with each retry of the same move, capped at a maximum.
+ * The actual delay is picked at random below that, from the monster's own stream in a
+ * seeded game, so monsters that failed together do not all come back at the same time.
+ */
+class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    private final int baseDelay;
+    private final int maxDelay;
+
+    ExponentialBackoffRetryPolicy(int baseDelay, int maxDelay) {
+        if (baseDelay < 1 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("delays should be positive, with base delay not above max delay");
+        }
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    @Override
+    public int getRetryDelayInMillis(Monster monster, int attempt) {
+        //no shifting beyond the max delay, which also keeps the shift from overflowing
+        long ceiling = baseDelay;
+        for (int i = 1; i < attempt && ceiling < maxDelay; i++) {
+            ceiling <<= 1;
+        }
+        return monster.nextRandomInt((int) Math.min(ceiling, maxDelay) + 1);
+    }
+}
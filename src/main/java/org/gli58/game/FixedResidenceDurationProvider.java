@@ -18,4 +18,9 @@ public class FixedResidenceDurationProvider implements ResidenceDurationProvider
     public int getDurationInMillis(Monster monster) {
         return duration;
     }
+
+    @Override
+    public int getDurationInMillis(Game game, int monster) {
+        return duration;
+    }
 }
@@ -2,19 +2,36 @@ package org.gli58.game;
 
 import org.gli58.game.event.ConsoleLoggingEventHandler;
 import org.gli58.game.event.EventHandler;
+import org.gli58.game.metrics.GameMetrics;
+import org.gli58.game.metrics.GameMetricsSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.AbstractSet;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-
-import static java.util.stream.Collectors.counting;
-import static java.util.stream.Collectors.groupingBy;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 /**
  * Modeling a game as per the instructions.
@@ -22,22 +39,67 @@ import static java.util.stream.Collectors.groupingBy;
  */
 public class Game {
 
+    static final int VACANT = 0;
+    static final int DESTROYED = -1;
+
+    /**
+     * index of no monster, e.g. the occupant of a vacant city
+     */
+    static final int NO_MONSTER = -1;
+
+    private static final int MAX_CITY_LOCKS = 1 << 16;
+
+    /**
+     * numbers the games of this JVM, for their JMX names
+     */
+    private static final AtomicInteger GAME_SEQUENCE = new AtomicInteger();
+
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
     /**
-     * monsters in the game
+     * number of monsters the game has set up so far, all or none. what the monsters are
+     * up to is kept in the state, monster i at index i - 1
+     */
+    private volatile int preparedMonsterCount;
+
+    /**
+     * moves monsters on the thread they run on
      */
-    private final Set<Monster> monsters;
+    private final ThreadLocal<MonsterMover> movers = ThreadLocal.withInitial(() -> new MonsterMover(this));
 
     /**
-     * remaining cities in the game
+     * random streams of the monsters by index in a seeded game, or null
      */
-    private final Set<City> cities =  ConcurrentHashMap.newKeySet();
+    private SplittableRandom[] randoms;
 
     /**
-     * destroyed cities
+     * the map the game is played on. roads to destroyed cities are removed from it
+     * as the game goes on.
      */
-    private final Set<City> destroyedCities =  ConcurrentHashMap.newKeySet();
+    private final CityGraph graph;
+
+    /**
+     * state of each city by city id: VACANT, DESTROYED, or the id of the monster occupying it.
+     * used to determine if there is fight when monster successfully enters a city. also the
+     * roads monsters move on, and the monsters themselves, kept as per the game's Storage
+     */
+    private final GameState state;
+
+    /**
+     * number of cities not destroyed yet
+     */
+    private final AtomicInteger remainingCityCount;
+
+    /**
+     * locks guarding moves in and out of cities. city i is guarded by lock i & (locks.length - 1)
+     */
+    private final Lock[] cityLocks;
+
+    /**
+     * cities the monsters get placed on. built when the game starts, as ids, the views
+     * being made as they are asked for
+     */
+    private List<City> placementCities;
 
     /**
      * unique ID for a particular monster fight
@@ -65,10 +127,25 @@ public class Game {
      */
     private final int concurrentMonsterThreadCount;
 
+    /**
+     * how the game advances time for its monsters
+     */
+    private final Engine engine;
+
     /**
      * scheduler that makes monsters move
      */
-    private final ScheduledExecutorService scheduler;
+    private final MoveScheduler scheduler;
+
+    /**
+     * how monsters claim cities when they move
+     */
+    private final Occupancy occupancy;
+
+    /**
+     * where the state of cities and monsters is kept
+     */
+    private final Storage storage;
 
     /**
      * For specifying monster's next move direction
@@ -86,10 +163,14 @@ public class Game {
     private final ResidenceDurationProvider residenceDurationProvider;
 
     /**
-     * cities that are already occuplied. used to determine if there is fight
-     * when monster successfully enters a city.
+     * for specifying when a monster tries a move again after a failed attempt
+     */
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * live counters of the game, also registered as an MBean while the game is played
      */
-    private final ConcurrentMap<City, Monster> citiesOccupied = new ConcurrentHashMap<>();
+    private final GameMetrics metrics;
 
     /**
      * flag to indicate all monsters have run their course
@@ -111,28 +192,103 @@ public class Game {
      */
     private AtomicLong monsterStatusNotificationCount = new AtomicLong(0);
 
+    /**
+     * checkpoint the game resumes from, or null
+     */
+    private final GameCheckpoint resumedFrom;
+
+    /**
+     * runs of monsters (ticks for the lockstep engine) under way. a checkpoint sets
+     * paused and waits for the count to drop to 0, new runs wait on pauseLock meanwhile
+     */
+    private final LongAdder movesInFlight = new LongAdder();
+    private volatile boolean paused;
+    private final Object pauseLock = new Object();
+
+    /**
+     * seed of the random streams of the monsters, or null to use ThreadLocalRandom
+     */
+    private final Long seed;
+
+    /**
+     * file of the move journal: written while the game is played, or played back by
+     * the replay engine. null for no journal
+     */
+    private final Path journalFile;
+
+    /**
+     * journal being written while the game is played, or null
+     */
+    private MoveJournal journal;
+
+    /**
+     * runs games started with startAsync() that need a thread of their own, and what
+     * is left to do when a real-time game is over. null for CompletableFuture's default
+     */
+    private final Executor executor;
+
+    /**
+     * wall-clock time the game may take before its monsters are stopped, or 0 for no limit
+     */
+    private final long timeBudgetMillis;
+
+    /**
+     * set when the game is cancelled or out of time, before all monsters have stopped
+     */
+    private volatile boolean stopRequested;
+
+    /**
+     * completed when the game stops
+     */
+    private final CompletableFuture<Void> gameOver = new CompletableFuture<>();
+
+    private long startTime;
+    private ObjectName metricsName;
+
     /**
      * Made private to prevent direct instaitiation by client.
      *
-     * @param cities
+     * @param graph
      * @param monsterCount
      * @param monsterPlacementProvider
      * @param monsterMoveProvider
      * @param residenceDurationProvider
+     * @param retryPolicy retry policy to use, or null to retry after another residence duration
      * @param mininumMoveCount
      * @param concurrentMonsterThreadCount
+     * @param engine
+     * @param occupancy
+     * @param storage where the state of cities and monsters is kept
+     * @param scheduling how the real-time engine keeps wake-ups
+     * @param scheduler scheduler to use, or null to create one with concurrentMonsterThreadCount threads
      * @param eventHandler
+     * @param resumedFrom checkpoint to resume, or null for a new game
+     * @param seed seed of the random streams of the monsters, or null
+     * @param journalFile move journal to write, or to play back for the replay engine. can be null
+     * @param executor executor for startAsync(), or null
+     * @param timeBudgetMillis time the game may take, or 0 for no limit
      */
-    private Game(Set<City> cities,
+    private Game(CityGraph graph,
                  int monsterCount,
                  MonsterPlacementProvider monsterPlacementProvider,
                  MonsterMoveProvider monsterMoveProvider,
                  ResidenceDurationProvider residenceDurationProvider,
+                 RetryPolicy retryPolicy,
                  int mininumMoveCount,
                  int concurrentMonsterThreadCount,
-                 EventHandler eventHandler) {
-
-        if (cities == null || cities.isEmpty()) {
+                 Engine engine,
+                 Occupancy occupancy,
+                 Storage storage,
+                 Scheduling scheduling,
+                 ScheduledExecutorService scheduler,
+                 EventHandler eventHandler,
+                 GameCheckpoint resumedFrom,
+                 Long seed,
+                 Path journalFile,
+                 Executor executor,
+                 long timeBudgetMillis) {
+
+        if (graph == null) {
             throw new IllegalArgumentException("there has to be at least one city");
         }
 
@@ -156,6 +312,26 @@ public class Game {
             throw new IllegalArgumentException("eventHandler is null");
         }
 
+        if (engine == null) {
+            throw new IllegalArgumentException("engine is null");
+        }
+
+        if (occupancy == null) {
+            throw new IllegalArgumentException("occupancy is null");
+        }
+
+        if (storage == null) {
+            throw new IllegalArgumentException("storage is null");
+        }
+
+        if (scheduling == null) {
+            throw new IllegalArgumentException("scheduling is null");
+        }
+
+        if (scheduling == Scheduling.TIMING_WHEEL && scheduler != null) {
+            throw new IllegalArgumentException("a scheduler executor cannot be used with timing wheels");
+        }
+
         if (mininumMoveCount < 1) {
             throw new IllegalArgumentException("minimum moves needs to be positive integer");
         }
@@ -164,28 +340,188 @@ public class Game {
             throw new IllegalArgumentException("concurrent monster threads needs to be positive integer");
         }
 
-        cities.forEach(c -> this.cities.add(c));
+        if (timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("time budget cannot be negative");
+        }
+
+        if (engine == Engine.REPLAY && journalFile == null) {
+            throw new IllegalArgumentException("replay engine needs a move journal");
+        }
+
+        if (resumedFrom != null && (resumedFrom.graph != graph || resumedFrom.getMonsterCount() != monsterCount)) {
+            throw new IllegalArgumentException("game has to be played on the map and monsters of the checkpoint");
+        }
+
+        //the game plays on a graph kept the same way as its state. one kept otherwise is copied, and left as it is
+        graph = graph.inStorage(storage);
+        this.graph = graph;
+        this.state = GameState.create(storage, graph, monsterCount);
+
+        int onMap = 0;
+        for (int i = 0; i < graph.size(); i++) {
+            if (graph.isOnMap(i)) {
+                onMap++;
+            } else {
+                //cities not on the map can be referenced as neighbors, but monsters cannot go there
+                state.setCityState(i, DESTROYED);
+            }
+        }
+
+        if (resumedFrom != null) {
+            //the checkpoint still has destroyed cities on the map, the game removes them when it ends
+            onMap = 0;
+            for (int i = 0; i < graph.size(); i++) {
+                state.setCityState(i, resumedFrom.cityStates[i]);
+                if (resumedFrom.cityStates[i] != DESTROYED) {
+                    onMap++;
+                }
+            }
+            fightEventId.set(resumedFrom.nextFightEventId);
+        }
 
-        //regular non-concurrent collection is sufficient here due to the
-        // apporach for monsters to only update their status
-        this.monsters = new HashSet<>();
+        if (onMap == 0 && resumedFrom == null) {
+            throw new IllegalArgumentException("there has to be at least one city");
+        }
+        this.remainingCityCount = new AtomicInteger(onMap);
+
+        //one lock per city up to a limit, beyond which cities share locks
+        int lockCount = 1;
+        while (lockCount < Math.min(graph.size(), MAX_CITY_LOCKS)) {
+            lockCount <<= 1;
+        }
+        this.cityLocks = new Lock[lockCount];
+        for (int i = 0; i < lockCount; i++) {
+            cityLocks[i] = new ReentrantLock();
+        }
 
         this.monsterCount = monsterCount;
         this.monsterPlacementProvider = monsterPlacementProvider;
         this.monsterMoveProvider = monsterMoveProvider;
         this.residenceDurationProvider = residenceDurationProvider;
+        this.retryPolicy = retryPolicy != null ? retryPolicy : new ResidenceDurationRetryPolicy(residenceDurationProvider);
         this.mininumMoveCount = mininumMoveCount;
         this.concurrentMonsterThreadCount = concurrentMonsterThreadCount;
-        this.scheduler = Executors.newScheduledThreadPool(concurrentMonsterThreadCount);
+        this.engine = engine;
+        this.occupancy = occupancy;
+        this.storage = storage;
+        this.scheduler = createScheduler(engine, scheduling, scheduler, concurrentMonsterThreadCount, this::runMonster);
         this.eventHandler = eventHandler;
+        this.resumedFrom = resumedFrom;
+        this.seed = seed;
+        this.journalFile = journalFile;
+        this.executor = executor;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.metrics = new GameMetrics(this::countMonstersByStatus, remainingCityCount::get);
+    }
+
+    private static MoveScheduler createScheduler(Engine engine, Scheduling scheduling,
+                                                 ScheduledExecutorService executor, int threadCount,
+                                                 IntConsumer runMonster) {
+        switch (engine) {
+            case VIRTUAL_CLOCK:
+                return new VirtualClockMoveScheduler(runMonster);
+            case REAL_TIME:
+                if (scheduling == Scheduling.TIMING_WHEEL) {
+                    return new TimingWheelMoveScheduler(threadCount, runMonster);
+                }
+                return executor != null
+                        ? new ExecutorMoveScheduler(executor, false, runMonster)
+                        : new ExecutorMoveScheduler(Executors.newScheduledThreadPool(threadCount), true, runMonster);
+            case LOCKSTEP:
+            case REPLAY:
+                return null; //these engines drive the monsters themselves
+        }
+        throw new IllegalArgumentException("unknown engine " + engine);
     }
 
+    /**
+     * @return views of the cities not destroyed so far
+     */
     public Set<City> getCities() {
-        return Collections.unmodifiableSet(cities);
+        Set<City> remaining = new LinkedHashSet<>();
+        for (int i = 0; i < graph.size(); i++) {
+            if (state.getCityState(i) != DESTROYED) {
+                remaining.add(graph.getCity(i));
+            }
+        }
+        return Collections.unmodifiableSet(remaining);
     }
 
+    private List<City> citiesNotDestroyed() {
+        int count = 0;
+        for (int i = 0; i < graph.size(); i++) {
+            if (state.getCityState(i) != DESTROYED) {
+                count++;
+            }
+        }
+        //ids are kept the same way as the rest of the state
+        int[] ids = storage == Storage.HEAP ? new int[count] : null;
+        DirectMemory offHeapIds = storage == Storage.OFF_HEAP ? new DirectMemory(4L * count, DirectMemory.CHUNK_SHIFT) : null;
+        int size = count;
+        count = 0;
+        for (int i = 0; i < graph.size(); i++) {
+            if (state.getCityState(i) != DESTROYED) {
+                if (ids != null) {
+                    ids[count++] = i;
+                } else {
+                    offHeapIds.setInt(count++, i);
+                }
+            }
+        }
+
+        return new AbstractList<City>() {
+            @Override
+            public City get(int index) {
+                return graph.getCity(ids != null ? ids[index] : offHeapIds.getInt(index));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public CityGraph getCityGraph() {
+        return graph;
+    }
+
+    /**
+     * @return views of the monsters, ordered by id. empty until the game has set them up
+     */
     public Set<Monster> getMonsters() {
-        return Collections.unmodifiableSet(monsters);
+        return new AbstractSet<Monster>() {
+            @Override
+            public Iterator<Monster> iterator() {
+                int count = preparedMonsterCount;
+                return new Iterator<Monster>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < count;
+                    }
+
+                    @Override
+                    public Monster next() {
+                        if (next >= count) {
+                            throw new NoSuchElementException();
+                        }
+                        return new Monster(Game.this, next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return preparedMonsterCount;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Monster && ((Monster) o).getIndex() < preparedMonsterCount;
+            }
+        };
     }
 
     AtomicLong getFightEventId() {
@@ -196,17 +532,126 @@ public class Game {
         return eventHandler;
     }
 
-    ConcurrentMap<City, Monster> getCitiesOccupied() {
-        return citiesOccupied;
+    List<City> getPlacementCities() {
+        return placementCities;
+    }
+
+    int getCityId(City city) {
+        if (city.getGraph() == graph) {
+            return city.getId();
+        }
+
+        int cityId = graph.indexOf(city.getName());
+        if (cityId == CityGraph.NO_CITY) {
+            throw new IllegalArgumentException(city + " is not on the map of the game");
+        }
+        return cityId;
+    }
+
+    /**
+     * @return view of the monster
+     */
+    Monster getMonster(long id) {
+        return new Monster(this, (int) id - 1);
+    }
+
+    GameState getState() {
+        return state;
+    }
+
+    //package-private so benchmarks can run the moves of the virtual clock one at a time
+    MoveScheduler getScheduler() {
+        return scheduler;
+    }
+
+    int getMinimumMoveCount() {
+        return mininumMoveCount;
+    }
+
+    /**
+     * @return mover of the monsters run on the calling thread
+     */
+    MonsterMover getMover() {
+        return movers.get();
+    }
+
+    void runMonster(int monster) {
+        movers.get().run(monster);
+    }
+
+    /**
+     * @return random int in [0, bound) from the monster's own stream if the game is seeded
+     */
+    int nextRandomInt(int monster, int bound) {
+        return randoms != null ? randoms[monster].nextInt(bound) : ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    /**
+     * @return random int in [origin, bound) from the monster's own stream if the game is seeded
+     */
+    int nextRandomInt(int monster, int origin, int bound) {
+        return randoms != null ? randoms[monster].nextInt(origin, bound) : ThreadLocalRandom.current().nextInt(origin, bound);
     }
 
-    boolean isCityDestroyed(City city) {
-        return ! cities.contains(city);
+    Lock getCityLock(int city) {
+        return cityLocks[city & (cityLocks.length - 1)];
     }
 
-    void destroyCity(City city) {
-        cities.remove(city);
-        destroyedCities.add(city);
+    boolean isCityDestroyed(int city) {
+        return state.isDestroyed(city);
+    }
+
+    void destroyCity(int city) {
+        //also drops the monster occupying it, if any
+        state.setCityState(city, DESTROYED);
+        remainingCityCount.decrementAndGet();
+    }
+
+    /**
+     * Destroys the city if its state is still the one expected.
+     */
+    boolean tryDestroyCity(int city, int expectedState) {
+        if (state.compareAndSetCityState(city, expectedState, DESTROYED)) {
+            remainingCityCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    int getCityState(int city) {
+        return state.getCityState(city);
+    }
+
+    /**
+     * @return index of the monster occupying the city, or NO_MONSTER
+     */
+    int getOccupant(int city) {
+        int cityState = state.getCityState(city);
+        return cityState > 0 ? cityState - 1 : NO_MONSTER;
+    }
+
+    void occupy(int city, int monster) {
+        state.setCityState(city, monster + 1);
+    }
+
+    /**
+     * Occupies the city if it is vacant.
+     */
+    boolean tryOccupy(int city, int monster) {
+        return state.compareAndSetCityState(city, VACANT, monster + 1);
+    }
+
+    /**
+     * Leaves the city if the monster is still occupying it.
+     *
+     * @return false if the monster was not in the city (anymore)
+     */
+    boolean vacate(int city, int monster) {
+        return state.compareAndSetCityState(city, monster + 1, VACANT);
+    }
+
+    boolean isLockFree() {
+        return occupancy == Occupancy.LOCK_FREE;
     }
 
     MonsterMoveProvider getMonsterMoveProvider() {
@@ -221,61 +666,322 @@ public class Game {
         return residenceDurationProvider;
     }
 
-    void scheduleMove(Monster monster) {
-        int delayInMillis = getResidenceDurationProvider().getDurationInMillis(monster);
-        final ScheduledFuture<?> schedule = scheduler.schedule(monster, delayInMillis, TimeUnit.MILLISECONDS);
+    void scheduleMove(int monster) {
+        int delayInMillis = getResidenceDurationProvider().getDurationInMillis(this, monster);
+        schedule(monster, delayInMillis);
+    }
+
+    private void schedule(int monster, int delayInMillis) {
+        if (shouldStopGame.get()) {
+            //stopped before the monster was done
+            return;
+        }
+        state.setWakeUpTime(monster, scheduler.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayInMillis));
+        metrics.moveScheduled();
+        scheduler.schedule(monster, delayInMillis);
+    }
+
+    void monsterWokeUp(int monster) {
+        if (scheduler != null) {
+            metrics.wokeUp(scheduler.nanoTime() - state.getWakeUpTime(monster));
+        }
+    }
+
+    /**
+     * Schedules another attempt of the monster's current move as per the retry policy.
+     *
+     * @return true if the monster should retry right away on the current thread instead
+     */
+    boolean retryMove(int monster, int attempt) {
+        metrics.retried();
+
+        int delayInMillis = retryPolicy.getRetryDelayInMillis(getMonster(monster + 1), attempt);
+        if (delayInMillis == RetryPolicy.RETRY_NOW) {
+            return true;
+        }
+        schedule(monster, delayInMillis);
+        return false;
+    }
+
+    void lockFailed() {
+        metrics.lockFailed();
+    }
+
+    MoveJournal getJournal() {
+        return journal;
+    }
+
+    GameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Counters of the game so far. Can be called from any thread while the game is played.
+     */
+    public GameMetricsSnapshot getMetricsSnapshot() {
+        return metrics.snapshot();
     }
 
-    void monsterStatusChanged(Monster monster) {
+    private Map<Monster.Status, Long> countMonstersByStatus() {
+        //monsters are set up when the game starts
+        long[] counts = new long[Monster.STATUSES.length];
+        int count = preparedMonsterCount;
+        for (int i = 0; i < count; i++) {
+            counts[state.getMonsterStatus(i)]++;
+        }
+
+        Map<Monster.Status, Long> monstersByStatus = new EnumMap<>(Monster.Status.class);
+        for (Monster.Status status : Monster.STATUSES) {
+            if (counts[status.ordinal()] > 0) {
+                monstersByStatus.put(status, counts[status.ordinal()]);
+            }
+        }
+        return monstersByStatus;
+    }
+
+    /**
+     * @return number of times monsters could not get the lock of a city they move from or to
+     */
+    public long getLockFailureCount() {
+        return metrics.getLockFailures();
+    }
+
+    /**
+     * @return number of times monsters tried a move again after a failed attempt
+     */
+    public long getRetryCount() {
+        return metrics.getRetries();
+    }
+
+    void monsterStatusChanged(int monster) {
         //so we compare the total monster count and count of notifications received
         //that should perform much better and serves the purpose compared to counting active monsters
 
-        logger.debug("monster {} reported status {}", monster.getId(), monster.getStatus());
+        logger.debug("monster {} reported status {}", monster + 1, Monster.STATUSES[state.getMonsterStatus(monster)]);
 
         if (monsterStatusNotificationCount.incrementAndGet() == monsterCount) {
-            logger.debug("all monsters have reported. shutdowning game...");
+            stopGame();
+        }
+    }
+
+    private void stopGame() {
+        synchronized (this) {
+            if (!shouldStopGame.compareAndSet(false, true)) {
+                return;
+            }
+            this.notify();
+        }
+
+        logger.debug("game is over. shutdowning game...");
+        if (scheduler != null) {
             scheduler.shutdown();
+        }
+        gameOver.complete(null);
+    }
+
+    /**
+     * @return true once all monsters have stopped, or the game was stopped before
+     */
+    boolean isOver() {
+        return shouldStopGame.get();
+    }
 
-            synchronized (this) {
-                shouldStopGame.set(true);
-                this.notify();
+    /**
+     * @return true if the game was cancelled or ran out of time. engines that drive
+     * the monsters themselves stop at the next tick
+     */
+    boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    /**
+     * Stops the monsters where they are. The game then finishes as usual, with the
+     * monsters still active at that point. Also done by cancelling the future of startAsync().
+     */
+    public void cancel() {
+        if (!gameStarted.get()) {
+            throw new IllegalStateException("game has not started");
+        }
+        stop("cancelled");
+    }
+
+    private void stop(String reason) {
+        if (shouldStopGame.get()) {
+            return;
+        }
+        logger.info("game {}. stopping monsters", reason);
+        stopRequested = true;
+        if (scheduler != null) {
+            stopGame();
+        }
+    }
+
+    /**
+     * Called before a monster runs, or the lockstep engine plays a tick. Waits while
+     * a checkpoint is taken.
+     */
+    void enterMove() {
+        while (true) {
+            movesInFlight.increment();
+            if (!paused) {
+                return;
+            }
+
+            //let the checkpoint go ahead, and come back when it is done
+            movesInFlight.decrement();
+            synchronized (pauseLock) {
+                while (paused) {
+                    try {
+                        pauseLock.wait();
+                    } catch (InterruptedException e) {
+                        //a monster run can't be cancelled half way. keep the interrupt for later
+                        Thread.currentThread().interrupt();
+                    }
+                }
             }
         }
     }
 
+    void exitMove() {
+        movesInFlight.decrement();
+    }
+
+    /**
+     * Writes the state of the game to a file, to be resumed later with
+     * new Builder(GameCheckpoint.read(file)), e.g. after a restart.
+     *
+     * Monsters are paused while the state is copied, which takes about as long as copying
+     * the arrays of the map, and move on while the copy is written. Can be called from any
+     * thread while the game is played, but not from the event handler or the providers,
+     * which run as part of a monster's move.
+     */
+    public void checkpoint(Path file) {
+        if (!gameStarted.get()) {
+            throw new IllegalStateException("game has not started");
+        }
+
+        GameCheckpoint checkpoint;
+        //one checkpoint at a time. monsters waiting on the lock go on once it is released
+        synchronized (pauseLock) {
+            long pauseStart = System.nanoTime();
+            paused = true;
+            try {
+                awaitMovesInFlight();
+                checkpoint = capture();
+
+            } finally {
+                paused = false;
+                pauseLock.notifyAll();
+            }
+            logger.debug("monsters paused for {} us for a checkpoint", (System.nanoTime() - pauseStart) / 1000);
+        }
+
+        checkpoint.write(file);
+    }
+
+    private void awaitMovesInFlight() {
+        while (movesInFlight.sum() != 0) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    /**
+     * @return copy of the state of the game. only called while no monster moves
+     */
+    private GameCheckpoint capture() {
+        int[] states = new int[graph.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = state.getCityState(i);
+        }
+
+        int[] monsterCities = new int[monsterCount];
+        long[] moveIds = new long[monsterCount];
+        Monster.Status[] statuses = new Monster.Status[monsterCount];
+        int[] wakeUpDelays = new int[monsterCount];
+
+        long now = scheduler != null ? scheduler.nanoTime() : 0;
+        int prepared = preparedMonsterCount;
+        for (int i = 0; i < monsterCount; i++) {
+            if (i >= prepared) {
+                //game is only about to set up the monsters
+                monsterCities[i] = CityGraph.NO_CITY;
+                moveIds[i] = 1;
+                statuses[i] = Monster.Status.ACTIVE;
+                wakeUpDelays[i] = GameCheckpoint.NOT_SCHEDULED;
+                continue;
+            }
+
+            monsterCities[i] = state.getMonsterCity(i);
+            moveIds[i] = state.getMoveCount(i) + 1L;
+            statuses[i] = Monster.STATUSES[state.getMonsterStatus(i)];
+            if (scheduler != null && statuses[i] == Monster.Status.ACTIVE) {
+                long remaining = Math.max(0, state.getWakeUpTime(i) - now);
+                wakeUpDelays[i] = (int) Math.min(Integer.MAX_VALUE,
+                        (remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        return new GameCheckpoint(graph.copy(), states, mininumMoveCount, fightEventId.get(),
+                monsterCities, moveIds, statuses, wakeUpDelays);
+    }
+
     //there might be destroyed cities with which neighbor references
     //have not been reset - per our design approach. so we reset all of those
     //when game finishes.
     private void postProcessNeighbors() {
-        destroyedCities.stream().forEach(city -> {
-            city.getNeighbors().entrySet().stream().forEach(neighbor -> {
-                Direction nd = neighbor.getKey();
-                City nc = neighbor.getValue();
-                nc.removeNeighbor(Direction.opposite(nd));
-            });
-        });
-    }
-
-    public void startGame() {
-        if (gameFinished.get()) {
-            throw new UnsupportedOperationException("game is desinged to be played once. create a new game please.");
+        for (int city = 0; city < graph.size(); city++) {
+            if (isCityDestroyed(city)) {
+                continue;
+            }
+            for (Direction direction : CityGraph.DIRECTIONS) {
+                int neighbor = graph.getNeighbor(city, direction);
+                if (neighbor != CityGraph.NO_CITY && isCityDestroyed(neighbor) && graph.isOnMap(neighbor)) {
+                    graph.removeNeighbor(city, direction);
+                }
+            }
         }
 
-        if (gameStarted.get()) {
-            throw new UnsupportedOperationException("game is already playing");
+        for (int city = 0; city < graph.size(); city++) {
+            if (isCityDestroyed(city) && graph.isOnMap(city)) {
+                graph.removeCity(city);
+            }
         }
+    }
 
-        gameStarted.set(true);
-
-        logger.info("game started. monsters {}, cities {}, threads {}", monsterCount, cities.size(), concurrentMonsterThreadCount);
+    //package-private so benchmarks can drive the monsters without starting the game
+    void prepareMonsters() {
+        placementCities = citiesNotDestroyed();
 
-        long startTime = System.currentTimeMillis();
+        //streams are split in id order, so each monster gets the same one for the same seed
+        if (seed != null) {
+            SplittableRandom random = new SplittableRandom(seed);
+            randoms = new SplittableRandom[monsterCount];
+            for (int i = 0; i < monsterCount; i++) {
+                randoms[i] = random.split();
+            }
+        }
 
-        for (int i=1; i<=monsterCount; i++) {
-            Monster monster = new Monster(i, mininumMoveCount, this);
-            monsters.add(monster);
-            scheduleMove(monster);
+        if (resumedFrom != null) {
+            //monsters go on where they were when the checkpoint was taken
+            for (int i = 0; i < monsterCount; i++) {
+                state.setMonsterCity(i, resumedFrom.monsterCities[i]);
+                state.setMoveCount(i, (int) resumedFrom.moveIds[i] - 1);
+                state.setMonsterStatus(i, (byte) resumedFrom.statuses[i].ordinal());
+                if (resumedFrom.statuses[i] != Monster.Status.ACTIVE) {
+                    //reported before the checkpoint
+                    monsterStatusNotificationCount.incrementAndGet();
+                }
+            }
         }
+        preparedMonsterCount = monsterCount;
+    }
+
+    private void playWithScheduler() {
+        scheduleMonsters();
+
+        //returns right away for the real-time engine. the virtual clock plays the
+        //whole game on this thread instead
+        scheduler.run();
 
         synchronized (this) {
             while (!shouldStopGame.get()) {
@@ -287,6 +993,170 @@ public class Game {
                 }
             }
         }
+    }
+
+    private void scheduleMonsters() {
+        enterMove();
+        try {
+            prepareMonsters();
+            for (int monster = 0; monster < monsterCount; monster++) {
+                if (state.getMonsterStatus(monster) != Monster.Status.ACTIVE.ordinal()) {
+                    continue;
+                }
+                int delayInMillis = resumedFrom != null ? resumedFrom.wakeUpDelays[monster] : GameCheckpoint.NOT_SCHEDULED;
+                if (delayInMillis == GameCheckpoint.NOT_SCHEDULED) {
+                    scheduleMove(monster);
+                } else {
+                    schedule(monster, delayInMillis);
+                }
+            }
+            if (monsterStatusNotificationCount.get() == monsterCount) {
+                //resumed a game that was over already
+                stopGame();
+            }
+
+        } finally {
+            exitMove();
+        }
+    }
+
+    private void playInLockstep() {
+        prepareMonsters();
+        new LockstepEngine(this, concurrentMonsterThreadCount).play(monsterCount);
+    }
+
+    private void replay() {
+        MoveJournal.Records records = MoveJournal.read(journalFile);
+        if (records.monsterCount != monsterCount || records.cityCount != graph.size()) {
+            throw new IllegalArgumentException("move journal " + journalFile + " is of a game of "
+                    + records.monsterCount + " monsters on " + records.cityCount + " cities");
+        }
+
+        prepareMonsters();
+        new ReplayEngine(this, records).play();
+    }
+
+    /**
+     * Plays the game on the calling thread, or waits for the scheduler's threads to play it.
+     *
+     * @return result of the game
+     */
+    public GameResult startGame() {
+        begin();
+        return playToEnd();
+    }
+
+    /**
+     * Starts the game without waiting for it. The real-time engine only takes threads of
+     * its scheduler while monsters move, so games sharing a scheduler and an executor
+     * (see Builder) share their threads. The other engines play the game on a thread of
+     * the executor.
+     *
+     * Cancelling the future stops the game, same as cancel().
+     *
+     * @return result of the game, once it is over
+     */
+    public CompletableFuture<GameResult> startAsync() {
+        begin();
+
+        CompletableFuture<GameResult> played;
+        if (engine == Engine.REAL_TIME) {
+            try {
+                scheduleMonsters();
+                scheduler.run();
+            } catch (RuntimeException | Error e) {
+                unregisterMetrics(metricsName);
+                throw e;
+            }
+            //not on the monster thread stopping the game, as end() waits for its move
+            played = executor != null
+                    ? gameOver.thenApplyAsync(ignored -> end(), executor)
+                    : gameOver.thenApplyAsync(ignored -> end());
+        } else {
+            Supplier<GameResult> play = this::playToEnd;
+            played = executor != null ? CompletableFuture.supplyAsync(play, executor) : CompletableFuture.supplyAsync(play);
+        }
+
+        //cancelling the future handed out stops the game, which still gets to finish
+        CompletableFuture<GameResult> result = new CompletableFuture<>();
+        played.whenComplete((gameResult, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            } else {
+                result.complete(gameResult);
+            }
+        });
+        result.whenComplete((gameResult, e) -> {
+            if (result.isCancelled()) {
+                stop("cancelled");
+            }
+        });
+        return result;
+    }
+
+    private void begin() {
+        if (gameFinished.get()) {
+            throw new UnsupportedOperationException("game is desinged to be played once. create a new game please.");
+        }
+
+        if (!gameStarted.compareAndSet(false, true)) {
+            throw new UnsupportedOperationException("game is already playing");
+        }
+
+        logger.info("game started. monsters {}, cities {}, threads {}, engine {}, occupancy {}, storage {}",
+                monsterCount, remainingCityCount.get(), concurrentMonsterThreadCount, engine, occupancy, storage);
+
+        startTime = System.currentTimeMillis();
+
+        metricsName = registerMetrics();
+        metrics.gameStarted();
+        if (journalFile != null && engine != Engine.REPLAY) {
+            try {
+                journal = MoveJournal.create(journalFile, monsterCount, graph.size(), mininumMoveCount);
+            } catch (RuntimeException e) {
+                unregisterMetrics(metricsName);
+                throw e;
+            }
+        }
+
+        if (timeBudgetMillis > 0) {
+            //run right on the timer thread, as stopping doesn't take long
+            CompletableFuture.runAsync(() -> stop("out of time"),
+                    CompletableFuture.delayedExecutor(timeBudgetMillis, TimeUnit.MILLISECONDS, Runnable::run));
+        }
+    }
+
+    private GameResult playToEnd() {
+        try {
+            if (engine == Engine.LOCKSTEP) {
+                playInLockstep();
+            } else if (engine == Engine.REPLAY) {
+                replay();
+            } else {
+                playWithScheduler();
+            }
+        } catch (RuntimeException | Error e) {
+            unregisterMetrics(metricsName);
+            throw e;
+        }
+        return end();
+    }
+
+    private GameResult end() {
+        try {
+            //killed or stopped monsters may still be finishing their runs
+            awaitMovesInFlight();
+            if (journal != null) {
+                journal.close();
+            }
+
+            //handlers may still hold on to fight events, e.g. to write them in batches
+            eventHandler.flush();
+            metrics.gameFinished();
+
+        } finally {
+            unregisterMetrics(metricsName);
+        }
 
         postProcessNeighbors();
 
@@ -294,17 +1164,48 @@ public class Game {
 
         gameFinished.set(true);
 
-        final Map<Monster.Status, Long> monstersByStatus = monsters.stream().collect(groupingBy(Monster::getStatus, counting()));
-        final int numberOfCitiesLeft = cities.size();
+        final Map<Monster.Status, Long> monstersByStatus = countMonstersByStatus();
+        final int numberOfCitiesLeft = remainingCityCount.get();
 
-        logger.info("game finished. took {} seconds. monsters {}, cities {}",
+        logger.info("game finished. took {} seconds. monsters {}, cities {}, lock failures {}, retries {}",
                 TimeUnit.SECONDS.convert(gameDuration, TimeUnit.MILLISECONDS),
                 monstersByStatus,
-                numberOfCitiesLeft);
+                numberOfCitiesLeft,
+                metrics.getLockFailures(),
+                metrics.getRetries());
+
+        return new GameResult(this::getCities, monstersByStatus, gameDuration, metrics.getFights(), metrics.getMovesCommitted(),
+                stopRequested && monstersByStatus.containsKey(Monster.Status.ACTIVE));
+    }
+
+    /**
+     * @return name the metrics got registered under, or null if that failed
+     */
+    private ObjectName registerMetrics() {
+        try {
+            ObjectName name = new ObjectName("org.gli58.game:type=GameMetrics,name=game-" + GAME_SEQUENCE.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        } catch (JMException e) {
+            //game can do without
+            logger.warn("failed to register game metrics with JMX", e);
+            return null;
+        }
+    }
+
+    private void unregisterMetrics(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.warn("failed to unregister game metrics from JMX", e);
+        }
     }
 
     public static class Builder {
-        private Set<City> cities;
+        private CityGraph graph;
         private int monsterCount;
 
         private int mininumMoveCount = 10_000;
@@ -312,13 +1213,43 @@ public class Game {
         private MonsterMoveProvider monsterMoveProvider = new RandomMonsterMoveProvider();
         private MonsterPlacementProvider monsterPlacementProvider = new RandomMonsterPlacementProvider();
         private ResidenceDurationProvider residenceDurationProvider = new RandomResidenceDurationProvider(10, 100);
+        private RetryPolicy retryPolicy;
         private EventHandler eventHandler = new ConsoleLoggingEventHandler();
-
+        private Engine engine = Engine.REAL_TIME;
+        private Occupancy occupancy = Occupancy.LOCKING;
+        private Storage storage = Storage.HEAP;
+        private Scheduling scheduling = Scheduling.EXECUTOR;
+        private ScheduledExecutorService scheduler;
+        private GameCheckpoint checkpoint;
+        private Long seed;
+        private Path journal;
+        private Executor executor;
+        private long timeBudgetMillis;
+        private CityOrder cityOrder = CityOrder.FILE;
+
+        /**
+         * Game on the given cities. If they are all the cities on the map of one
+         * CityGraph, e.g. as returned by MapIO, the game is played on that graph.
+         */
         public Builder(Set<City> cities, int monsterCount) {
-            this.cities = cities;
+            this(cities == null || cities.isEmpty() ? null : CityGraph.of(cities), monsterCount);
+        }
+
+        public Builder(CityGraph graph, int monsterCount) {
+            this.graph = graph;
             this.monsterCount = monsterCount;
         }
 
+        /**
+         * Game that goes on from a checkpoint. Providers, engine and threads are not part
+         * of the checkpoint, they can be set as for a new game.
+         */
+        public Builder(GameCheckpoint checkpoint) {
+            this(checkpoint.graph, checkpoint.getMonsterCount());
+            this.mininumMoveCount = checkpoint.minimumMoves;
+            this.checkpoint = checkpoint;
+        }
+
         Builder minMoves(int mininumMoveCount) {
             this.mininumMoveCount = mininumMoveCount;
             return this;
@@ -344,20 +1275,107 @@ public class Game {
             return this;
         }
 
+        //by default a failed move is tried again after another residence duration
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
         Builder eventHandler(EventHandler eventHandler) {
             this.eventHandler = eventHandler;
             return this;
         }
 
+        Builder engine(Engine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        //not used by the lockstep engine, which has no concurrent moves into the same city
+        Builder occupancy(Occupancy occupancy) {
+            this.occupancy = occupancy;
+            return this;
+        }
+
+        //off the heap for worlds of more cities than the heap can hold the state of. a map on
+        //the heap is copied off it for the game, see getCityGraph; read it off the heap to begin with
+        //if it doesn't fit twice
+        Builder storage(Storage storage) {
+            this.storage = storage;
+            return this;
+        }
+
+        //only used by the real-time engine
+        Builder scheduling(Scheduling scheduling) {
+            this.scheduling = scheduling;
+            return this;
+        }
+
+        //a pool of threads shared by games, or one for benchmarks and tests that need
+        //to drive monsters without a real scheduler. by default game creates its own
+        //pool of threads, and shuts it down when it's over. only used by the real-time engine
+        Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        //gives each monster a random stream of its own in the default providers,
+        //so a game can be played again with the same random choices
+        Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        //journal of the moves to write while playing, or to play back for Engine.REPLAY
+        Builder journal(Path journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        //runs games of startAsync() that need a thread, can be shared by games
+        Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        //monsters are stopped once the game took that long
+        Builder timeBudget(long millis) {
+            this.timeBudgetMillis = millis;
+            return this;
+        }
+
+        //plays on a copy of the map with the cities renumbered, so neighbors are close
+        //together in memory. the map given to the builder is left as it is. journals
+        //hold the new ids, so a replay needs the same order
+        Builder cityOrder(CityOrder cityOrder) {
+            this.cityOrder = cityOrder;
+            return this;
+        }
+
         public Game build() {
-            return new Game(cities,
+            if (cityOrder != CityOrder.FILE && checkpoint != null) {
+                throw new IllegalArgumentException("a checkpoint is resumed with the city ids it was taken with");
+            }
+
+            return new Game(graph != null ? graph.renumbered(cityOrder) : null,
                     monsterCount,
                     monsterPlacementProvider,
                     monsterMoveProvider,
                     residenceDurationProvider,
+                    retryPolicy,
                     mininumMoveCount,
                     concurrentMonsterThreadCount,
-                    eventHandler);
+                    engine,
+                    occupancy,
+                    storage,
+                    scheduling,
+                    scheduler,
+                    eventHandler,
+                    checkpoint,
+                    seed,
+                    journal,
+                    executor,
+                    timeBudgetMillis);
         }
     }
 }
@@ -0,0 +1,192 @@
+package org.gli58.game;
+
+import org.gli58.game.exceptions.MapParsingException;
+import org.gli58.game.exceptions.MapSavingToFileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * State of a game at a point where no monster is moving: the map with the roads left,
+ * the state of each city, and for each monster its city, move, status and how long
+ * until it wakes up. Taken by Game.checkpoint while the game is played, and resumed
+ * with new Game.Builder(checkpoint).
+ *
+ * The file layout, little endian:
+ *
+ * magic "GLIC", int version, long size of the city graph image, the image (see
+ * CityGraphImage), int monster count, int minimum moves, long id of the next fight,
+ * int[city count] city states, per monster int city, long move id, byte status and
+ * int milliseconds until it wakes up, int CRC32 of the bytes after the image.
+ * Checkpoints are read in order through mappings of up to 1 GB at a time, so they
+ * can be larger than a mapping can be.
+ */
+public final class GameCheckpoint {
+
+    static final int VERSION = 1;
+
+    /**
+     * wake-up delay of a monster that is not scheduled yet. it gets a residence duration
+     */
+    static final int NOT_SCHEDULED = -1;
+
+    private static final byte[] MAGIC = "GLIC".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 16;
+    private static final int MONSTER_SIZE = 4 + 8 + 1 + 4;
+    private static final int CHECKSUM_SIZE = 4;
+
+    private static final Monster.Status[] STATUSES = Monster.Status.values();
+
+    final CityGraph graph;
+    final int[] cityStates;
+    final int minimumMoves;
+    final long nextFightEventId;
+
+    final int[] monsterCities;
+    final long[] moveIds;
+    final Monster.Status[] statuses;
+    final int[] wakeUpDelays;
+
+    GameCheckpoint(CityGraph graph, int[] cityStates, int minimumMoves, long nextFightEventId,
+                   int[] monsterCities, long[] moveIds, Monster.Status[] statuses, int[] wakeUpDelays) {
+        this.graph = graph;
+        this.cityStates = cityStates;
+        this.minimumMoves = minimumMoves;
+        this.nextFightEventId = nextFightEventId;
+        this.monsterCities = monsterCities;
+        this.moveIds = moveIds;
+        this.statuses = statuses;
+        this.wakeUpDelays = wakeUpDelays;
+    }
+
+    public int getMonsterCount() {
+        return monsterCities.length;
+    }
+
+    public CityGraph getCityGraph() {
+        return graph;
+    }
+
+    void write(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putInt(VERSION).putLong(CityGraphImage.size(graph)).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            CityGraphImage.write(graph, channel);
+
+            ChecksumWriter writer = new ChecksumWriter(channel);
+            writer.putInt(getMonsterCount());
+            writer.putInt(minimumMoves);
+            writer.putLong(nextFightEventId);
+            writer.putInts(cityStates, cityStates.length);
+            for (int i = 0; i < getMonsterCount(); i++) {
+                writer.putInt(monsterCities[i]);
+                writer.putLong(moveIds[i]);
+                writer.putByte((byte) statuses[i].ordinal());
+                writer.putInt(wakeUpDelays[i]);
+            }
+            writer.finish();
+
+        } catch (IOException e) {
+            throw new MapSavingToFileException("cannot save game checkpoint to " + file, e);
+        }
+    }
+
+    public static GameCheckpoint read(Path file) {
+        return read(file, MappedReader.MAX_WINDOW_SIZE);
+    }
+
+    //window size is only smaller for tests
+    static GameCheckpoint read(Path file, int maxWindowSize) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(file, new MappedReader(channel, 0, maxWindowSize));
+
+        } catch (IOException e) {
+            throw new MapParsingException("failed to read game checkpoint " + file, e);
+        }
+    }
+
+    private static GameCheckpoint read(Path file, MappedReader reader) throws IOException {
+        if (reader.remaining() < HEADER_SIZE) {
+            throw invalid(file, "too short");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (reader.get() != MAGIC[i]) {
+                throw invalid(file, "not a game checkpoint");
+            }
+        }
+        int version = reader.getInt();
+        if (version != VERSION) {
+            throw invalid(file, "unsupported version " + version);
+        }
+        long imageSize = reader.getLong();
+        if (imageSize < 0 || imageSize > reader.remaining()) {
+            throw invalid(file, "size doesn't match its header");
+        }
+
+        CityGraph graph = CityGraphImage.read(reader, imageSize, file);
+
+        if (reader.remaining() < 16 + CHECKSUM_SIZE) {
+            throw invalid(file, "too short");
+        }
+        reader.startChecksum();
+        int monsterCount = reader.getInt();
+        int minimumMoves = reader.getInt();
+        long nextFightEventId = reader.getLong();
+        if (monsterCount < 1 || reader.remaining() != 4L * graph.size() + (long) MONSTER_SIZE * monsterCount + CHECKSUM_SIZE) {
+            throw invalid(file, "size doesn't match its header");
+        }
+
+        int[] cityStates = new int[graph.size()];
+        reader.getInts(cityStates, 0, cityStates.length);
+
+        int[] monsterCities = new int[monsterCount];
+        long[] moveIds = new long[monsterCount];
+        byte[] statusOrdinals = new byte[monsterCount];
+        int[] wakeUpDelays = new int[monsterCount];
+        for (int i = 0; i < monsterCount; i++) {
+            monsterCities[i] = reader.getInt();
+            moveIds[i] = reader.getLong();
+            statusOrdinals[i] = reader.get();
+            wakeUpDelays[i] = reader.getInt();
+        }
+
+        if (reader.checksum() != reader.getInt()) {
+            throw invalid(file, "checksum mismatch");
+        }
+
+        Monster.Status[] statuses = new Monster.Status[monsterCount];
+        for (int i = 0; i < monsterCount; i++) {
+            int status = statusOrdinals[i];
+            if (status < 0 || status >= STATUSES.length) {
+                throw invalid(file, "bad status " + status);
+            }
+            statuses[i] = STATUSES[status];
+            if (monsterCities[i] < CityGraph.NO_CITY || monsterCities[i] >= graph.size()) {
+                throw invalid(file, "bad city " + monsterCities[i]);
+            }
+        }
+
+        for (int state : cityStates) {
+            if (state < Game.DESTROYED || state > monsterCount) {
+                throw invalid(file, "bad city state " + state);
+            }
+        }
+
+        return new GameCheckpoint(graph, cityStates, minimumMoves, nextFightEventId,
+                monsterCities, moveIds, statuses, wakeUpDelays);
+    }
+
+    private static MapParsingException invalid(Path file, String reason) {
+        return new MapParsingException("invalid game checkpoint " + file + ": " + reason);
+    }
+}
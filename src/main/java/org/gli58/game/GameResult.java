@@ -0,0 +1,85 @@
+package org.gli58.game;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Outcome of a game started with Game.startAsync().
+ */
+public final class GameResult {
+    private final Supplier<Set<City>> citiesLeft;
+    private volatile Set<City> cities;
+    private final Map<Monster.Status, Long> monsterCountsByStatus;
+    private final long durationMillis;
+    private final long fightCount;
+    private final long moveCount;
+    private final boolean stopped;
+
+    GameResult(Supplier<Set<City>> citiesLeft, Map<Monster.Status, Long> monsterCountsByStatus, long durationMillis,
+               long fightCount, long moveCount, boolean stopped) {
+        this.citiesLeft = citiesLeft;
+        this.monsterCountsByStatus = monsterCountsByStatus.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new EnumMap<>(monsterCountsByStatus));
+        this.durationMillis = durationMillis;
+        this.fightCount = fightCount;
+        this.moveCount = moveCount;
+        this.stopped = stopped;
+    }
+
+    /**
+     * @return cities left standing, with the roads between them. the views are made on
+     * the first call, not for every game whether asked for or not
+     */
+    public Set<City> getCities() {
+        Set<City> cities = this.cities;
+        if (cities == null) {
+            cities = citiesLeft.get();
+            this.cities = cities;
+        }
+        return cities;
+    }
+
+    /**
+     * @return number of monsters per status. statuses no monster ended up with are left out
+     */
+    public Map<Monster.Status, Long> getMonsterCountsByStatus() {
+        return monsterCountsByStatus;
+    }
+
+    public long getMonsterCount(Monster.Status status) {
+        return monsterCountsByStatus.getOrDefault(status, 0L);
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getFightCount() {
+        return fightCount;
+    }
+
+    /**
+     * @return moves committed by all monsters
+     */
+    public long getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return true if the game was cancelled or ran out of time with monsters still active
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    @Override
+    public String toString() {
+        return "GameResult{cities=" + cities.size() + ", monsters=" + monsterCountsByStatus
+                + ", durationMillis=" + durationMillis + ", fights=" + fightCount + ", moves=" + moveCount
+                + ", stopped=" + stopped + "}";
+    }
+}
@@ -0,0 +1,86 @@
+package org.gli58.game;
+
+/**
+ * State of a game that changes while it is played, by city id and by monster index
+ * (monster id - 1), kept as per its Storage. It's the monster table as well: a Monster
+ * is only a view of its index, and the engines move monsters by index.
+ *
+ * The state of a city is Game.VACANT, Game.DESTROYED, or the id of the monster
+ * occupying it, and changes atomically. Roads, cities, move counts and the other
+ * counters of monsters are only written by the thread moving the monster, or while no
+ * monster moves. Wake-up times and counters other threads read are written with release
+ * semantics. Statuses change atomically.
+ */
+abstract class GameState {
+
+    static GameState create(Storage storage, CityGraph graph, int monsterCount) {
+        //roads are part of the state, removed from the graph itself as monsters go
+        switch (storage) {
+            case HEAP:
+                return new HeapGameState(graph, monsterCount);
+            case OFF_HEAP:
+                return new OffHeapGameState(graph, monsterCount);
+        }
+        throw new IllegalArgumentException("unknown storage " + storage);
+    }
+
+    abstract int getCityState(int city);
+
+    abstract void setCityState(int city, int state);
+
+    abstract boolean compareAndSetCityState(int city, int expectedState, int state);
+
+    abstract boolean isDestroyed(int city);
+
+    /**
+     * @return id of the neighbor in the direction, by Direction ordinal, or CityGraph.NO_CITY
+     */
+    abstract int getNeighbor(int city, int direction);
+
+    abstract void removeNeighbor(int city, int direction);
+
+    /**
+     * @return id of the city the monster occupies, or CityGraph.NO_CITY
+     */
+    abstract int getMonsterCity(int monster);
+
+    abstract void setMonsterCity(int monster, int city);
+
+    /**
+     * @return number of moves the monster made, the placement being the first one
+     */
+    abstract int getMoveCount(int monster);
+
+    abstract void setMoveCount(int monster, int moveCount);
+
+    /**
+     * @return ordinal of the Monster.Status of the monster
+     */
+    abstract byte getMonsterStatus(int monster);
+
+    abstract void setMonsterStatus(int monster, byte status);
+
+    abstract boolean compareAndSetMonsterStatus(int monster, byte expectedStatus, byte status);
+
+    /**
+     * @return when the monster is scheduled to run next, by the clock of the game's scheduler
+     */
+    abstract long getWakeUpTime(int monster);
+
+    abstract void setWakeUpTime(int monster, long wakeUpTime);
+
+    /**
+     * @return failed attempts of the monster's current move
+     */
+    abstract int getFailedAttempts(int monster);
+
+    abstract void setFailedAttempts(int monster, int failedAttempts);
+
+    abstract int getLockFailureCount(int monster);
+
+    abstract void setLockFailureCount(int monster, int lockFailureCount);
+
+    abstract int getRetryCount(int monster);
+
+    abstract void setRetryCount(int monster, int retryCount);
+}
@@ -0,0 +1,147 @@
+package org.gli58.game;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Game state in arrays on the heap. The roads are the ones of the graph.
+ */
+final class HeapGameState extends GameState {
+    private static final VarHandle STATUSES = MethodHandles.arrayElementVarHandle(byte[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final CityGraph graph;
+    private final AtomicIntegerArray cityStates;
+
+    private final int[] monsterCities;
+    private final int[] moveCounts;
+    private final byte[] statuses;
+    private final long[] wakeUpTimes;
+    private final int[] failedAttempts;
+    private final int[] lockFailureCounts;
+    private final int[] retryCounts;
+
+    HeapGameState(CityGraph graph, int monsterCount) {
+        if (graph.getStorage() != Storage.HEAP) {
+            throw new IllegalArgumentException("roads of the graph are off the heap");
+        }
+        this.graph = graph;
+        this.cityStates = new AtomicIntegerArray(graph.size());
+        this.monsterCities = new int[monsterCount];
+        this.moveCounts = new int[monsterCount];
+        this.statuses = new byte[monsterCount];
+        this.wakeUpTimes = new long[monsterCount];
+        this.failedAttempts = new int[monsterCount];
+        this.lockFailureCounts = new int[monsterCount];
+        this.retryCounts = new int[monsterCount];
+        Arrays.fill(monsterCities, CityGraph.NO_CITY);
+    }
+
+    @Override
+    int getCityState(int city) {
+        return cityStates.get(city);
+    }
+
+    @Override
+    void setCityState(int city, int state) {
+        cityStates.set(city, state);
+    }
+
+    @Override
+    boolean compareAndSetCityState(int city, int expectedState, int state) {
+        return cityStates.compareAndSet(city, expectedState, state);
+    }
+
+    @Override
+    boolean isDestroyed(int city) {
+        return cityStates.get(city) == Game.DESTROYED;
+    }
+
+    @Override
+    int getNeighbor(int city, int direction) {
+        return graph.neighbors[city * CityGraph.DIRECTION_COUNT + direction];
+    }
+
+    @Override
+    void removeNeighbor(int city, int direction) {
+        graph.removeNeighbor(city, CityGraph.DIRECTIONS[direction]);
+    }
+
+    @Override
+    int getMonsterCity(int monster) {
+        return monsterCities[monster];
+    }
+
+    @Override
+    void setMonsterCity(int monster, int city) {
+        monsterCities[monster] = city;
+    }
+
+    @Override
+    int getMoveCount(int monster) {
+        return moveCounts[monster];
+    }
+
+    @Override
+    void setMoveCount(int monster, int moveCount) {
+        moveCounts[monster] = moveCount;
+    }
+
+    @Override
+    byte getMonsterStatus(int monster) {
+        return (byte) STATUSES.getVolatile(statuses, monster);
+    }
+
+    @Override
+    void setMonsterStatus(int monster, byte status) {
+        STATUSES.setVolatile(statuses, monster, status);
+    }
+
+    @Override
+    boolean compareAndSetMonsterStatus(int monster, byte expectedStatus, byte status) {
+        return STATUSES.compareAndSet(statuses, monster, expectedStatus, status);
+    }
+
+    @Override
+    long getWakeUpTime(int monster) {
+        return (long) LONGS.getAcquire(wakeUpTimes, monster);
+    }
+
+    @Override
+    void setWakeUpTime(int monster, long wakeUpTime) {
+        LONGS.setRelease(wakeUpTimes, monster, wakeUpTime);
+    }
+
+    @Override
+    int getFailedAttempts(int monster) {
+        return failedAttempts[monster];
+    }
+
+    @Override
+    void setFailedAttempts(int monster, int failedAttempts) {
+        this.failedAttempts[monster] = failedAttempts;
+    }
+
+    @Override
+    int getLockFailureCount(int monster) {
+        return (int) INTS.getAcquire(lockFailureCounts, monster);
+    }
+
+    @Override
+    void setLockFailureCount(int monster, int lockFailureCount) {
+        INTS.setRelease(lockFailureCounts, monster, lockFailureCount);
+    }
+
+    @Override
+    int getRetryCount(int monster) {
+        return (int) INTS.getAcquire(retryCounts, monster);
+    }
+
+    @Override
+    void setRetryCount(int monster, int retryCount) {
+        INTS.setRelease(retryCounts, monster, retryCount);
+    }
+}
@@ -0,0 +1,229 @@
+package org.gli58.game;
+
+import org.gli58.game.event.FightEvent;
+import org.gli58.game.jfr.MonsterEvents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Plays a game in lockstep: in every tick each active monster picks its next city,
+ * then all the moves are applied together. Both phases run in parallel on a
+ * ForkJoinPool.
+ *
+ * Conflicts are resolved by a fixed rule rather than by whoever gets a lock first:
+ * all monsters that end up in the same city in the same tick - the ones arriving
+ * plus one staying there - fight, kill each other and destroy the city. Fights are
+ * published ordered by the lowest monster id involved. Given providers that are
+ * deterministic per monster, the outcome is therefore the same for any number of
+ * threads.
+ *
+ * Two monsters swapping cities pass each other on the road and do not fight.
+ * Placing the monsters counts as their first move, same as for the other engines.
+ */
+class LockstepEngine {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final byte ACTIVE = (byte) Monster.Status.ACTIVE.ordinal();
+
+    private final Game game;
+    private final int threadCount;
+
+    LockstepEngine(Game game, int threadCount) {
+        this.game = game;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @param monsterCount number of monsters, which are stepped by index
+     */
+    void play(int monsterCount) {
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            pool.submit(() -> playInPool(monsterCount)).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void playInPool(int monsterCount) {
+        final GameState state = game.getState();
+        final int[] targets = new int[monsterCount];
+        Arrays.fill(targets, CityGraph.NO_CITY);
+
+        //placement goes through the provider one monster at a time, in id order.
+        //a game resumed from a checkpoint only places the monsters not placed yet
+        final List<City> cityList = game.getPlacementCities();
+        int[] active;
+        game.enterMove();
+        try {
+            for (int i = 0; i < monsterCount; i++) {
+                if (state.getMonsterStatus(i) == ACTIVE && state.getMonsterCity(i) == CityGraph.NO_CITY) {
+                    targets[i] = game.getCityId(game.getMonsterPlacementProvider().apply(cityList, game.getMonster(i + 1)));
+                }
+            }
+            applyMoves(targets);
+            active = activeMonsters(monsterCount);
+        } finally {
+            game.exitMove();
+        }
+
+        //a checkpoint is taken between ticks, and a stopped game ends there too
+        long tick = 1;
+        while (active.length > 0 && !game.isStopRequested()) {
+            final int[] movers = active;
+            game.enterMove();
+            try {
+                Arrays.fill(targets, CityGraph.NO_CITY);
+
+                IntStream.of(movers).parallel().forEach(i -> targets[i] = pickTarget(game.getMover(), i));
+
+                applyMoves(targets);
+                active = activeMonsters(monsterCount);
+            } finally {
+                game.exitMove();
+            }
+
+            logger.debug("tick {} done. {} monsters were active", tick, movers.length);
+            tick++;
+        }
+    }
+
+    private int[] activeMonsters(int monsterCount) {
+        GameState state = game.getState();
+        return IntStream.range(0, monsterCount).parallel()
+                .filter(i -> state.getMonsterStatus(i) == ACTIVE)
+                .toArray();
+    }
+
+    //only touches the monster's own city, which no other monster occupies at this point
+    private int pickTarget(MonsterMover mover, int monster) {
+        if (mover.isTired(monster)) {
+            mover.tired(monster);
+            return CityGraph.NO_CITY;
+        }
+
+        int nextCity = mover.findNextCity(monster, game.getState().getMonsterCity(monster));
+        if (nextCity == CityGraph.NO_CITY) {
+            mover.trapped(monster);
+        }
+        return nextCity;
+    }
+
+    private void applyMoves(int[] targets) {
+        final GameState state = game.getState();
+
+        //(target city, monster index) pairs sorted, so the monsters heading to the
+        //same city form one run, ordered by monster index
+        final long[] arrivals = IntStream.range(0, targets.length).parallel()
+                .filter(i -> targets[i] != CityGraph.NO_CITY)
+                .mapToLong(i -> ((long) targets[i] << 32) | i)
+                .toArray();
+        Arrays.parallelSort(arrivals);
+
+        //everybody moving leaves first, so cities being left are free for the monsters arriving
+        LongStream.of(arrivals).parallel().forEach(arrival -> {
+            int monster = monsterIndex(arrival);
+            if (state.getMonsterCity(monster) != CityGraph.NO_CITY) {
+                game.vacate(state.getMonsterCity(monster), monster);
+            }
+        });
+
+        final int[] runStarts = IntStream.range(0, arrivals.length).parallel()
+                .filter(i -> i == 0 || city(arrivals[i]) != city(arrivals[i - 1]))
+                .toArray();
+
+        final ConcurrentLinkedQueue<Fight> fights = new ConcurrentLinkedQueue<>();
+
+        //each city is settled by exactly one task
+        IntStream.range(0, runStarts.length).parallel().forEach(run -> {
+            int from = runStarts[run];
+            int to = run + 1 < runStarts.length ? runStarts[run + 1] : arrivals.length;
+            int city = city(arrivals[from]);
+
+            int staying = game.getOccupant(city);
+            if (staying == Game.NO_MONSTER && to - from == 1) {
+                int monster = monsterIndex(arrivals[from]);
+                game.occupy(city, monster);
+                game.getMover().movedTo(monster, city);
+                return;
+            }
+
+            int[] contenders = new int[to - from + (staying != Game.NO_MONSTER ? 1 : 0)];
+            int count = 0;
+            if (staying != Game.NO_MONSTER) {
+                contenders[count++] = staying;
+            }
+            for (int i = from; i < to; i++) {
+                contenders[count++] = monsterIndex(arrivals[i]);
+            }
+            game.destroyCity(city);
+            fights.add(new Fight(city, contenders));
+        });
+
+        fights.stream()
+                .sorted(Comparator.comparingInt(Fight::getLowestMonster))
+                .forEach(this::publish);
+    }
+
+    private static int city(long arrival) {
+        return (int) (arrival >>> 32);
+    }
+
+    private static int monsterIndex(long arrival) {
+        return (int) arrival;
+    }
+
+    private void publish(Fight fight) {
+        int[] monsters = fight.monsters;
+        Set<Monster> fighters = new HashSet<>();
+        for (int monster : monsters) {
+            fighters.add(game.getMonster(monster + 1));
+        }
+        FightEvent fightEvent = new FightEvent(game.getFightEventId().getAndIncrement(),
+                game.getCityGraph().getCity(fight.city), fighters);
+        game.getEventHandler().handle(fightEvent);
+        game.getMetrics().fought();
+        MonsterEvents.cityDestroyed(game.getCityGraph(), fight.city, monsters[monsters.length - 1] + 1,
+                monsters[0] + 1, monsters.length, 0);
+        MoveJournal journal = game.getJournal();
+        if (journal != null) {
+            for (int i = 1; i < monsters.length; i++) {
+                journal.fought(monsters[0] + 1, fight.city, monsters[i] + 1);
+            }
+        }
+
+        MonsterMover mover = game.getMover();
+        for (int monster : monsters) {
+            mover.gotIntoFightAndKilled(monster);
+        }
+    }
+
+    private static class Fight {
+        private final int city;
+        //indexes of the monsters, the one staying in the city first
+        private final int[] monsters;
+
+        Fight(int city, int[] monsters) {
+            this.city = city;
+            this.monsters = monsters;
+        }
+
+        int getLowestMonster() {
+            int lowest = Integer.MAX_VALUE;
+            for (int monster : monsters) {
+                lowest = Math.min(lowest, monster);
+            }
+            return lowest;
+        }
+    }
+}
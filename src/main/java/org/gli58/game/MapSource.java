@@ -0,0 +1,38 @@
+package org.gli58.game;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The map file a CityGraph was parsed from, as it was when parsing started. Lines of
+ * cities that didn't change since can be copied from the file as they are, as long
+ * as the file itself is unchanged.
+ */
+public final class MapSource {
+
+    private final Path file;
+    private final long size;
+    private final long lastModifiedMillis;
+
+    public MapSource(Path file) throws IOException {
+        this.file = file;
+        this.size = Files.size(file);
+        this.lastModifiedMillis = Files.getLastModifiedTime(file).toMillis();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return true if the file still has the size and modification time it had
+     */
+    public boolean isUnchanged() {
+        try {
+            return Files.size(file) == size && Files.getLastModifiedTime(file).toMillis() == lastModifiedMillis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.gli58.game;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Reads little endian values from a file in order, the reading side of ChecksumWriter.
+ * The file is mapped one window at a time, each starting where the last value read
+ * ended, so files larger than a mapping can be are read too. Between startChecksum()
+ * and checksum(), what is read is added to a CRC32.
+ */
+class MappedReader {
+
+    static final int MAX_WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int maxWindowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private final CRC32 crc = new CRC32();
+    private boolean checksumStarted = false;
+    //index in the window of the first byte not added to the checksum yet
+    private int checksumFrom;
+
+    MappedReader(FileChannel channel, long position) throws IOException {
+        this(channel, position, MAX_WINDOW_SIZE);
+    }
+
+    //window size is only smaller for tests
+    MappedReader(FileChannel channel, long position, int maxWindowSize) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.maxWindowSize = maxWindowSize;
+        this.windowStart = position;
+    }
+
+    /**
+     * @return offset in the file of the next byte to read
+     */
+    long position() {
+        return window == null ? windowStart : windowStart + window.position();
+    }
+
+    /**
+     * @return number of bytes left in the file
+     */
+    long remaining() {
+        return size - position();
+    }
+
+    byte get() throws IOException {
+        ensureRemaining(1);
+        return window.get();
+    }
+
+    int getInt() throws IOException {
+        ensureRemaining(4);
+        return window.getInt();
+    }
+
+    long getLong() throws IOException {
+        ensureRemaining(8);
+        return window.getLong();
+    }
+
+    void getInts(int[] values, int offset, int count) throws IOException {
+        int end = offset + count;
+        while (offset < end) {
+            ensureRemaining(4);
+            int length = Math.min(end - offset, window.remaining() / 4);
+            window.asIntBuffer().get(values, offset, length);
+            window.position(window.position() + 4 * length);
+            offset += length;
+        }
+    }
+
+    void getBytes(byte[] values, int offset, int count) throws IOException {
+        int end = offset + count;
+        while (offset < end) {
+            ensureRemaining(1);
+            int length = Math.min(end - offset, window.remaining());
+            window.get(values, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Fills the remaining bytes of the target.
+     */
+    void get(ByteBuffer target) throws IOException {
+        while (target.hasRemaining()) {
+            ensureRemaining(1);
+            int length = Math.min(target.remaining(), window.remaining());
+            target.put(window.duplicate().limit(window.position() + length));
+            window.position(window.position() + length);
+        }
+    }
+
+    /**
+     * Starts a new checksum of what is read from here on.
+     */
+    void startChecksum() {
+        crc.reset();
+        checksumStarted = true;
+        checksumFrom = window == null ? 0 : window.position();
+    }
+
+    /**
+     * @return CRC32 of what was read since startChecksum()
+     */
+    int checksum() {
+        updateChecksum();
+        return (int) crc.getValue();
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (window != null && window.remaining() >= bytes) {
+            return;
+        }
+        if (remaining() < bytes) {
+            throw new EOFException();
+        }
+
+        updateChecksum();
+        windowStart = position();
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(maxWindowSize, size - windowStart));
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        checksumFrom = 0;
+    }
+
+    private void updateChecksum() {
+        if (checksumStarted && window != null && checksumFrom < window.position()) {
+            ByteBuffer read = window.duplicate();
+            read.position(checksumFrom).limit(window.position());
+            crc.update(read);
+            checksumFrom = window.position();
+        }
+    }
+}
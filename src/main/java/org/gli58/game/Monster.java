@@ -1,258 +1,140 @@
 package org.gli58.game;
 
-import org.gli58.game.event.FightEvent;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.*;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
-
-import static java.util.stream.Collectors.partitioningBy;
-
+/**
+ * View of a monster of a game. What the monster is up to is kept by the game's
+ * GameState at index id - 1, and its moves are made by a MonsterMover, so a view
+ * holds nothing but the game and the index. Monsters of the same id are equal.
+ *
+ * Monsters of a game played in other processes, i.e. by the workers of a ShardedGame,
+ * are only known by their id and the status they were reported with.
+ */
 public class Monster implements Runnable {
-    private Logger logger = LoggerFactory.getLogger(this.getClass());
 
     public enum Status {ACTIVE, TRAPPED, KILLED, TIRED, ERRORED};
 
-    private final Game game;
-    private final long id;
-    private final long mininumMoves;
+    static final Status[] STATUSES = Status.values();
 
-    private City occupiedCity;
-    private AtomicBoolean shouldStop = new AtomicBoolean(false);
-    private long moveId = 1;
-    private AtomicReference<Status> status;
+    private final Game game;
+    private final int index;
 
-    public Monster(long id, long mininumMoves, Game game) {
-        if (mininumMoves < 1) {
-            throw new IllegalArgumentException("monster is not allowed to move at all");
-        }
+    //status of a monster of a game played elsewhere, null for views
+    private final Status reportedStatus;
 
+    Monster(Game game, int index) {
         if (game == null) {
             throw new IllegalArgumentException("monster needs to belong to a game");
         }
 
         this.game = game;
-        this.id = id;
-        this.mininumMoves = mininumMoves;
+        this.index = index;
+        this.reportedStatus = null;
+    }
 
-        this.status = new AtomicReference(Status.ACTIVE);
+    /**
+     * Monster of a game played in other processes, as they reported it.
+     */
+    Monster(long id, Status status) {
+        if (id < 1 || id > Integer.MAX_VALUE || status == null) {
+            throw new IllegalArgumentException("monster " + id + " with status " + status + " not valid");
+        }
+
+        this.game = null;
+        this.index = (int) (id - 1);
+        this.reportedStatus = status;
     }
 
     public long getId() {
-        return id;
+        return index + 1L;
+    }
+
+    int getIndex() {
+        return index;
     }
 
     public Status getStatus() {
-        return status.get();
+        if (game == null) {
+            return reportedStatus;
+        }
+        return STATUSES[game.getState().getMonsterStatus(index)];
+    }
+
+    /**
+     * @return number of times the monster could not get the lock of a city it moves from or to
+     */
+    public long getLockFailureCount() {
+        return game == null ? 0 : game.getState().getLockFailureCount(index);
+    }
+
+    /**
+     * @return number of times the monster tried a move again after a failed attempt
+     */
+    public long getRetryCount() {
+        return game == null ? 0 : game.getState().getRetryCount(index);
     }
 
     public void setOccupiedCity(City newCity) {
-        this.occupiedCity = newCity;
+        requirePlayedHere();
+        game.getState().setMonsterCity(index, newCity == null ? CityGraph.NO_CITY : game.getCityId(newCity));
     }
 
-    private void setStatus(Status status) {
-        this.status.set(status);
-        game.monsterStatusChanged(this);
+    int getOccupiedCityId() {
+        return game.getState().getMonsterCity(index);
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Monster monster = (Monster) o;
-        return id == monster.id;
+    long getMoveId() {
+        return game.getState().getMoveCount(index) + 1L;
     }
 
-    @Override
-    public int hashCode() {
-        return Objects.hash(id);
+    /**
+     * @return random int in [0, bound) from the monster's own stream if the game is seeded
+     */
+    public int nextRandomInt(int bound) {
+        return game.nextRandomInt(index, bound);
     }
 
-    @Override
-    public String toString() {
-        return "monster " + id;
+    /**
+     * @return random int in [origin, bound) from the monster's own stream if the game is seeded
+     */
+    int nextRandomInt(int origin, int bound) {
+        return game.nextRandomInt(index, origin, bound);
     }
 
     public void gotIntoFightAndKilled() {
-        setStatus(Status.KILLED);
-        shouldStop.set(true);
+        requirePlayedHere();
+        game.getMover().gotIntoFightAndKilled(index);
     }
 
+    /**
+     * Makes the monster's next move, same as the game's scheduler does.
+     */
     @Override
     public void run() {
-        try {
-            runWithErrorHandled();
-
-        } catch (Throwable e) {
-            logger.error("monster {} encountered error", getId(), e);
-            setStatus(Status.ERRORED);
-        }
-    }
-
-    private void runWithErrorHandled() {
-        logger.debug("monster {} running", getId());
-
-        if (shouldStop.get()) {
-            logger.debug("monster {} killed", getId());
-            return;
-        }
-
-        if (moveId > mininumMoves) {
-            setStatus(Status.TIRED);
-            logger.debug("monster {} tired", getId());
-            return;
-        }
-
-        //the logic behind this call has been refactored into multiple methods
-        //with nested lock acquisition. for better readability.
-        tryFindAndOccupy(occupiedCity);
-
-        moveId++;
+        requirePlayedHere();
+        game.runMonster(index);
     }
 
-    private void tryFindAndOccupy(City fromCity) {
-        if (fromCity == null) {
-            List<City> cityList = new ArrayList(game.getCities());
-            City startCity = game.getMonsterPlacementProvider().apply(cityList, this);
-            logger.debug("monster {} started in {}", getId(), startCity);
-            tryOccupyWithFromCityLocked(null, startCity);
-            return;
-        }
-
-        boolean fromCityLocked = false;
-
-        try {
-            fromCityLocked = fromCity.lock.tryLock();
-            if (fromCityLocked) {
-                City nextCity = findNextCity(fromCity);
-
-                if (nextCity == null) {
-                    //monster is trapped
-                    setStatus(Monster.Status.TRAPPED);
-                    logger.debug("monster {} trapped", getId());
-
-                    return;
-                }
-
-                tryOccupyWithFromCityLocked(fromCity, nextCity);
-
-            } else {
-                //give up this round - try same move next round
-                game.scheduleMove(this);
-            }
-
-        } finally {
-            if (fromCityLocked) {
-                fromCity.lock.unlock();
-            }
+    private void requirePlayedHere() {
+        if (game == null) {
+            throw new UnsupportedOperationException(this + " is played in another process");
         }
     }
 
-    private void tryOccupyWithFromCityLocked(City fromCity, City nextCity) {
-
-        logger.debug("monster {} trying to occupy {}", getId(), nextCity);
-
-        boolean nextCityLocked = false;
-        try {
-            nextCityLocked = nextCity.lock.tryLock();
-            if (nextCityLocked) {
-                tryOccupyWithNextCityLocked(fromCity, nextCity);
-
-            } else {
-                //try again same move next round
-                game.scheduleMove(this);
-            }
-
-        } finally {
-            if (nextCityLocked) {
-                nextCity.lock.unlock();
-            }
-        }
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Monster monster = (Monster) o;
+        return index == monster.index;
     }
 
-    private City findNextCity(City fromCity) {
-        final Set<Direction> potentialDirections = fromCity.getNeighbors().keySet();
-        if (potentialDirections.isEmpty()) {
-            return null;
-        }
-
-        final List<Direction> directions = new ArrayList(potentialDirections);
-        if (directions.size() == 1) {
-            Direction direction = directions.get(0);
-            City nextCity = fromCity.getNeighbor(direction);
-
-            if (game.isCityDestroyed(nextCity)) {
-                fromCity.removeNeighbor(direction);
-                return null;
-            } else {
-                return nextCity;
-            }
-
-        } else {
-            final Map<Boolean, List<Direction>> groupedDirections = directions.stream()
-                    .collect(partitioningBy(d -> game.isCityDestroyed(fromCity.getNeighbor(d))));
-
-            groupedDirections.get(Boolean.TRUE).forEach(d -> fromCity.removeNeighbor(d));
-
-            List<Direction> navigableDirections = groupedDirections.get(Boolean.FALSE);
-            if (navigableDirections.size() == 0) {
-                return null;
-            } else {
-                Direction selectedDirection = game.getMonsterMoveProvider().apply(this, Collections.synchronizedList(navigableDirections));
-                return fromCity.getNeighbor(selectedDirection);
-            }
-        }
+    @Override
+    public int hashCode() {
+        //same as Objects.hash(id), without the array of its varargs
+        return 31 + Long.hashCode(getId());
     }
 
-    private void tryOccupyWithNextCityLocked(City fromCity, City nextCity) {
-        ConcurrentMap<City, Monster> citiesOccupied = game.getCitiesOccupied();
-
-        if (game.isCityDestroyed(nextCity)) {
-            //next city has been destroyed and not able to move to. try same move next round
-            game.scheduleMove(this);
-            return;
-        }
-
-        Monster existingMonster = citiesOccupied.get(nextCity);
-        if (existingMonster == null) {
-            //successfully occupied the new city. cycle repeats
-
-            if (fromCity != null) {
-                citiesOccupied.remove(fromCity);
-            }
-            citiesOccupied.put(nextCity, this);
-
-            setOccupiedCity(nextCity);
-            game.scheduleMove(this);
-
-            logger.debug("monster {} occupied {}", getId(), nextCity);
-
-        } else {
-            //there is alreay monster in this city. they fight
-            Set<Monster> monstersFighting = new HashSet<>(Arrays.asList(this, existingMonster));
-
-            FightEvent fightEvent = new FightEvent(game.getFightEventId().getAndIncrement(), nextCity, monstersFighting);
-            game.getEventHandler().handle(fightEvent);
-
-            //notify the monster already in city that it's been killed
-            existingMonster.gotIntoFightAndKilled();
-
-            //remove city only - not udpating back reference from neighbors
-            //because we don't want to acquire all locks of its neighbors
-            //rather the approach here is for monster to check if a neighbor 'really' exists
-            game.destroyCity(nextCity);
-
-            citiesOccupied.remove(nextCity);
-
-            if (fromCity != null) {
-                citiesOccupied.remove(fromCity);
-            }
-
-            setStatus(Monster.Status.KILLED);
-            logger.debug("monster {} killed", getId());
-        }
+    @Override
+    public String toString() {
+        return "monster " + getId();
     }
 }
@@ -5,4 +5,14 @@ import java.util.function.BiFunction;
 
 @FunctionalInterface
 interface MonsterMoveProvider extends BiFunction<Monster, List<Direction>, Direction> {
+
+    /**
+     * What the game calls on every move. Picks from a view of the monster by default;
+     * providers that don't need one override this, so a move doesn't allocate it.
+     *
+     * @param monster index of the monster, i.e. its id - 1
+     */
+    default Direction apply(Game game, int monster, List<Direction> directions) {
+        return apply(game.getMonster(monster + 1), directions);
+    }
 }
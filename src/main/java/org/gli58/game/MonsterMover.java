@@ -0,0 +1,472 @@
+package org.gli58.game;
+
+import org.gli58.game.event.FightEvent;
+import org.gli58.game.jfr.MonsterEvents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Moves the monsters of a game, by index (monster id - 1), on the state the game
+ * keeps for them. A game has a mover per thread that moves its monsters, as the
+ * outcome of an attempt is kept here while the cities are locked, to be reported
+ * once they are not. A monster is only moved by one thread at a time.
+ */
+class MonsterMover {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    //how an attempt to make a move ended
+    private enum Attempt {MOVED, FOUGHT, TRAPPED, STOPPED, FAILED}
+
+    private static final byte ACTIVE = (byte) Monster.Status.ACTIVE.ordinal();
+    private static final byte KILLED = (byte) Monster.Status.KILLED.ordinal();
+    private static final byte ERRORED = (byte) Monster.Status.ERRORED.ordinal();
+
+    //directions of each mask of navigable directions, bit d being direction d, in the
+    //order of their ordinals. handed to the move provider, so a move needs no list of its own
+    private static final List<List<Direction>> NAVIGABLE_DIRECTIONS = navigableDirections();
+
+    private final Game game;
+    private final GameState state;
+
+    //outcome of a fight, recorded while the cities are locked and reported after
+    private int foughtCity = CityGraph.NO_CITY;
+    private int opponent;
+    private boolean opponentKilled;
+    private boolean killed;
+
+    //city whose lock the last attempt failed to get, and whether it was the city moved from
+    private int lockFailedCity = CityGraph.NO_CITY;
+    private boolean lockFailedOnFromCity;
+
+    MonsterMover(Game game) {
+        this.game = game;
+        this.state = game.getState();
+    }
+
+    /**
+     * Makes the monster's next move, trying again as per the game's retry policy,
+     * and schedules the one after.
+     */
+    void run(int monster) {
+        //a checkpoint waits for the monsters in the middle of a run
+        game.enterMove();
+        try {
+            if (game.isOver()) {
+                //woke up on a shared executor after the game was stopped
+                return;
+            }
+            game.monsterWokeUp(monster);
+            runWithErrorHandled(monster);
+
+        } catch (Throwable e) {
+            logger.error("monster {} encountered error", monster + 1, e);
+            errored(monster);
+
+        } finally {
+            game.exitMove();
+        }
+    }
+
+    private static List<List<Direction>> navigableDirections() {
+        List<List<Direction>> lists = new ArrayList<>(1 << CityGraph.DIRECTION_COUNT);
+        for (int mask = 0; mask < 1 << CityGraph.DIRECTION_COUNT; mask++) {
+            List<Direction> directions = new ArrayList<>(Integer.bitCount(mask));
+            for (Direction direction : CityGraph.DIRECTIONS) {
+                if ((mask & (1 << direction.ordinal())) != 0) {
+                    directions.add(direction);
+                }
+            }
+            lists.add(Collections.unmodifiableList(directions));
+        }
+        return Collections.unmodifiableList(lists);
+    }
+
+    private void runWithErrorHandled(int monster) {
+        //guarded, so the id isn't boxed on every move
+        if (logger.isDebugEnabled()) {
+            logger.debug("monster {} running", monster + 1);
+        }
+
+        while (true) {
+            if (state.getMonsterStatus(monster) == KILLED) {
+                logger.debug("monster {} killed", monster + 1);
+                return;
+            }
+
+            if (isTired(monster)) {
+                tired(monster);
+                logger.debug("monster {} tired", monster + 1);
+                return;
+            }
+
+            final int fromCity = state.getMonsterCity(monster);
+            final long attemptStart = MonsterEvents.attemptStarted();
+
+            //the logic behind the locking call has been refactored into multiple methods
+            //with nested lock acquisition. for better readability.
+            Attempt attempt = game.isLockFree() ? findAndOccupyLockFree(monster, fromCity) : tryFindAndOccupy(monster, fromCity);
+
+            //cities are unlocked by now. the side effects of the attempt are run from here,
+            //so that a slow event handler or scheduler doesn't hold up other monsters
+
+            if (attempt == Attempt.MOVED) {
+                long moveId = state.getMoveCount(monster) + 1L;
+                int occupiedCity = state.getMonsterCity(monster);
+                MonsterEvents.moveCommitted(game.getCityGraph(), monster + 1, moveId, fromCity, occupiedCity, attemptStart);
+                MoveJournal journal = game.getJournal();
+                if (journal != null) {
+                    journal.moved(monster + 1, occupiedCity, moveId);
+                }
+                state.setFailedAttempts(monster, 0);
+                state.setMoveCount(monster, (int) moveId);
+                game.getMetrics().moveCommitted();
+                game.scheduleMove(monster);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("monster {} occupied {}", monster + 1, occupiedCity);
+                }
+                return;
+            }
+
+            if (attempt == Attempt.FOUGHT) {
+                reportFight(monster, attemptStart);
+                return;
+            }
+
+            if (attempt == Attempt.TRAPPED) {
+                trapped(monster);
+                logger.debug("monster {} trapped", monster + 1);
+                return;
+            }
+
+            if (attempt == Attempt.STOPPED) {
+                return;
+            }
+
+            if (lockFailedCity != CityGraph.NO_CITY) {
+                MonsterEvents.lockFailed(game.getCityGraph(), monster + 1, lockFailedCity, lockFailedOnFromCity, attemptStart);
+                lockFailedCity = CityGraph.NO_CITY;
+            }
+
+            //same move again, now or later as the retry policy says
+            state.setRetryCount(monster, state.getRetryCount(monster) + 1);
+            int failedAttempts = state.getFailedAttempts(monster) + 1;
+            state.setFailedAttempts(monster, failedAttempts);
+            if (!game.retryMove(monster, failedAttempts)) {
+                return;
+            }
+        }
+    }
+
+    boolean isTired(int monster) {
+        return state.getMoveCount(monster) + 1L > game.getMinimumMoveCount();
+    }
+
+    //for engines that move monsters from outside, e.g. the lockstep engine
+    void movedTo(int monster, int city) {
+        long moveId = state.getMoveCount(monster) + 1L;
+        MonsterEvents.moveCommitted(game.getCityGraph(), monster + 1, moveId, state.getMonsterCity(monster), city, 0);
+        MoveJournal journal = game.getJournal();
+        if (journal != null) {
+            journal.moved(monster + 1, city, moveId);
+        }
+        state.setMonsterCity(monster, city);
+        state.setMoveCount(monster, (int) moveId);
+        game.getMetrics().moveCommitted();
+    }
+
+    void trapped(int monster) {
+        MonsterEvents.trapped(game.getCityGraph(), monster + 1, state.getMonsterCity(monster));
+        setStatus(monster, Monster.Status.TRAPPED);
+    }
+
+    void tired(int monster) {
+        MonsterEvents.tired(game.getCityGraph(), monster + 1, state.getMonsterCity(monster), state.getMoveCount(monster));
+        setStatus(monster, Monster.Status.TIRED);
+    }
+
+    void errored(int monster) {
+        setStatus(monster, Monster.Status.ERRORED);
+    }
+
+    void gotIntoFightAndKilled(int monster) {
+        if (changeStatus(monster, Monster.Status.KILLED)) {
+            game.monsterStatusChanged(monster);
+        }
+    }
+
+    private void setStatus(int monster, Monster.Status status) {
+        if (changeStatus(monster, status)) {
+            //journaled before the game hears of it, as the last status change ends the game
+            MoveJournal journal = game.getJournal();
+            if (journal != null) {
+                journal.stopped(monster + 1, state.getMonsterCity(monster), status == Monster.Status.TRAPPED ? MoveJournal.TRAPPED
+                        : status == Monster.Status.TIRED ? MoveJournal.TIRED : MoveJournal.ERRORED);
+            }
+            game.monsterStatusChanged(monster);
+        }
+    }
+
+    /**
+     * Changes the status without reporting it to the game.
+     *
+     * @return true if the change needs to be reported
+     */
+    private boolean changeStatus(int monster, Monster.Status status) {
+        //a killed monster stays killed, e.g. when it finds out it is tired right as
+        //another monster fights it. and the game counts monsters that stopped being active,
+        //so only the first change is reported, not a trapped monster that later gets killed
+        byte previous;
+        do {
+            previous = state.getMonsterStatus(monster);
+            if (previous == KILLED || previous == ERRORED) {
+                return false;
+            }
+        } while (!state.compareAndSetMonsterStatus(monster, previous, (byte) status.ordinal()));
+
+        return previous == ACTIVE;
+    }
+
+    /**
+     * Kills both monsters of a fight in the city and destroys it. Only changes state,
+     * the fight is reported by reportFight().
+     */
+    private void fight(int monster, int city, int existingMonster) {
+        foughtCity = city;
+        opponent = existingMonster;
+        //a killed monster stops at the start of its next run
+        opponentKilled = changeStatus(existingMonster, Monster.Status.KILLED);
+        killed = changeStatus(monster, Monster.Status.KILLED);
+    }
+
+    private void reportFight(int monster, long attemptStart) {
+        //the event goes out before the status changes, as the last status change ends the game
+        FightEvent fightEvent = new FightEvent(game.getFightEventId().getAndIncrement(),
+                game.getCityGraph().getCity(foughtCity), game.getMonster(monster + 1), game.getMonster(opponent + 1));
+        game.getEventHandler().handle(fightEvent);
+        game.getMetrics().fought();
+        MonsterEvents.cityDestroyed(game.getCityGraph(), foughtCity, monster + 1, opponent + 1, 2, attemptStart);
+        MoveJournal journal = game.getJournal();
+        if (journal != null) {
+            journal.fought(monster + 1, foughtCity, opponent + 1);
+        }
+
+        if (opponentKilled) {
+            game.monsterStatusChanged(opponent);
+        }
+        if (killed) {
+            game.monsterStatusChanged(monster);
+        }
+        logger.debug("monster {} killed", monster + 1);
+    }
+
+    private void lockFailed(int monster, int city, boolean fromCity) {
+        state.setLockFailureCount(monster, state.getLockFailureCount(monster) + 1);
+        game.lockFailed();
+        lockFailedCity = city;
+        lockFailedOnFromCity = fromCity;
+    }
+
+    private int placementCity(int monster) {
+        City startCity = game.getMonsterPlacementProvider().apply(game.getPlacementCities(), game.getMonster(monster + 1));
+        logger.debug("monster {} started in {}", monster + 1, startCity);
+        return game.getCityId(startCity);
+    }
+
+    private Attempt tryFindAndOccupy(int monster, int fromCity) {
+        if (fromCity == CityGraph.NO_CITY) {
+            return tryOccupyWithFromCityLocked(monster, CityGraph.NO_CITY, placementCity(monster));
+        }
+
+        final Lock fromCityLock = game.getCityLock(fromCity);
+        boolean fromCityLocked = false;
+
+        try {
+            fromCityLocked = fromCityLock.tryLock();
+            if (fromCityLocked) {
+                if (game.isCityDestroyed(fromCity)) {
+                    //another monster came in and fought this one since this run started
+                    return Attempt.STOPPED;
+                }
+
+                int nextCity = findNextCity(monster, fromCity);
+
+                if (nextCity == CityGraph.NO_CITY) {
+                    //monster is trapped
+                    return Attempt.TRAPPED;
+                }
+
+                return tryOccupyWithFromCityLocked(monster, fromCity, nextCity);
+
+            } else {
+                //give up this attempt - try same move again
+                lockFailed(monster, fromCity, true);
+                return Attempt.FAILED;
+            }
+
+        } finally {
+            if (fromCityLocked) {
+                fromCityLock.unlock();
+            }
+        }
+    }
+
+    private Attempt tryOccupyWithFromCityLocked(int monster, int fromCity, int nextCity) {
+
+        final Lock nextCityLock = game.getCityLock(nextCity);
+        boolean nextCityLocked = false;
+        try {
+            nextCityLocked = nextCityLock.tryLock();
+            if (nextCityLocked) {
+                return tryOccupyWithNextCityLocked(monster, fromCity, nextCity);
+
+            } else {
+                //try same move again
+                lockFailed(monster, nextCity, false);
+                return Attempt.FAILED;
+            }
+
+        } finally {
+            if (nextCityLocked) {
+                nextCityLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Picks the next city to move to, dropping the roads to destroyed cities on the way.
+     *
+     * @return id of the next city, or CityGraph.NO_CITY if the monster is trapped
+     */
+    int findNextCity(int monster, int fromCity) {
+        int navigable = 0;
+        for (int direction = 0; direction < CityGraph.DIRECTION_COUNT; direction++) {
+            int neighbor = state.getNeighbor(fromCity, direction);
+            if (neighbor == CityGraph.NO_CITY) {
+                continue;
+            }
+
+            if (state.isDestroyed(neighbor)) {
+                state.removeNeighbor(fromCity, direction);
+            } else {
+                navigable |= 1 << direction;
+            }
+        }
+
+        if (navigable == 0) {
+            return CityGraph.NO_CITY;
+
+        } else if ((navigable & (navigable - 1)) == 0) {
+            //only one way to go
+            return state.getNeighbor(fromCity, Integer.numberOfTrailingZeros(navigable));
+
+        } else {
+            Direction selectedDirection = game.getMonsterMoveProvider().apply(game, monster, NAVIGABLE_DIRECTIONS.get(navigable));
+            return state.getNeighbor(fromCity, selectedDirection.ordinal());
+        }
+    }
+
+    private Attempt tryOccupyWithNextCityLocked(int monster, int fromCity, int nextCity) {
+        if (game.isCityDestroyed(nextCity)) {
+            //next city has been destroyed and not able to move to. try same move again
+            return Attempt.FAILED;
+        }
+
+        int existingMonster = game.getOccupant(nextCity);
+        if (existingMonster == Game.NO_MONSTER) {
+            //successfully occupied the new city. cycle repeats
+
+            if (fromCity != CityGraph.NO_CITY) {
+                game.vacate(fromCity, monster);
+            }
+            game.occupy(nextCity, monster);
+
+            state.setMonsterCity(monster, nextCity);
+            return Attempt.MOVED;
+
+        } else {
+            //there is alreay monster in this city. they fight
+            fight(monster, nextCity, existingMonster);
+
+            //destroying the city also drops the monster occupying it. not udpating back
+            //reference from neighbors because we don't want to acquire all locks of its neighbors
+            //rather the approach here is for monster to check if a neighbor 'really' exists
+            game.destroyCity(nextCity);
+
+            if (fromCity != CityGraph.NO_CITY) {
+                game.vacate(fromCity, monster);
+            }
+
+            return Attempt.FOUGHT;
+        }
+    }
+
+    private Attempt findAndOccupyLockFree(int monster, int fromCity) {
+        if (fromCity == CityGraph.NO_CITY) {
+            return enterLockFree(monster, CityGraph.NO_CITY, placementCity(monster));
+        }
+
+        int nextCity = findNextCity(monster, fromCity);
+        if (nextCity == CityGraph.NO_CITY) {
+            //monster is trapped
+            return Attempt.TRAPPED;
+        }
+
+        //leaving only fails when another monster came in and fought this one,
+        //which destroyed the city and killed this monster already
+        if (!game.vacate(fromCity, monster)) {
+            logger.debug("monster {} killed before leaving {}", monster + 1, fromCity);
+            return Attempt.STOPPED;
+        }
+        state.setMonsterCity(monster, CityGraph.NO_CITY);
+
+        return enterLockFree(monster, fromCity, nextCity);
+    }
+
+    /**
+     * Enters a city with a single compare-and-set on its state: vacant to occupied by
+     * the monster, or occupied by another monster to destroyed. On a lost race the
+     * state is read again. If the city got destroyed since it was picked, the monster
+     * goes back to the city it came from the same way, which is not a move: the attempt
+     * failed, and the move is tried again from there. Lost races are retried right here,
+     * they are not failed attempts.
+     */
+    private Attempt enterLockFree(int monster, int fromCity, int nextCity) {
+        int city = nextCity;
+        int cameFrom = fromCity;
+
+        while (true) {
+            int cityState = game.getCityState(city);
+
+            if (cityState == Game.DESTROYED) {
+                if (cameFrom == CityGraph.NO_CITY) {
+                    if (city == nextCity) {
+                        //start city has been destroyed. try being placed again
+                        return Attempt.FAILED;
+                    }
+                    //both cities got destroyed while this monster was on the road. nowhere to go
+                    logger.debug("monster {} trapped on the road", monster + 1);
+                    return Attempt.TRAPPED;
+                }
+                city = cameFrom;
+                cameFrom = CityGraph.NO_CITY;
+
+            } else if (cityState == Game.VACANT) {
+                if (game.tryOccupy(city, monster)) {
+                    state.setMonsterCity(monster, city);
+                    //back where it came from, it is neither counted nor journaled as a move
+                    return city == nextCity ? Attempt.MOVED : Attempt.FAILED;
+                }
+
+            } else if (game.tryDestroyCity(city, cityState)) {
+                //there is alreay monster in this city. they fight
+                fight(monster, city, cityState - 1);
+                return Attempt.FOUGHT;
+            }
+        }
+    }
+}
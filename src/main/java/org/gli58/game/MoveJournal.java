@@ -0,0 +1,257 @@
+package org.gli58.game;
+
+import org.gli58.game.exceptions.MapParsingException;
+import org.gli58.game.exceptions.MapSavingToFileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only journal of what monsters did in a game: moves they committed, fights,
+ * and monsters getting trapped, tired or errored. Engine.REPLAY plays a journal back.
+ *
+ * Records are fixed-width, little endian: long sequence, int type, int monster id,
+ * int city id, int value - the move number for a move, the id of the other monster
+ * for a fight. The file starts with a header of the same width: magic "GLIJ", int
+ * version, int monster count, int city count, int minimum moves, int record size.
+ *
+ * Each thread appends to a buffer of its own, and full buffers are written as they
+ * are, so records of different threads are not in order in the file. The sequence,
+ * taken when a record is added, orders them: it follows the order of the records of
+ * each monster, and replay puts them back in that order. Journals are read through
+ * mappings of up to 1 GB at a time, so they can be larger than a mapping can be.
+ */
+final class MoveJournal {
+
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 24;
+
+    static final int MOVED = 0;
+    static final int FOUGHT = 1;
+    static final int TRAPPED = 2;
+    static final int TIRED = 3;
+    static final int ERRORED = 4;
+
+    private static final byte[] MAGIC = "GLIJ".getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = RECORD_SIZE * 4096;
+    private static final int MAX_RECORD_COUNT = Integer.MAX_VALUE - 8;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final AtomicLong sequence = new AtomicLong();
+
+    //buffers of all threads, to write what is left in them on close
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ByteBuffer> buffer = ThreadLocal.withInitial(() -> {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffers.add(buffer);
+        return buffer;
+    });
+
+    //first failure to write, reported on close. monsters go on meanwhile
+    private volatile IOException failure;
+
+    private MoveJournal(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    static MoveJournal create(Path file, int monsterCount, int cityCount, int minimumMoves) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putInt(VERSION).putInt(monsterCount).putInt(cityCount).putInt(minimumMoves)
+                    .putInt(RECORD_SIZE).flip();
+            try {
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return new MoveJournal(file, channel);
+
+        } catch (IOException e) {
+            throw new MapSavingToFileException("cannot create move journal " + file, e);
+        }
+    }
+
+    void moved(long monsterId, int city, long moveId) {
+        append(MOVED, monsterId, city, toInt(moveId, "move id"));
+    }
+
+    void fought(long monsterId, int city, long opponentId) {
+        append(FOUGHT, monsterId, city, toInt(opponentId, "monster id"));
+    }
+
+    void stopped(long monsterId, int city, int type) {
+        append(type, monsterId, city, 0);
+    }
+
+    private void append(int type, long monsterId, int city, int value) {
+        int id = toInt(monsterId, "monster id");
+        ByteBuffer buffer = this.buffer.get();
+        buffer.putLong(sequence.getAndIncrement())
+                .putInt(type)
+                .putInt(id)
+                .putInt(city)
+                .putInt(value);
+
+        if (!buffer.hasRemaining()) {
+            flush(buffer);
+        }
+    }
+
+    private void flush(ByteBuffer buffer) {
+        buffer.flip();
+        //one buffer at a time, so records of a buffer stay together
+        synchronized (this) {
+            try {
+                if (failure == null) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes what is left in the buffers of all threads. Only called once no monster moves anymore.
+     */
+    void close() {
+        for (ByteBuffer buffer : buffers) {
+            flush(buffer);
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        if (failure != null) {
+            throw new MapSavingToFileException("cannot write move journal " + file, failure);
+        }
+    }
+
+    //records have ints for ids, rather than wrap around they are not written
+    private static int toInt(long value, String what) {
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(what + " " + value + " doesn't fit in a journal record");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Records of a journal file, put back in sequence order.
+     */
+    static final class Records {
+        final int monsterCount;
+        final int cityCount;
+        final int minimumMoves;
+
+        final int[] types;
+        final int[] monsterIds;
+        final int[] cities;
+        final int[] values;
+
+        private Records(int monsterCount, int cityCount, int minimumMoves, int count) {
+            this.monsterCount = monsterCount;
+            this.cityCount = cityCount;
+            this.minimumMoves = minimumMoves;
+            this.types = new int[count];
+            this.monsterIds = new int[count];
+            this.cities = new int[count];
+            this.values = new int[count];
+        }
+
+        int size() {
+            return types.length;
+        }
+    }
+
+    static Records read(Path file) {
+        return read(file, MappedReader.MAX_WINDOW_SIZE);
+    }
+
+    //window size is only smaller for tests
+    static Records read(Path file, int maxWindowSize) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(file, new MappedReader(channel, 0, maxWindowSize));
+
+        } catch (IOException e) {
+            throw new MapParsingException("failed to read move journal " + file, e);
+        }
+    }
+
+    private static Records read(Path file, MappedReader reader) throws IOException {
+        long size = reader.remaining();
+        if (size < RECORD_SIZE) {
+            throw invalid(file, "too short");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (reader.get() != MAGIC[i]) {
+                throw invalid(file, "not a move journal");
+            }
+        }
+        int version = reader.getInt();
+        int monsterCount = reader.getInt();
+        int cityCount = reader.getInt();
+        int minimumMoves = reader.getInt();
+        if (version != VERSION || reader.getInt() != RECORD_SIZE) {
+            throw invalid(file, "unsupported version " + version);
+        }
+        if (size % RECORD_SIZE != 0) {
+            throw invalid(file, "ends within a record");
+        }
+        //records go to java arrays
+        if (size / RECORD_SIZE - 1 > MAX_RECORD_COUNT) {
+            throw invalid(file, "more than " + MAX_RECORD_COUNT + " records");
+        }
+
+        int count = (int) (size / RECORD_SIZE - 1);
+        Records records = new Records(monsterCount, cityCount, minimumMoves, count);
+
+        //sequences are 0 to count - 1, so each record goes straight to its place
+        boolean[] seen = new boolean[count];
+        for (long offset = RECORD_SIZE; offset < size; offset += RECORD_SIZE) {
+            long sequence = reader.getLong();
+            if (sequence < 0 || sequence >= count || seen[(int) sequence]) {
+                throw invalid(file, "bad sequence " + sequence + " at byte " + offset);
+            }
+            int i = (int) sequence;
+            seen[i] = true;
+            records.types[i] = reader.getInt();
+            records.monsterIds[i] = reader.getInt();
+            records.cities[i] = reader.getInt();
+            records.values[i] = reader.getInt();
+
+            if (records.types[i] < MOVED || records.types[i] > ERRORED
+                    || records.monsterIds[i] < 1 || records.monsterIds[i] > records.monsterCount
+                    || records.cities[i] < CityGraph.NO_CITY || records.cities[i] >= records.cityCount) {
+                throw invalid(file, "bad record at byte " + offset);
+            }
+        }
+        return records;
+    }
+
+    private static MapParsingException invalid(Path file, String reason) {
+        return new MapParsingException("invalid move journal " + file + ": " + reason);
+    }
+}
@@ -0,0 +1,33 @@
+package org.gli58.game;
+
+/**
+ * Makes monsters move after they have stayed in a city for a while.
+ */
+interface MoveScheduler {
+
+    /**
+     * Schedules the next run of a monster, which the scheduler hands to the IntConsumer
+     * it was created with.
+     *
+     * @param monster index of the monster to run, i.e. its id - 1
+     * @param delayInMillis how long the monster stays before it runs
+     */
+    void schedule(int monster, int delayInMillis);
+
+    /**
+     * Called by the game thread once all monsters are scheduled. A scheduler that
+     * does not have threads of its own runs the monsters here, until it is shut down
+     * or there is nothing left to run.
+     */
+    void run();
+
+    /**
+     * Stops running monsters. Called once all monsters have reported their final status.
+     */
+    void shutdown();
+
+    /**
+     * @return current time of the clock the scheduler runs monsters by, in nanoseconds
+     */
+    long nanoTime();
+}
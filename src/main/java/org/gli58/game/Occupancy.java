@@ -0,0 +1,22 @@
+package org.gli58.game;
+
+/**
+ * How monsters claim the cities they move in and out of.
+ */
+public enum Occupancy {
+
+    /**
+     * A move locks the city being left and the city being entered with tryLock.
+     * If either lock is taken, the monster gives up and tries the same move again
+     * after the next residence duration.
+     */
+    LOCKING,
+
+    /**
+     * The occupant and destroyed state of each city sit in one atomic slot, and
+     * leaving a city, entering a city and fighting are each a single compare-and-set
+     * on that slot. A monster losing a race re-reads the slot and carries on, so it
+     * never has to wait for the next residence duration to retry.
+     */
+    LOCK_FREE
+}
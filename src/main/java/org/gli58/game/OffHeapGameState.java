@@ -0,0 +1,190 @@
+package org.gli58.game;
+
+/**
+ * Game state in DirectMemory, outside the Java heap. Per city the state (an int) and a
+ * bit in the destroyed bitset; per monster its city, move count and counters (ints),
+ * wake-up time (a long) and status (a byte). The roads are the ones of the graph, which
+ * has to be kept off the heap too.
+ *
+ * The bitset is set right after a city state changes to destroyed. It's what monsters
+ * look at to pick their next city, as it's 32 times smaller than the states, but the
+ * states are what a city is entered or fought over with.
+ */
+final class OffHeapGameState extends GameState {
+    private final CityGraph graph;
+    private final DirectMemory roads;
+    private final DirectMemory cityStates;
+    private final DirectMemory destroyed;
+
+    private final DirectMemory monsterCities;
+    private final DirectMemory moveCounts;
+    //4 monsters per int, changed with compare-and-set on the int
+    private final DirectMemory statuses;
+    private final DirectMemory wakeUpTimes;
+    private final DirectMemory failedAttempts;
+    private final DirectMemory lockFailureCounts;
+    private final DirectMemory retryCounts;
+
+    OffHeapGameState(CityGraph graph, int monsterCount) {
+        this(graph, monsterCount, DirectMemory.CHUNK_SHIFT);
+    }
+
+    /**
+     * @param chunkShift log2 of the size of the buffers, in bytes. smaller ones for tests
+     */
+    OffHeapGameState(CityGraph graph, int monsterCount, int chunkShift) {
+        if (graph.getStorage() != Storage.OFF_HEAP) {
+            throw new IllegalArgumentException("roads of the graph are on the heap");
+        }
+        int cityCount = graph.size();
+        this.graph = graph;
+        this.roads = graph.offHeapNeighbors;
+        this.cityStates = new DirectMemory(4L * cityCount, chunkShift);
+        this.destroyed = new DirectMemory(8L * ((cityCount + 63) >>> 6), chunkShift);
+        this.monsterCities = new DirectMemory(4L * monsterCount, chunkShift);
+        this.moveCounts = new DirectMemory(4L * monsterCount, chunkShift);
+        this.statuses = new DirectMemory(4L * ((monsterCount + 3) >>> 2), chunkShift);
+        this.wakeUpTimes = new DirectMemory(8L * monsterCount, chunkShift);
+        this.failedAttempts = new DirectMemory(4L * monsterCount, chunkShift);
+        this.lockFailureCounts = new DirectMemory(4L * monsterCount, chunkShift);
+        this.retryCounts = new DirectMemory(4L * monsterCount, chunkShift);
+
+        for (int monster = 0; monster < monsterCount; monster++) {
+            monsterCities.setInt(monster, CityGraph.NO_CITY);
+        }
+    }
+
+    @Override
+    int getCityState(int city) {
+        return cityStates.getIntVolatile(city);
+    }
+
+    @Override
+    void setCityState(int city, int state) {
+        cityStates.setIntVolatile(city, state);
+        if (state == Game.DESTROYED) {
+            setDestroyed(city);
+        }
+    }
+
+    @Override
+    boolean compareAndSetCityState(int city, int expectedState, int state) {
+        if (!cityStates.compareAndSetInt(city, expectedState, state)) {
+            return false;
+        }
+        if (state == Game.DESTROYED) {
+            setDestroyed(city);
+        }
+        return true;
+    }
+
+    private void setDestroyed(int city) {
+        destroyed.orLong(city >>> 6, 1L << city);
+    }
+
+    @Override
+    boolean isDestroyed(int city) {
+        return (destroyed.getLongVolatile(city >>> 6) & (1L << city)) != 0;
+    }
+
+    @Override
+    int getNeighbor(int city, int direction) {
+        return roads.getInt((long) city * CityGraph.DIRECTION_COUNT + direction);
+    }
+
+    @Override
+    void removeNeighbor(int city, int direction) {
+        graph.removeNeighbor(city, CityGraph.DIRECTIONS[direction]);
+    }
+
+    @Override
+    int getMonsterCity(int monster) {
+        return monsterCities.getInt(monster);
+    }
+
+    @Override
+    void setMonsterCity(int monster, int city) {
+        monsterCities.setInt(monster, city);
+    }
+
+    @Override
+    int getMoveCount(int monster) {
+        return moveCounts.getInt(monster);
+    }
+
+    @Override
+    void setMoveCount(int monster, int moveCount) {
+        moveCounts.setInt(monster, moveCount);
+    }
+
+    @Override
+    byte getMonsterStatus(int monster) {
+        return (byte) (statuses.getIntVolatile(monster >>> 2) >>> statusShift(monster));
+    }
+
+    @Override
+    void setMonsterStatus(int monster, byte status) {
+        while (!compareAndSetMonsterStatus(monster, getMonsterStatus(monster), status)) {
+            //another monster of the same int changed its status
+        }
+    }
+
+    @Override
+    boolean compareAndSetMonsterStatus(int monster, byte expectedStatus, byte status) {
+        int shift = statusShift(monster);
+        while (true) {
+            int word = statuses.getIntVolatile(monster >>> 2);
+            if ((byte) (word >>> shift) != expectedStatus) {
+                return false;
+            }
+            int updated = (word & ~(0xFF << shift)) | ((status & 0xFF) << shift);
+            if (statuses.compareAndSetInt(monster >>> 2, word, updated)) {
+                return true;
+            }
+        }
+    }
+
+    private static int statusShift(int monster) {
+        return (monster & 3) << 3;
+    }
+
+    @Override
+    long getWakeUpTime(int monster) {
+        return wakeUpTimes.getLongAcquire(monster);
+    }
+
+    @Override
+    void setWakeUpTime(int monster, long wakeUpTime) {
+        wakeUpTimes.setLongRelease(monster, wakeUpTime);
+    }
+
+    @Override
+    int getFailedAttempts(int monster) {
+        return failedAttempts.getInt(monster);
+    }
+
+    @Override
+    void setFailedAttempts(int monster, int failedAttempts) {
+        this.failedAttempts.setInt(monster, failedAttempts);
+    }
+
+    @Override
+    int getLockFailureCount(int monster) {
+        return lockFailureCounts.getIntAcquire(monster);
+    }
+
+    @Override
+    void setLockFailureCount(int monster, int lockFailureCount) {
+        lockFailureCounts.setIntRelease(monster, lockFailureCount);
+    }
+
+    @Override
+    int getRetryCount(int monster) {
+        return retryCounts.getIntAcquire(monster);
+    }
+
+    @Override
+    void setRetryCount(int monster, int retryCount) {
+        retryCounts.setIntRelease(monster, retryCount);
+    }
+}
@@ -0,0 +1,435 @@
+package org.gli58.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Builds one graph from the builders of consecutive parts of a map, e.g. the chunks of a
+ * file parsed on several threads, with the same ids, roads and lines as if all calls had
+ * been made on one builder in order. None of the steps is done for all cities on one thread:
+ *
+ * 1. names are split into partitions by hash, and each partition interns its names on a
+ *    thread of its own, going through the parts in order. So it knows the part with the
+ *    first line of a city, or the first reference to a city that has no line
+ * 2. each part counts the cities it is the first for, and a sum over the parts gives
+ *    where their ids start: cities on the map in map order, then the others in order of
+ *    their first reference, which is how Builder.build() numbers them
+ * 3. each part copies the names and lines of its first cities to their ids, then maps
+ *    its roads to the ids of the neighbors
+ *
+ * Only the roads of cities given roads in more than one part are put together on the
+ * calling thread, in part order, as later lines add to the earlier ones.
+ */
+final class ParallelGraphBuild {
+
+    private final CityGraph.Builder[] parts;
+    private final MapSource source;
+    private final ExecutorService executor;
+    private final Partition[] partitions;
+
+    /**
+     * per part, by id in the part: partition of the name in the high half, and the index
+     * of the name in the partition in the low half
+     */
+    private final long[][] refs;
+
+    private ParallelGraphBuild(List<CityGraph.Builder> parts, MapSource source, ExecutorService executor, int parallelism) {
+        this.parts = parts.toArray(new CityGraph.Builder[0]);
+        this.source = source;
+        this.executor = executor;
+        //a few partitions per thread, as names don't hash evenly
+        this.partitions = new Partition[parallelism * 4];
+        for (int p = 0; p < partitions.length; p++) {
+            partitions[p] = new Partition();
+        }
+        this.refs = new long[this.parts.length][];
+    }
+
+    static CityGraph build(List<CityGraph.Builder> parts, MapSource source, ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism should be at least 1");
+        }
+        return new ParallelGraphBuild(parts, source, executor, parallelism).build();
+    }
+
+    private CityGraph build() {
+        //names of each part by partition, in id order
+        int[][] hashes = new int[parts.length][];
+        int[][] partitionStarts = new int[parts.length][];
+        int[][] byPartition = new int[parts.length][];
+        forEachPart(c -> {
+            CityGraph.Builder part = parts[c];
+            int[] hash = new int[part.cityCount];
+            int[] starts = new int[partitions.length + 1];
+            for (int id = 0; id < part.cityCount; id++) {
+                hash[id] = CityGraph.hash(part.nameBytes, part.nameOffsets[id], part.nameOffsets[id + 1] - part.nameOffsets[id]);
+                starts[partition(hash[id]) + 1]++;
+            }
+            for (int p = 0; p < partitions.length; p++) {
+                starts[p + 1] += starts[p];
+            }
+            int[] ids = new int[part.cityCount];
+            int[] next = Arrays.copyOf(starts, partitions.length);
+            for (int id = 0; id < part.cityCount; id++) {
+                ids[next[partition(hash[id])]++] = id;
+            }
+            hashes[c] = hash;
+            partitionStarts[c] = starts;
+            byPartition[c] = ids;
+            refs[c] = new long[part.cityCount];
+        });
+
+        runAll(partitions.length, p -> {
+            Partition partition = partitions[p];
+            for (int c = 0; c < parts.length; c++) {
+                for (int i = partitionStarts[c][p]; i < partitionStarts[c][p + 1]; i++) {
+                    int id = byPartition[c][i];
+                    refs[c][id] = ((long) p << 32) | partition.intern(parts, c, id, hashes[c][id]);
+                }
+            }
+            partition.finalIds = new int[partition.count];
+        });
+
+        //where the ids and names of the first cities of each part start
+        Counts[] counts = new Counts[parts.length];
+        forEachPart(c -> counts[c] = count(c));
+        int onMapCount = 0;
+        long nameByteCount = 0;
+        for (Counts count : counts) {
+            count.onMapStart = onMapCount;
+            count.onMapNameStart = nameByteCount;
+            onMapCount += count.onMap;
+            nameByteCount += count.onMapNameBytes;
+        }
+        int cityCount = onMapCount;
+        for (Counts count : counts) {
+            count.referencedStart = cityCount;
+            count.referencedNameStart = nameByteCount;
+            cityCount += count.referenced;
+            nameByteCount += count.referencedNameBytes;
+        }
+        if (nameByteCount > Integer.MAX_VALUE) {
+            throw new IllegalStateException("names of the cities take more than " + Integer.MAX_VALUE + " bytes");
+        }
+
+        int[] neighbors = new int[cityCount * CityGraph.DIRECTION_COUNT];
+        int[] nameOffsets = new int[cityCount + 1];
+        byte[] nameBytes = new byte[(int) nameByteCount];
+        boolean[] removed = new boolean[cityCount];
+        long[] lineOffsets = source == null ? null : new long[cityCount];
+        int[] lineLengths = source == null ? null : new int[cityCount];
+        nameOffsets[cityCount] = (int) nameByteCount;
+
+        forEachPart(c -> copyFirstCities(c, counts[c], neighbors, nameOffsets, nameBytes, removed, lineOffsets, lineLengths));
+
+        int[][] sharedRoads = new int[parts.length][];
+        forEachPart(c -> sharedRoads[c] = mapRoads(c, neighbors));
+        for (int c = 0; c < parts.length; c++) {
+            CityGraph.Builder part = parts[c];
+            for (int id : sharedRoads[c]) {
+                int finalId = finalId(c, id);
+                for (int d = 0; d < CityGraph.DIRECTION_COUNT; d++) {
+                    int neighbor = part.neighbors[id * CityGraph.DIRECTION_COUNT + d];
+                    if (neighbor != CityGraph.NO_CITY) {
+                        neighbors[finalId * CityGraph.DIRECTION_COUNT + d] = finalId(c, neighbor);
+                    }
+                }
+            }
+        }
+
+        return new CityGraph(cityCount, neighbors, nameBytes, nameOffsets, removed, source, lineOffsets, lineLengths);
+    }
+
+    private int partition(int hash) {
+        return (hash & Integer.MAX_VALUE) % partitions.length;
+    }
+
+    private Partition partitionOf(int part, int id) {
+        return partitions[(int) (refs[part][id] >>> 32)];
+    }
+
+    private int nameIndex(int part, int id) {
+        return (int) refs[part][id];
+    }
+
+    private int finalId(int part, int id) {
+        return partitionOf(part, id).finalIds[nameIndex(part, id)];
+    }
+
+    private Counts count(int c) {
+        CityGraph.Builder part = parts[c];
+        Counts counts = new Counts();
+        for (int i = 0; i < part.onMapCount; i++) {
+            int id = part.mapOrder[i];
+            if (partitionOf(c, id).mapPart[nameIndex(c, id)] == c) {
+                counts.onMap++;
+                counts.onMapNameBytes += part.nameOffsets[id + 1] - part.nameOffsets[id];
+            }
+        }
+        for (int id = 0; id < part.cityCount; id++) {
+            if (isFirstReference(c, id)) {
+                counts.referenced++;
+                counts.referencedNameBytes += part.nameOffsets[id + 1] - part.nameOffsets[id];
+            }
+        }
+        return counts;
+    }
+
+    private boolean isFirstReference(int c, int id) {
+        Partition partition = partitionOf(c, id);
+        int index = nameIndex(c, id);
+        return partition.mapPart[index] == Partition.NO_PART && partition.firstPart[index] == c;
+    }
+
+    /**
+     * Gives the cities the part is the first for their ids, and copies their names and lines.
+     */
+    private void copyFirstCities(int c, Counts counts, int[] neighbors, int[] nameOffsets, byte[] nameBytes,
+                                 boolean[] removed, long[] lineOffsets, int[] lineLengths) {
+        CityGraph.Builder part = parts[c];
+        int finalId = counts.onMapStart;
+        int nameOffset = (int) counts.onMapNameStart;
+        for (int i = 0; i < part.onMapCount; i++) {
+            int id = part.mapOrder[i];
+            Partition partition = partitionOf(c, id);
+            int index = nameIndex(c, id);
+            if (partition.mapPart[index] != c) {
+                continue;
+            }
+            partition.finalIds[index] = finalId;
+            nameOffset = copyName(part, id, finalId, nameOffset, nameOffsets, nameBytes);
+            Arrays.fill(neighbors, finalId * CityGraph.DIRECTION_COUNT, (finalId + 1) * CityGraph.DIRECTION_COUNT, CityGraph.NO_CITY);
+            if (lineOffsets != null) {
+                //a city with lines in more than one part is written as one
+                long lineOffset = part.lineOffsets[id];
+                boolean single = !partition.multiMapPart[index] && lineOffset != CityGraph.Builder.DUPLICATE_LINE;
+                lineOffsets[finalId] = single ? lineOffset : CityGraph.NO_LINE;
+                lineLengths[finalId] = part.lineLengths[id];
+            }
+            finalId++;
+        }
+
+        finalId = counts.referencedStart;
+        nameOffset = (int) counts.referencedNameStart;
+        for (int id = 0; id < part.cityCount; id++) {
+            if (!isFirstReference(c, id)) {
+                continue;
+            }
+            partitionOf(c, id).finalIds[nameIndex(c, id)] = finalId;
+            nameOffset = copyName(part, id, finalId, nameOffset, nameOffsets, nameBytes);
+            Arrays.fill(neighbors, finalId * CityGraph.DIRECTION_COUNT, (finalId + 1) * CityGraph.DIRECTION_COUNT, CityGraph.NO_CITY);
+            removed[finalId] = true;
+            if (lineOffsets != null) {
+                lineOffsets[finalId] = CityGraph.NO_LINE;
+            }
+            finalId++;
+        }
+    }
+
+    private static int copyName(CityGraph.Builder part, int id, int finalId, int nameOffset, int[] nameOffsets, byte[] nameBytes) {
+        int length = part.nameOffsets[id + 1] - part.nameOffsets[id];
+        System.arraycopy(part.nameBytes, part.nameOffsets[id], nameBytes, nameOffset, length);
+        nameOffsets[finalId] = nameOffset;
+        return nameOffset + length;
+    }
+
+    /**
+     * Writes the roads of the cities only this part gives roads to, by the ids of the neighbors.
+     *
+     * @return ids in the part of the cities other parts give roads to as well, in id order
+     */
+    private int[] mapRoads(int c, int[] neighbors) {
+        CityGraph.Builder part = parts[c];
+        int[] shared = new int[0];
+        int sharedCount = 0;
+        for (int id = 0; id < part.cityCount; id++) {
+            if (!hasRoads(part, id)) {
+                continue;
+            }
+            Partition partition = partitionOf(c, id);
+            int index = nameIndex(c, id);
+            if (partition.multiRoadPart[index]) {
+                if (sharedCount == shared.length) {
+                    shared = Arrays.copyOf(shared, Math.max(16, sharedCount * 2));
+                }
+                shared[sharedCount++] = id;
+                continue;
+            }
+
+            int finalId = partition.finalIds[index];
+            for (int d = 0; d < CityGraph.DIRECTION_COUNT; d++) {
+                int neighbor = part.neighbors[id * CityGraph.DIRECTION_COUNT + d];
+                neighbors[finalId * CityGraph.DIRECTION_COUNT + d] = neighbor == CityGraph.NO_CITY ? CityGraph.NO_CITY : finalId(c, neighbor);
+            }
+        }
+        return Arrays.copyOf(shared, sharedCount);
+    }
+
+    private static boolean hasRoads(CityGraph.Builder part, int id) {
+        for (int d = 0; d < CityGraph.DIRECTION_COUNT; d++) {
+            if (part.neighbors[id * CityGraph.DIRECTION_COUNT + d] != CityGraph.NO_CITY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private interface Step {
+        void run(int index) throws Exception;
+    }
+
+    private void forEachPart(Step step) {
+        runAll(parts.length, step);
+    }
+
+    private void runAll(int count, Step step) {
+        List<Callable<Void>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            tasks.add(() -> {
+                step.run(index);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while building the graph", e);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Names of a partition, by index in order of their first reference, and the parts
+     * they are first referenced and put on the map in. Only used by one thread at a time.
+     */
+    private static final class Partition {
+        private static final int NO_PART = -1;
+
+        /**
+         * open addressing table of the names, kept at most half full. a slot holds the hash
+         * of the name in the high half and its index + 1 in the low half, 0 if empty
+         */
+        private long[] table = new long[64];
+        private int count;
+
+        //part and id in it the name is first referenced in, to compare names against
+        private int[] firstPart = new int[32];
+        private int[] firstId = new int[32];
+        //first part with a line of the city, or NO_PART
+        private int[] mapPart = new int[32];
+        private boolean[] multiMapPart = new boolean[32];
+        //first part giving the city roads, or NO_PART
+        private int[] roadPart = new int[32];
+        private boolean[] multiRoadPart = new boolean[32];
+
+        private int[] finalIds;
+
+        int intern(CityGraph.Builder[] parts, int c, int id, int hash) {
+            CityGraph.Builder part = parts[c];
+            boolean onMap = part.onMap[id];
+            boolean hasRoads = hasRoads(part, id);
+
+            int mask = table.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                long entry = table[slot];
+                if (entry == 0) {
+                    int index = add(c, id, onMap, hasRoads);
+                    table[slot] = ((long) hash << 32) | (index + 1);
+                    if (count * 2 > table.length) {
+                        rehash();
+                    }
+                    return index;
+                }
+
+                int index = (int) entry - 1;
+                if ((int) (entry >>> 32) == hash && sameName(parts[firstPart[index]], firstId[index], part, id)) {
+                    if (onMap) {
+                        if (mapPart[index] == NO_PART) {
+                            mapPart[index] = c;
+                        } else {
+                            multiMapPart[index] = true;
+                        }
+                    }
+                    if (hasRoads) {
+                        if (roadPart[index] == NO_PART) {
+                            roadPart[index] = c;
+                        } else {
+                            multiRoadPart[index] = true;
+                        }
+                    }
+                    return index;
+                }
+            }
+        }
+
+        private int add(int c, int id, boolean onMap, boolean hasRoads) {
+            int index = count++;
+            if (index == firstPart.length) {
+                int capacity = index * 2;
+                firstPart = Arrays.copyOf(firstPart, capacity);
+                firstId = Arrays.copyOf(firstId, capacity);
+                mapPart = Arrays.copyOf(mapPart, capacity);
+                multiMapPart = Arrays.copyOf(multiMapPart, capacity);
+                roadPart = Arrays.copyOf(roadPart, capacity);
+                multiRoadPart = Arrays.copyOf(multiRoadPart, capacity);
+            }
+            firstPart[index] = c;
+            firstId[index] = id;
+            mapPart[index] = onMap ? c : NO_PART;
+            roadPart[index] = hasRoads ? c : NO_PART;
+            return index;
+        }
+
+        private static boolean sameName(CityGraph.Builder part, int id, CityGraph.Builder otherPart, int otherId) {
+            return Arrays.equals(part.nameBytes, part.nameOffsets[id], part.nameOffsets[id + 1],
+                    otherPart.nameBytes, otherPart.nameOffsets[otherId], otherPart.nameOffsets[otherId + 1]);
+        }
+
+        private void rehash() {
+            long[] oldTable = table;
+            table = new long[oldTable.length * 2];
+            int mask = table.length - 1;
+            for (long entry : oldTable) {
+                if (entry != 0) {
+                    int slot = (int) (entry >>> 32) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = entry;
+                }
+            }
+        }
+    }
+
+    private static final class Counts {
+        private int onMap;
+        private long onMapNameBytes;
+        private int referenced;
+        private long referencedNameBytes;
+
+        private int onMapStart;
+        private long onMapNameStart;
+        private int referencedStart;
+        private long referencedNameStart;
+    }
+}
@@ -1,11 +1,15 @@
 package org.gli58.game;
 
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
 
 class RandomMonsterMoveProvider implements MonsterMoveProvider {
     @Override
     public Direction apply(Monster monster, List<Direction> directions) {
-        return directions.get(ThreadLocalRandom.current().nextInt(directions.size()));
+        return directions.get(monster.nextRandomInt(directions.size()));
+    }
+
+    @Override
+    public Direction apply(Game game, int monster, List<Direction> directions) {
+        return directions.get(game.nextRandomInt(monster, directions.size()));
     }
 }
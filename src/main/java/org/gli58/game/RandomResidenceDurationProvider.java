@@ -1,6 +1,5 @@
 package org.gli58.game;
 
-import java.util.concurrent.ThreadLocalRandom;
 
 class RandomResidenceDurationProvider implements ResidenceDurationProvider {
 
@@ -23,6 +22,11 @@ class RandomResidenceDurationProvider implements ResidenceDurationProvider {
 
     @Override
     public int getDurationInMillis(Monster monster) {
-        return ThreadLocalRandom.current().nextInt(minDuration, bound);
+        return monster.nextRandomInt(minDuration, bound);
+    }
+
+    @Override
+    public int getDurationInMillis(Game game, int monster) {
+        return game.nextRandomInt(monster, minDuration, bound);
     }
 }
@@ -0,0 +1,139 @@
+package org.gli58.game;
+
+import org.gli58.game.event.FightEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plays a game back from its move journal on the calling thread: the records are
+ * applied in sequence order, with the same city state changes as the monsters made
+ * in the game. Fights are published to the event handler again, so a replay ends
+ * with the same cities, monsters and fights as the game that was journaled.
+ *
+ * Records are taken as facts rather than checked against the rules. With lock-free
+ * occupancy a monster can be fought right after it entered a city and before it
+ * journaled the move, so moves of monsters that are killed already are skipped, and
+ * monsters only leave cities they still occupy.
+ */
+class ReplayEngine {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Game game;
+    private final MoveJournal.Records records;
+
+    ReplayEngine(Game game, MoveJournal.Records records) {
+        this.game = game;
+        this.records = records;
+    }
+
+    void play() {
+        MonsterMover mover = game.getMover();
+        int i = 0;
+        while (i < records.size() && !game.isStopRequested()) {
+            int monster = records.monsterIds[i] - 1;
+            int city = records.cities[i];
+
+            switch (records.types[i]) {
+                case MoveJournal.MOVED:
+                    moved(mover, monster, city, records.values[i], i);
+                    i++;
+                    break;
+
+                case MoveJournal.FOUGHT:
+                    i = fought(mover, i);
+                    break;
+
+                case MoveJournal.TRAPPED:
+                    mover.trapped(monster);
+                    i++;
+                    break;
+
+                case MoveJournal.TIRED:
+                    mover.tired(monster);
+                    i++;
+                    break;
+
+                default:
+                    mover.errored(monster);
+                    i++;
+            }
+        }
+
+        logger.debug("replayed {} records", records.size());
+    }
+
+    private void moved(MonsterMover mover, int monster, int city, int moveId, int record) {
+        GameState state = game.getState();
+        if (state.getMonsterStatus(monster) == Monster.Status.KILLED.ordinal()) {
+            return;
+        }
+        if (city == CityGraph.NO_CITY || state.getMoveCount(monster) + 1 != moveId) {
+            throw new IllegalArgumentException("journal record " + record + " is not the next move of monster " + (monster + 1));
+        }
+
+        int fromCity = state.getMonsterCity(monster);
+        if (fromCity != CityGraph.NO_CITY) {
+            game.vacate(fromCity, monster);
+        }
+        if (!game.isCityDestroyed(city)) {
+            game.occupy(city, monster);
+        }
+        mover.movedTo(monster, city);
+    }
+
+    /**
+     * Applies the fight of the record, with the records right after it in the same
+     * city: the lockstep engine journals one record per other monster in a fight.
+     *
+     * @return index of the record after the fight
+     */
+    private int fought(MonsterMover mover, int first) {
+        int city = records.cities[first];
+        if (city == CityGraph.NO_CITY) {
+            throw new IllegalArgumentException("journal record " + first + " is a fight without a city");
+        }
+
+        //monster indexes, in the order the engines put them in their fight events
+        List<Integer> fighters = new ArrayList<>();
+        int end = first;
+        while (end < records.size() && records.types[end] == MoveJournal.FOUGHT && records.cities[end] == city) {
+            int opponent = records.values[end];
+            if (opponent < 1 || opponent > records.monsterCount) {
+                throw new IllegalArgumentException("journal record " + end + " is a fight with no monster " + opponent);
+            }
+            for (int fighter : new int[]{records.monsterIds[end] - 1, opponent - 1}) {
+                if (!fighters.contains(fighter)) {
+                    fighters.add(fighter);
+                }
+            }
+            end++;
+        }
+
+        Set<Monster> monsters = new HashSet<>();
+        for (int fighter : fighters) {
+            int fromCity = game.getState().getMonsterCity(fighter);
+            if (fromCity != CityGraph.NO_CITY && fromCity != city) {
+                game.vacate(fromCity, fighter);
+            }
+            monsters.add(game.getMonster(fighter + 1));
+        }
+        if (!game.isCityDestroyed(city)) {
+            game.destroyCity(city);
+        }
+
+        FightEvent fightEvent = new FightEvent(game.getFightEventId().getAndIncrement(),
+                game.getCityGraph().getCity(city), monsters);
+        game.getEventHandler().handle(fightEvent);
+        game.getMetrics().fought();
+
+        for (int fighter : fighters) {
+            mover.gotIntoFightAndKilled(fighter);
+        }
+        return end;
+    }
+}
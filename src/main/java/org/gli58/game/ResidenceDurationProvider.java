@@ -3,4 +3,14 @@ package org.gli58.game;
 @FunctionalInterface
 interface ResidenceDurationProvider {
     int getDurationInMillis(Monster monster);
+
+    /**
+     * What the game calls on every move. Asks a view of the monster by default;
+     * providers that don't need one override this, so a move doesn't allocate it.
+     *
+     * @param monster index of the monster, i.e. its id - 1
+     */
+    default int getDurationInMillis(Game game, int monster) {
+        return getDurationInMillis(game.getMonster(monster + 1));
+    }
 }
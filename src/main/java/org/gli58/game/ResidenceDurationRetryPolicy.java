@@ -0,0 +1,22 @@
+package org.gli58.game;
+
+/**
+ * Monster stays another residence duration before trying the same move again.
+ * This is what the game does by default.
+ */
+class ResidenceDurationRetryPolicy implements RetryPolicy {
+
+    private final ResidenceDurationProvider residenceDurationProvider;
+
+    ResidenceDurationRetryPolicy(ResidenceDurationProvider residenceDurationProvider) {
+        if (residenceDurationProvider == null) {
+            throw new IllegalArgumentException("residenceDurationProvider is null");
+        }
+        this.residenceDurationProvider = residenceDurationProvider;
+    }
+
+    @Override
+    public int getRetryDelayInMillis(Monster monster, int attempt) {
+        return residenceDurationProvider.getDurationInMillis(monster);
+    }
+}
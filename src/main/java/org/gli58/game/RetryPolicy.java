@@ -0,0 +1,22 @@
+package org.gli58.game;
+
+/**
+ * Decides when a monster tries a move again after the attempt failed, e.g. because
+ * it could not get the lock of a city or the city got destroyed in the meantime.
+ * Given to a game with Game.Builder.retryPolicy. Delays picked at random are to come
+ * from Monster.nextRandomInt, so seeded games play out the same every time.
+ */
+@FunctionalInterface
+public interface RetryPolicy {
+
+    /**
+     * retry right away on the thread that made the failed attempt
+     */
+    int RETRY_NOW = -1;
+
+    /**
+     * @param attempt number of the retry of the same move, starting at 1
+     * @return delay before the retry in milliseconds, or RETRY_NOW
+     */
+    int getRetryDelayInMillis(Monster monster, int attempt);
+}
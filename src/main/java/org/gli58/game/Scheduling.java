@@ -0,0 +1,21 @@
+package org.gli58.game;
+
+/**
+ * How the real-time engine keeps the pending wake-ups of monsters.
+ */
+public enum Scheduling {
+
+    /**
+     * A ScheduledExecutorService, by default a ScheduledThreadPoolExecutor: one heap
+     * of wake-ups behind one lock, shared by all threads.
+     */
+    EXECUTOR,
+
+    /**
+     * A hashed timing wheel per thread, with a slot per millisecond. Scheduling a
+     * wake-up costs the same for any number of pending ones, and a monster stays on
+     * the wheel of its thread without synchronization. Meant for games with a lot
+     * of monsters.
+     */
+    TIMING_WHEEL
+}
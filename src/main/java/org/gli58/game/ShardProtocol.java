@@ -0,0 +1,155 @@
+package org.gli58.game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Messages between the coordinator of a sharded game and its workers, over one
+ * socket per worker. A message is its type, then int arrays, each written as its
+ * length and its values. Everything that happens in a tick goes in one message per
+ * direction and worker, so a tick costs a few round trips however many monsters move.
+ *
+ * A tick, coordinator to worker and back:
+ * STEP (cities destroyed in the last tick) -> MOVED (monster triples per shard they leave for)
+ * ARRIVE (monster triples from other shards) -> SETTLED (fights and number of active monsters)
+ *
+ * The game starts with INIT -> READY, and ARRIVE -> SETTLED for the placements, and
+ * ends with FINISH. Monster triples are id, move id and target city. Cities are by
+ * id in the city order, except for the ids on the map that INIT gives each worker
+ * for its cities and fights are reported with, so the coordinator can tell them
+ * apart without keeping the city order.
+ */
+final class ShardProtocol {
+
+    //coordinator to worker
+    static final byte INIT = 1;
+    static final byte STEP = 2;
+    static final byte ARRIVE = 3;
+    static final byte FINISH = 4;
+
+    //worker to coordinator
+    static final byte READY = 11;
+    static final byte MOVED = 12;
+    static final byte SETTLED = 13;
+
+    static final int[] NONE = new int[0];
+
+    //a fight in SETTLED is the city in the city order, the city on the map, the number
+    //of monsters and their ids
+    static final int FIGHT_HEADER = 3;
+
+    //ints go through a byte buffer in chunks rather than one stream call each
+    private static final int CHUNK_INTS = 4096;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final byte[] chunkBytes = new byte[CHUNK_INTS * Integer.BYTES];
+    private final ByteBuffer chunk = ByteBuffer.wrap(chunkBytes);
+
+    ShardProtocol(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+    }
+
+    void send(byte type, int[]... arrays) throws IOException {
+        out.writeByte(type);
+        out.writeInt(arrays.length);
+        for (int[] array : arrays) {
+            writeInts(array, array.length);
+        }
+        out.flush();
+    }
+
+    /**
+     * Same as send(byte, int[]...) for arrays that are only filled up to their lengths.
+     */
+    void send(byte type, int[][] arrays, int[] lengths) throws IOException {
+        out.writeByte(type);
+        out.writeInt(arrays.length);
+        for (int i = 0; i < arrays.length; i++) {
+            writeInts(arrays[i], lengths[i]);
+        }
+        out.flush();
+    }
+
+    private void writeInts(int[] values, int length) throws IOException {
+        out.writeInt(length);
+        for (int from = 0; from < length; from += CHUNK_INTS) {
+            int count = Math.min(CHUNK_INTS, length - from);
+            chunk.clear();
+            chunk.asIntBuffer().put(values, from, count);
+            out.write(chunkBytes, 0, count * Integer.BYTES);
+        }
+    }
+
+    private int[] readInts() throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int from = 0; from < values.length; from += CHUNK_INTS) {
+            int count = Math.min(CHUNK_INTS, values.length - from);
+            in.readFully(chunkBytes, 0, count * Integer.BYTES);
+            chunk.clear();
+            chunk.asIntBuffer().get(values, from, count);
+        }
+        return values;
+    }
+
+    /**
+     * @return the int arrays of the next message, which needs to be of the expected type
+     */
+    int[][] receive(byte expectedType) throws IOException {
+        byte type = receiveType();
+        if (type != expectedType) {
+            throw new IOException("expected message " + expectedType + " but got " + type);
+        }
+        return receiveArrays();
+    }
+
+    byte receiveType() throws IOException {
+        try {
+            return in.readByte();
+        } catch (EOFException e) {
+            throw new IOException("connection closed by the other side", e);
+        }
+    }
+
+    /**
+     * @return the int arrays of the message whose type was just received
+     */
+    int[][] receiveArrays() throws IOException {
+        int[][] arrays = new int[in.readInt()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = readInts();
+        }
+        return arrays;
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //nothing left to do with it
+        }
+    }
+
+    /**
+     * @return a number in [0, bound) for a move of a monster, the same in every process
+     * for the same seed. monsters carry no random state from shard to shard
+     */
+    static int random(long seed, long monster, long moveId, int bound) {
+        long z = seed + monster * 0x9E3779B97F4A7C15L + moveId * 0xC2B2AE3D27D4EB4FL;
+        //murmur3 finalizer
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = z ^ (z >>> 33);
+        return (int) ((z >>> 1) % bound);
+    }
+}
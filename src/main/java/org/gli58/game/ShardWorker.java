@@ -0,0 +1,272 @@
+package org.gli58.game;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.gli58.game.CityGraph.DIRECTION_COUNT;
+import static org.gli58.game.CityGraph.NO_CITY;
+
+/**
+ * Worker of a sharded game, started by ShardedGame as a JVM of its own, with the port
+ * the coordinator listens on:
+ *
+ * java -cp coding-exercise.jar org.gli58.game.ShardWorker 40321
+ *
+ * A worker owns a range of city ids, a region of the map, with the roads and
+ * occupants of those cities. Monsters in its cities are its monsters. Ticks follow
+ * the rules of the lockstep engine: in STEP every active monster picks a neighbor and
+ * leaves its city, and monsters heading to cities of other workers are sent back to
+ * the coordinator in one batch per worker. In ARRIVE the monsters heading to this
+ * worker's cities come in from all workers, and all monsters ending up in the same
+ * city, plus one staying there, fight.
+ *
+ * The worker only knows of other workers' cities that they are destroyed, as far as
+ * its roads lead to them. Moves are picked by ShardProtocol.random from the seed,
+ * monster and move, so a game plays out the same for any number of workers.
+ */
+public final class ShardWorker {
+    private static Logger logger = LoggerFactory.getLogger(ShardWorker.class);
+
+    private static final byte ACTIVE = 0;
+    private static final byte TIRED = 1;
+    private static final byte TRAPPED = 2;
+
+    private final ShardProtocol protocol;
+
+    private int shard;
+    private int[] boundaries;
+    private int minMoves;
+    private long seed;
+
+    private int firstCity;
+    private int cityCount;
+    private int[] neighbors;
+    //id on the map of each city of the region, for the fights
+    private int[] mapIds;
+    private final BitSet destroyed = new BitSet();
+
+    //occupant of each city of the region, 0 if vacant, with its move id and status
+    private int[] occupants;
+    private int[] moveIds;
+    private byte[] statuses;
+
+    private int activeCount;
+    private int tiredCount;
+    private int trappedCount;
+
+    //monsters which left for a city of this region in the current tick
+    private int[] localArrivals = new int[3 * 64];
+    private int localArrivalCount;
+
+    ShardWorker(ShardProtocol protocol) {
+        this.protocol = protocol;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("usage: ShardWorker <coordinator port>");
+            System.exit(2);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            new ShardWorker(new ShardProtocol(socket)).run();
+        } catch (IOException e) {
+            throw new UncheckedIOException("lost the coordinator", e);
+        }
+    }
+
+    void run() throws IOException {
+        init(protocol.receive(ShardProtocol.INIT));
+        protocol.send(ShardProtocol.READY);
+
+        while (true) {
+            byte type = protocol.receiveType();
+            int[][] message = protocol.receiveArrays();
+            switch (type) {
+                case ShardProtocol.STEP:
+                    step(message[0]);
+                    break;
+                case ShardProtocol.ARRIVE:
+                    arrive(message[0]);
+                    break;
+                case ShardProtocol.FINISH:
+                    logger.debug("shard {} finished", shard);
+                    return;
+                default:
+                    throw new IOException("unexpected message " + type);
+            }
+        }
+    }
+
+    /**
+     * @param message header (shard, minimum moves, seed high and low int), boundaries of
+     *                all shards, the roads of this shard's cities by global id, and the
+     *                ids of its cities on the map
+     */
+    private void init(int[][] message) {
+        shard = message[0][0];
+        minMoves = message[0][1];
+        seed = ((long) message[0][2] << 32) | (message[0][3] & 0xFFFFFFFFL);
+        boundaries = message[1];
+        neighbors = message[2];
+        mapIds = message[3];
+
+        firstCity = boundaries[shard];
+        cityCount = boundaries[shard + 1] - firstCity;
+        occupants = new int[cityCount];
+        moveIds = new int[cityCount];
+        statuses = new byte[cityCount];
+
+        logger.info("shard {} owns cities {} to {}", shard, firstCity, firstCity + cityCount - 1);
+    }
+
+    private void step(int[] destroyedCities) throws IOException {
+        for (int city : destroyedCities) {
+            destroyed.set(city);
+        }
+
+        int shardCount = boundaries.length - 1;
+        int[][] leaving = new int[shardCount][];
+        int[] leavingLengths = new int[shardCount];
+        Arrays.fill(leaving, ShardProtocol.NONE);
+        localArrivalCount = 0;
+
+        int[] navigable = new int[DIRECTION_COUNT];
+        for (int i = 0; i < cityCount; i++) {
+            int monster = occupants[i];
+            if (monster == 0 || statuses[i] != ACTIVE) {
+                continue;
+            }
+
+            if (moveIds[i] > minMoves) {
+                statuses[i] = TIRED;
+                activeCount--;
+                tiredCount++;
+                continue;
+            }
+
+            int navigableCount = 0;
+            for (int d = 0; d < DIRECTION_COUNT; d++) {
+                int neighbor = neighbors[i * DIRECTION_COUNT + d];
+                if (neighbor != NO_CITY && !destroyed.get(neighbor)) {
+                    navigable[navigableCount++] = neighbor;
+                }
+            }
+            if (navigableCount == 0) {
+                statuses[i] = TRAPPED;
+                activeCount--;
+                trappedCount++;
+                continue;
+            }
+
+            int target = navigable[ShardProtocol.random(seed, monster, moveIds[i], navigableCount)];
+            int owner = owner(target);
+            if (owner == shard) {
+                localArrivals = add(localArrivals, localArrivalCount, monster, moveIds[i], target);
+                localArrivalCount += 3;
+            } else {
+                if (leaving[owner] == ShardProtocol.NONE) {
+                    leaving[owner] = new int[3 * 16];
+                }
+                leaving[owner] = add(leaving[owner], leavingLengths[owner], monster, moveIds[i], target);
+                leavingLengths[owner] += 3;
+            }
+
+            //everybody moving leaves first, so cities being left are free for the monsters arriving
+            occupants[i] = 0;
+            activeCount--;
+        }
+
+        protocol.send(ShardProtocol.MOVED, leaving, leavingLengths);
+    }
+
+    private void arrive(int[] remoteArrivals) throws IOException {
+        int total = localArrivalCount / 3 + remoteArrivals.length / 3;
+
+        //(city, arrival) pairs sorted, so the monsters heading to the same city form one run
+        long[] arrivals = new long[total];
+        int n = 0;
+        for (int i = 0; i < localArrivalCount; i += 3) {
+            arrivals[n++] = ((long) (localArrivals[i + 2] - firstCity) << 32) | i;
+        }
+        for (int i = 0; i < remoteArrivals.length; i += 3) {
+            //remote ones after the local ones
+            arrivals[n++] = ((long) (remoteArrivals[i + 2] - firstCity) << 32) | (localArrivalCount + i);
+        }
+        Arrays.sort(arrivals);
+
+        int[] fights = new int[16];
+        int fightsLength = 0;
+        int moves = 0;
+
+        for (int from = 0; from < total; ) {
+            int city = (int) (arrivals[from] >>> 32);
+            int to = from + 1;
+            while (to < total && (int) (arrivals[to] >>> 32) == city) {
+                to++;
+            }
+
+            int staying = occupants[city];
+            if (staying == 0 && to - from == 1) {
+                int arrival = (int) arrivals[from];
+                int[] source = arrival < localArrivalCount ? localArrivals : remoteArrivals;
+                int index = arrival < localArrivalCount ? arrival : arrival - localArrivalCount;
+                occupants[city] = source[index];
+                moveIds[city] = source[index + 1] + 1;
+                statuses[city] = ACTIVE;
+                activeCount++;
+                moves++;
+            } else {
+                //city, city on the map, number of monsters, monster ids
+                int contenders = to - from + (staying != 0 ? 1 : 0);
+                fights = ensureCapacity(fights, fightsLength + ShardProtocol.FIGHT_HEADER + contenders);
+                fights[fightsLength++] = firstCity + city;
+                fights[fightsLength++] = mapIds[city];
+                fights[fightsLength++] = contenders;
+                if (staying != 0) {
+                    fights[fightsLength++] = staying;
+                    if (statuses[city] == TIRED) {
+                        tiredCount--;
+                    } else if (statuses[city] == TRAPPED) {
+                        trappedCount--;
+                    }
+                }
+                for (int i = from; i < to; i++) {
+                    int arrival = (int) arrivals[i];
+                    fights[fightsLength++] = arrival < localArrivalCount
+                            ? localArrivals[arrival] : remoteArrivals[arrival - localArrivalCount];
+                }
+                occupants[city] = 0;
+                destroyed.set(firstCity + city);
+            }
+            from = to;
+        }
+
+        protocol.send(ShardProtocol.SETTLED, new int[][]{
+                {activeCount, tiredCount, trappedCount, moves}, fights}, new int[]{4, fightsLength});
+    }
+
+    private int owner(int city) {
+        int index = Arrays.binarySearch(boundaries, city);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static int[] add(int[] triples, int length, int monster, int moveId, int city) {
+        triples = ensureCapacity(triples, length + 3);
+        triples[length] = monster;
+        triples[length + 1] = moveId;
+        triples[length + 2] = city;
+        return triples;
+    }
+
+    private static int[] ensureCapacity(int[] values, int capacity) {
+        return capacity <= values.length ? values : Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+    }
+}
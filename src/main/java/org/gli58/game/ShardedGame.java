@@ -0,0 +1,497 @@
+package org.gli58.game;
+
+import org.gli58.game.event.ConsoleLoggingEventHandler;
+import org.gli58.game.event.EventHandler;
+import org.gli58.game.event.FightEvent;
+import org.gli58.game.util.MapIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.gli58.game.CityGraph.DIRECTION_COUNT;
+import static org.gli58.game.CityGraph.NO_CITY;
+
+/**
+ * A game spread over worker JVMs on this machine, for worlds whose game state is too
+ * large for one heap. The map is cut into regions of consecutive ids in a CityOrder
+ * (reverse Cuthill-McKee by default, so most roads stay within a region), one per
+ * worker. Workers own the occupants of their cities and play by the rules of the
+ * lockstep engine; see ShardWorker. Monsters crossing into another region are handed
+ * off to its worker through the coordinator, in one batch per worker and tick.
+ *
+ * The coordinator keeps no game state of its own. It cuts the map into regions and
+ * places the monsters, after which it only holds on to the map given to the builder,
+ * for the names of the cities and to return what is left of it. It publishes the fights
+ * reported by the workers to the event handler, ordered by the lowest monster id
+ * involved as the lockstep engine does, with monsters known by their id only, and
+ * takes the destroyed cities off the map once the game is over, which then can be
+ * written in the usual text format.
+ *
+ * Monster moves depend on the seed, monster and move only, so the outcome is the same
+ * for any number of workers, though not the same as a lockstep game in one JVM.
+ */
+public final class ShardedGame {
+    private static Logger logger = LoggerFactory.getLogger(ShardedGame.class);
+
+    private static final long CONNECT_TIMEOUT_MILLIS = 60_000;
+
+    private final CityGraph graph;
+    private final int monsterCount;
+    private final int minMoves;
+    private final int workerCount;
+    private final long seed;
+    private final CityOrder cityOrder;
+    private final EventHandler eventHandler;
+    private final List<String> workerJvmArgs;
+
+    private boolean started;
+
+    private ShardedGame(Builder builder) {
+        if (builder.graph == null || citiesOnMap(builder.graph) == 0) {
+            throw new IllegalArgumentException("map is empty");
+        }
+        if (builder.monsterCount < 1) {
+            throw new IllegalArgumentException("monster count needs to be positive integer");
+        }
+        if (builder.minMoves < 1) {
+            throw new IllegalArgumentException("monster is not allowed to move at all");
+        }
+        if (builder.workerCount < 1 || builder.workerCount > citiesOnMap(builder.graph)) {
+            throw new IllegalArgumentException("worker count needs to be between 1 and the number of cities");
+        }
+
+        this.graph = builder.graph;
+        this.monsterCount = builder.monsterCount;
+        this.minMoves = builder.minMoves;
+        this.workerCount = builder.workerCount;
+        this.seed = builder.seed;
+        this.cityOrder = builder.cityOrder;
+        this.eventHandler = builder.eventHandler;
+        this.workerJvmArgs = builder.workerJvmArgs;
+    }
+
+    /**
+     * Starts the workers, plays the game and waits for it to finish. The map given to the
+     * builder ends up without the destroyed cities, the same as for Game.
+     */
+    public GameResult startGame() {
+        if (started) {
+            throw new UnsupportedOperationException("game is designed to be played once. create a new game please.");
+        }
+        started = true;
+
+        long start = System.currentTimeMillis();
+        List<Process> processes = new ArrayList<>();
+        ShardProtocol[] workers = new ShardProtocol[workerCount];
+
+        try (ServerSocket server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress())) {
+            for (int i = 0; i < workerCount; i++) {
+                processes.add(startWorker(server.getLocalPort()));
+            }
+            server.setSoTimeout((int) CONNECT_TIMEOUT_MILLIS);
+            for (int i = 0; i < workerCount; i++) {
+                Socket socket = server.accept();
+                workers[i] = new ShardProtocol(socket);
+            }
+            logger.info("game started. monsters {}, cities {}, workers {}", monsterCount, citiesOnMap(graph), workerCount);
+
+            GameResult result = new Coordinator(workers).play(start);
+            logger.info("game finished. took {} seconds. monsters {}, cities {}",
+                    TimeUnit.MILLISECONDS.toSeconds(result.getDurationMillis()),
+                    result.getMonsterCountsByStatus(), result.getCities().size());
+            return result;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("sharded game failed", e);
+
+        } finally {
+            for (ShardProtocol worker : workers) {
+                if (worker != null) {
+                    worker.close();
+                }
+            }
+            stopWorkers(processes);
+        }
+    }
+
+    private Process startWorker(int port) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(workerJvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add(String.valueOf(port));
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private static void stopWorkers(List<Process> processes) {
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    logger.warn("worker {} did not exit. killing it", process.pid());
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * State of one game on the coordinator's side. City ids sent to the workers are
+     * the ids in the city order; the map keeps its own. Workers report fights with
+     * both, so the ids in the city order are only needed to set up the game.
+     */
+    private final class Coordinator {
+        private final ShardProtocol[] workers;
+        private final int[] boundaries;
+
+        //map ids of the cities destroyed so far, one per fight
+        private int[] destroyed = new int[16];
+        private int destroyedCount;
+        private int[] destroyedLastTick = new int[0];
+
+        private long fightEventId = 1;
+        private long fightCount;
+        private long moveCount;
+        private long killedCount;
+        private long tiredCount;
+        private long trappedCount;
+
+        Coordinator(ShardProtocol[] workers) {
+            this.workers = workers;
+
+            //regions of about the same number of cities
+            int onMap = citiesOnMap(graph);
+            this.boundaries = new int[workers.length + 1];
+            for (int i = 0; i <= workers.length; i++) {
+                boundaries[i] = (int) ((long) onMap * i / workers.length);
+            }
+        }
+
+        GameResult play(long start) throws IOException {
+            //placing the monsters counts as their first move, same as for the other engines
+            int active = arrive(init());
+            long tick = 1;
+            while (active > 0) {
+                for (ShardProtocol worker : workers) {
+                    worker.send(ShardProtocol.STEP, destroyedLastTick);
+                }
+
+                int[][][] leaving = new int[workers.length][][];
+                for (int i = 0; i < workers.length; i++) {
+                    leaving[i] = workers[i].receive(ShardProtocol.MOVED);
+                }
+
+                int[][] arriving = new int[workers.length][];
+                for (int target = 0; target < workers.length; target++) {
+                    int length = 0;
+                    for (int[][] batches : leaving) {
+                        length += batches[target].length;
+                    }
+                    arriving[target] = new int[length];
+                    int offset = 0;
+                    for (int[][] batches : leaving) {
+                        System.arraycopy(batches[target], 0, arriving[target], offset, batches[target].length);
+                        offset += batches[target].length;
+                    }
+                }
+
+                active = arrive(arriving);
+                logger.debug("tick {} done. {} monsters active", tick++, active);
+            }
+
+            for (ShardProtocol worker : workers) {
+                worker.send(ShardProtocol.FINISH);
+            }
+
+            removeDestroyedCities();
+
+            Map<Monster.Status, Long> monstersByStatus = new EnumMap<>(Monster.Status.class);
+            putCount(monstersByStatus, Monster.Status.TIRED, tiredCount);
+            putCount(monstersByStatus, Monster.Status.TRAPPED, trappedCount);
+            putCount(monstersByStatus, Monster.Status.KILLED, killedCount);
+            eventHandler.flush();
+
+            return new GameResult(graph::getCities, monstersByStatus, System.currentTimeMillis() - start,
+                    fightCount, moveCount, false);
+        }
+
+        /**
+         * Sends each worker its region and places the monsters.
+         *
+         * @return monsters placed, by worker
+         */
+        private int[][] init() throws IOException {
+            int[] newIds = CityRenumbering.newIds(graph, cityOrder);
+            int[] oldIds = new int[newIds.length];
+            for (int id = 0; id < newIds.length; id++) {
+                oldIds[newIds[id]] = id;
+            }
+
+            for (int i = 0; i < workers.length; i++) {
+                workers[i].send(ShardProtocol.INIT,
+                        new int[]{i, minMoves, (int) (seed >>> 32), (int) seed},
+                        boundaries,
+                        roads(newIds, oldIds, boundaries[i], boundaries[i + 1]),
+                        Arrays.copyOfRange(oldIds, boundaries[i], boundaries[i + 1]));
+            }
+            for (ShardProtocol worker : workers) {
+                worker.receive(ShardProtocol.READY);
+            }
+
+            return placements(newIds);
+        }
+
+        /**
+         * @return roads of the cities in [from, to), by id in the city order. roads to cities
+         * not on the map are left out
+         */
+        private int[] roads(int[] newIds, int[] oldIds, int from, int to) {
+            int[] roads = new int[(to - from) * DIRECTION_COUNT];
+            for (int id = from; id < to; id++) {
+                int city = oldIds[id];
+                for (int d = 0; d < DIRECTION_COUNT; d++) {
+                    int neighbor = graph.neighbor(city, d);
+                    roads[(id - from) * DIRECTION_COUNT + d] = neighbor != NO_CITY && graph.isOnMap(neighbor)
+                            ? newIds[neighbor] : NO_CITY;
+                }
+            }
+            return roads;
+        }
+
+        /**
+         * @return monsters placed in cities picked at random in map order, by worker
+         */
+        private int[][] placements(int[] newIds) {
+            int[] cities = new int[boundaries[workers.length]];
+            int count = 0;
+            for (int id = 0; id < graph.size(); id++) {
+                if (graph.isOnMap(id)) {
+                    cities[count++] = id;
+                }
+            }
+
+            int[][] placements = new int[workers.length][];
+            int[] lengths = new int[workers.length];
+            for (int i = 0; i < workers.length; i++) {
+                placements[i] = new int[3 * (monsterCount / workers.length + 1)];
+            }
+            for (int monster = 1; monster <= monsterCount; monster++) {
+                int city = newIds[cities[ShardProtocol.random(seed, monster, 0, count)]];
+                int worker = owner(city);
+                if (lengths[worker] == placements[worker].length) {
+                    placements[worker] = Arrays.copyOf(placements[worker], lengths[worker] * 2);
+                }
+                placements[worker][lengths[worker]++] = monster;
+                placements[worker][lengths[worker]++] = 1;
+                placements[worker][lengths[worker]++] = city;
+            }
+            for (int i = 0; i < workers.length; i++) {
+                placements[i] = Arrays.copyOf(placements[i], lengths[i]);
+            }
+            return placements;
+        }
+
+        /**
+         * Hands the arriving monsters to their workers and publishes the fights.
+         *
+         * @return number of monsters still active
+         */
+        private int arrive(int[][] arriving) throws IOException {
+            for (int i = 0; i < workers.length; i++) {
+                workers[i].send(ShardProtocol.ARRIVE, arriving[i]);
+            }
+
+            int active = 0;
+            tiredCount = 0;
+            trappedCount = 0;
+            List<int[]> fights = new ArrayList<>();
+            List<Integer> destroyedNow = new ArrayList<>();
+            for (ShardProtocol worker : workers) {
+                int[][] settled = worker.receive(ShardProtocol.SETTLED);
+                active += settled[0][0];
+                tiredCount += settled[0][1];
+                trappedCount += settled[0][2];
+                moveCount += settled[0][3];
+
+                int[] encoded = settled[1];
+                for (int i = 0; i < encoded.length; ) {
+                    int contenders = encoded[i + 2];
+                    fights.add(Arrays.copyOfRange(encoded, i, i + ShardProtocol.FIGHT_HEADER + contenders));
+                    destroyedNow.add(encoded[i]);
+                    i += ShardProtocol.FIGHT_HEADER + contenders;
+                }
+            }
+
+            fights.sort(Comparator.comparingInt(ShardedGame::lowestMonsterId));
+            fights.forEach(this::publish);
+
+            destroyedLastTick = destroyedNow.stream().mapToInt(Integer::intValue).toArray();
+            return active;
+        }
+
+        private void publish(int[] fight) {
+            int city = fight[1];
+            if (destroyedCount == destroyed.length) {
+                destroyed = Arrays.copyOf(destroyed, destroyedCount * 2);
+            }
+            destroyed[destroyedCount++] = city;
+
+            //in id order, as the order monsters arrive in depends on the regions
+            Arrays.sort(fight, ShardProtocol.FIGHT_HEADER, fight.length);
+            Set<Monster> fighters = new HashSet<>();
+            for (int i = ShardProtocol.FIGHT_HEADER; i < fight.length; i++) {
+                fighters.add(new Monster(fight[i], Monster.Status.KILLED));
+            }
+            eventHandler.handle(new FightEvent(fightEventId++, graph.getCity(city), fighters));
+            fightCount++;
+            killedCount += fighters.size();
+        }
+
+        private int owner(int city) {
+            //regions are never empty, as there are no more workers than cities
+            int index = Arrays.binarySearch(boundaries, city);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        //same as the game does with its map once it's over
+        private void removeDestroyedCities() {
+            int[] destroyed = Arrays.copyOf(this.destroyed, destroyedCount);
+            Arrays.sort(destroyed);
+            for (int city = 0; city < graph.size(); city++) {
+                for (Direction direction : CityGraph.DIRECTIONS) {
+                    int neighbor = graph.getNeighbor(city, direction);
+                    if (neighbor != NO_CITY && graph.isOnMap(neighbor) && Arrays.binarySearch(destroyed, neighbor) >= 0) {
+                        graph.removeNeighbor(city, direction);
+                    }
+                }
+            }
+            for (int city : destroyed) {
+                graph.removeCity(city);
+            }
+        }
+    }
+
+    private static int lowestMonsterId(int[] fight) {
+        int lowest = Integer.MAX_VALUE;
+        for (int i = ShardProtocol.FIGHT_HEADER; i < fight.length; i++) {
+            lowest = Math.min(lowest, fight[i]);
+        }
+        return lowest;
+    }
+
+    private static int citiesOnMap(CityGraph graph) {
+        int count = 0;
+        for (int id = 0; id < graph.size(); id++) {
+            if (graph.isOnMap(id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void putCount(Map<Monster.Status, Long> counts, Monster.Status status, long count) {
+        if (count > 0) {
+            counts.put(status, count);
+        }
+    }
+
+    public static class Builder {
+        private final CityGraph graph;
+        private final int monsterCount;
+        private int minMoves = 10_000;
+        private int workerCount = 2;
+        private long seed;
+        private CityOrder cityOrder = CityOrder.REVERSE_CUTHILL_MCKEE;
+        private EventHandler eventHandler = new ConsoleLoggingEventHandler();
+        private List<String> workerJvmArgs = new ArrayList<>();
+
+        public Builder(CityGraph graph, int monsterCount) {
+            this.graph = graph;
+            this.monsterCount = monsterCount;
+        }
+
+        Builder minMoves(int minMoves) {
+            this.minMoves = minMoves;
+            return this;
+        }
+
+        //JVMs the map is spread over
+        Builder workers(int workerCount) {
+            this.workerCount = workerCount;
+            return this;
+        }
+
+        Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        //regions are ranges of ids in this order
+        Builder cityOrder(CityOrder cityOrder) {
+            this.cityOrder = cityOrder;
+            return this;
+        }
+
+        Builder eventHandler(EventHandler eventHandler) {
+            this.eventHandler = eventHandler;
+            return this;
+        }
+
+        //e.g. -Xmx for each worker
+        Builder workerJvmArgs(String... workerJvmArgs) {
+            this.workerJvmArgs = Arrays.asList(workerJvmArgs);
+            return this;
+        }
+
+        public ShardedGame build() {
+            return new ShardedGame(this);
+        }
+    }
+
+    /**
+     * Plays a sharded game on a map file and writes what is left of the map:
+     *
+     * java -cp coding-exercise.jar org.gli58.game.ShardedGame map.txt 1000 4 map-out.txt
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("usage: ShardedGame <map file> <monsters> <workers> [output file]");
+            System.exit(2);
+        }
+
+        Path mapFile = Paths.get(args[0]);
+        CityGraph graph = args[0].endsWith(".img") ? MapIO.getCityGraphFromImage(mapFile) : MapIO.getCityGraphFromFile(mapFile);
+        ShardedGame game = new Builder(graph, Integer.parseInt(args[1]))
+                .workers(Integer.parseInt(args[2]))
+                .seed(System.nanoTime())
+                .build();
+        GameResult result = game.startGame();
+
+        if (args.length == 4) {
+            MapIO.writeCitiesToFile(result.getCities(), new File(args[3]));
+        } else {
+            System.out.print(MapIO.writeCitiesAsString(result.getCities()));
+        }
+    }
+}
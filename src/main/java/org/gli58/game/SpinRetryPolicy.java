@@ -0,0 +1,29 @@
+package org.gli58.game;
+
+/**
+ * Retries right away on the same thread, up to a number of times for the same move.
+ * Then leaves it to another policy, so a monster cannot keep a thread busy for long.
+ */
+class SpinRetryPolicy implements RetryPolicy {
+
+    private final int maxSpins;
+    private final RetryPolicy fallback;
+
+    SpinRetryPolicy(int maxSpins, RetryPolicy fallback) {
+        if (maxSpins < 0) {
+            throw new IllegalArgumentException("number of spins cannot be negative");
+        }
+
+        if (fallback == null) {
+            throw new IllegalArgumentException("fallback is null");
+        }
+
+        this.maxSpins = maxSpins;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int getRetryDelayInMillis(Monster monster, int attempt) {
+        return attempt <= maxSpins ? RETRY_NOW : fallback.getRetryDelayInMillis(monster, attempt - maxSpins);
+    }
+}
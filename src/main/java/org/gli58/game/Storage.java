@@ -0,0 +1,27 @@
+package org.gli58.game;
+
+/**
+ * Where a game keeps the state that changes while it is played: the roads of the
+ * cities, which cities are destroyed, who occupies them, and the monsters - where each
+ * one is, how many moves it made, its status, when it wakes up and its counters.
+ */
+public enum Storage {
+
+    /**
+     * Arrays on the Java heap, the roads being the ones of the CityGraph itself. A graph
+     * kept off the heap is copied onto it for the game.
+     */
+    HEAP,
+
+    /**
+     * Direct ByteBuffers outside the Java heap, accessed through VarHandles. The game
+     * plays on a CityGraph kept off the heap as well, a copy of the one given if that one
+     * is on the heap, so its roads, names, the bitset of the cities on the map and the table
+     * names are looked up in are there too, as are the ids of the cities monsters are
+     * placed in. Nothing is left on the heap per city; source lines of a parsed map are
+     * not kept. A graph read with CityGraphImage.read(file, OFF_HEAP) never has its cities
+     * on the heap, so worlds larger than the heap can be played. Off-heap memory is limited
+     * by -XX:MaxDirectMemorySize, which defaults to the maximum heap size.
+     */
+    OFF_HEAP
+}
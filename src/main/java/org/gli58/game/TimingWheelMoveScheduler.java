@@ -0,0 +1,209 @@
+package org.gli58.game;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+/**
+ * Real-time scheduling on hashed timing wheels, one per worker thread, with the
+ * millisecond resolution of residence durations.
+ *
+ * A wheel has a slot per millisecond, modulo its size. Scheduling a wake-up adds
+ * the monster and its deadline to the end of a slot, and every millisecond a worker
+ * runs the monsters of the slots it went past whose deadline has come. Wake-ups
+ * further away than a turn of the wheel stay in their slot for more turns. So
+ * scheduling is O(1) and there is no heap or lock shared by all threads, unlike
+ * the queue of a ScheduledThreadPoolExecutor.
+ *
+ * A monster scheduling its next move on a worker goes to that worker's wheel, with
+ * no synchronization at all. Wake-ups scheduled from other threads, e.g. the game
+ * thread placing the monsters, go through a queue of the worker picked by monster index.
+ * Monsters thereby stick to their worker; there is no work stealing.
+ */
+class TimingWheelMoveScheduler implements MoveScheduler {
+
+    //a turn takes a bit more than the longest residence duration
+    static final int WHEEL_SIZE = 1024;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+    private final IntConsumer runMonster;
+    private final Worker[] workers;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean shutdown;
+
+    TimingWheelMoveScheduler(int threadCount, IntConsumer runMonster) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("thread count needs to be positive integer");
+        }
+        this.runMonster = runMonster;
+        workers = new Worker[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    @Override
+    public void schedule(int monster, int delayInMillis) {
+        //rounded up, so monsters don't wake up before their time
+        long deadline = (System.nanoTime() - startNanos + MILLIS - 1) / MILLIS + delayInMillis;
+
+        Thread thread = Thread.currentThread();
+        if (thread instanceof Worker && ((Worker) thread).scheduler() == this) {
+            ((Worker) thread).add(monster, deadline);
+            return;
+        }
+
+        Worker worker = workers[monster % workers.length];
+        worker.inbox.add(new WakeUp(monster, deadline));
+        LockSupport.unpark(worker);
+    }
+
+    @Override
+    public void run() {
+        //monsters scheduled so far wait in the inboxes
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private long elapsedMillis() {
+        return (System.nanoTime() - startNanos) / MILLIS;
+    }
+
+    private static class WakeUp {
+        private final int monster;
+        private final long deadline;
+
+        WakeUp(int monster, long deadline) {
+            this.monster = monster;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Monsters of a slot and their deadlines, in the order they were scheduled.
+     * The arrays only grow, so a steady game doesn't allocate.
+     */
+    private static class Slot {
+        private int[] monsters = new int[4];
+        private long[] deadlines = new long[4];
+        private int size;
+
+        void add(int monster, long deadline) {
+            if (size == monsters.length) {
+                monsters = Arrays.copyOf(monsters, size * 2);
+                deadlines = Arrays.copyOf(deadlines, size * 2);
+            }
+            monsters[size] = monster;
+            deadlines[size] = deadline;
+            size++;
+        }
+    }
+
+    private class Worker extends Thread {
+        private final Slot[] wheel = new Slot[WHEEL_SIZE];
+        private final Queue<WakeUp> inbox = new ConcurrentLinkedQueue<>();
+
+        //slot being run is swapped with this one, as monsters may schedule into it
+        private Slot spare = new Slot();
+
+        //millisecond whose slot is being or was last run, and wake-ups on the wheel
+        private long tick = -1;
+        private int pending;
+
+        Worker() {
+            super("monster-wheel-" + THREAD_SEQUENCE.incrementAndGet());
+            setDaemon(true);
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = new Slot();
+            }
+        }
+
+        TimingWheelMoveScheduler scheduler() {
+            return TimingWheelMoveScheduler.this;
+        }
+
+        void add(int monster, long deadline) {
+            //a slot gone past already would only be run on the next turn
+            deadline = Math.max(deadline, tick + 1);
+            wheel[(int) (deadline & MASK)].add(monster, deadline);
+            pending++;
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                WakeUp wakeUp;
+                while ((wakeUp = inbox.poll()) != null) {
+                    add(wakeUp.monster, wakeUp.deadline);
+                }
+
+                long now = elapsedMillis();
+                //after a long pause each slot is only gone through once
+                long from = Math.max(tick + 1, now - MASK);
+                for (long t = from; t <= now && !shutdown; t++) {
+                    tick = t;
+                    runSlot((int) (t & MASK), now);
+                }
+
+                if (pending == 0) {
+                    //nothing to run until another thread schedules a monster here
+                    if (inbox.isEmpty() && !shutdown) {
+                        LockSupport.park(this);
+                    }
+                } else {
+                    //sleep to the next millisecond
+                    long untilNextTick = (tick + 1) * MILLIS - (System.nanoTime() - startNanos);
+                    if (untilNextTick > 0 && inbox.isEmpty()) {
+                        LockSupport.parkNanos(this, untilNextTick);
+                    }
+                }
+            }
+        }
+
+        private void runSlot(int index, long now) {
+            Slot slot = wheel[index];
+            if (slot.size == 0) {
+                return;
+            }
+            wheel[index] = spare;
+            spare = slot;
+
+            for (int i = 0; i < slot.size; i++) {
+                int monster = slot.monsters[i];
+                if (slot.deadlines[i] > now) {
+                    //due on a later turn of the wheel
+                    wheel[index].add(monster, slot.deadlines[i]);
+                    continue;
+                }
+                pending--;
+                if (!shutdown) {
+                    //monsters handle their own errors
+                    runMonster.accept(monster);
+                }
+            }
+            slot.size = 0;
+        }
+    }
+}
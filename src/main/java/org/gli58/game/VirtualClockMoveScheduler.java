@@ -0,0 +1,129 @@
+package org.gli58.game;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Discrete-event scheduling against a simulated clock.
+ *
+ * Pending wake-ups are kept in a binary heap ordered by wake-up time, in parallel
+ * arrays of times, sequence numbers and monster indexes. Instead of sleeping, the
+ * clock jumps to the earliest wake-up and runs that monster, so the order of moves
+ * is the same as if the monsters had really stayed in their cities. Monsters waking
+ * up at the same time run in the order they were scheduled.
+ *
+ * Not thread safe - everything runs on the thread that calls run().
+ */
+class VirtualClockMoveScheduler implements MoveScheduler {
+
+    private final IntConsumer runMonster;
+
+    //heap of wake-ups, ordered by time, then sequence. the arrays only grow
+    private long[] times = new long[16];
+    private long[] sequences = new long[16];
+    private int[] monsters = new int[16];
+    private int size;
+
+    /**
+     * current simulated time, in milliseconds since the game started
+     */
+    private long now = 0;
+
+    /**
+     * tie breaker for wake-ups at the same time
+     */
+    private long sequence = 0;
+
+    //set by the game thread, or by whoever stops the game
+    private volatile boolean shutdown = false;
+
+    VirtualClockMoveScheduler(IntConsumer runMonster) {
+        this.runMonster = runMonster;
+    }
+
+    @Override
+    public void schedule(int monster, int delayInMillis) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            sequences = Arrays.copyOf(sequences, size * 2);
+            monsters = Arrays.copyOf(monsters, size * 2);
+        }
+        siftUp(size++, now + delayInMillis, sequence++, monster);
+    }
+
+    @Override
+    public void run() {
+        while (!shutdown && runNext()) {
+            //until the game is over or nobody is left to wake up
+        }
+    }
+
+    /**
+     * Moves the clock to the earliest wake-up and runs that monster.
+     *
+     * @return false if there was no wake-up left
+     */
+    boolean runNext() {
+        if (size == 0) {
+            return false;
+        }
+        now = times[0];
+        int monster = monsters[0];
+        size--;
+        if (size > 0) {
+            siftDown(0, times[size], sequences[size], monsters[size]);
+        }
+        runMonster.accept(monster);
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public long nanoTime() {
+        return TimeUnit.MILLISECONDS.toNanos(now);
+    }
+
+    private void siftUp(int index, long time, long seq, int monster) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(time, seq, times[parent], sequences[parent])) {
+                break;
+            }
+            set(index, times[parent], sequences[parent], monsters[parent]);
+            index = parent;
+        }
+        set(index, time, seq, monster);
+    }
+
+    private void siftDown(int index, long time, long seq, int monster) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && before(times[right], sequences[right], times[child], sequences[child])) {
+                child = right;
+            }
+            if (!before(times[child], sequences[child], time, seq)) {
+                break;
+            }
+            set(index, times[child], sequences[child], monsters[child]);
+            index = child;
+        }
+        set(index, time, seq, monster);
+    }
+
+    private static boolean before(long time, long seq, long otherTime, long otherSeq) {
+        return time < otherTime || (time == otherTime && seq < otherSeq);
+    }
+
+    private void set(int index, long time, long seq, int monster) {
+        times[index] = time;
+        sequences[index] = seq;
+        monsters[index] = monster;
+    }
+}
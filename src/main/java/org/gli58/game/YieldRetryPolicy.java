@@ -0,0 +1,13 @@
+package org.gli58.game;
+
+/**
+ * Hands the monster back to the scheduler without delay, so monsters already
+ * waiting for a thread get to move before the retry.
+ */
+class YieldRetryPolicy implements RetryPolicy {
+
+    @Override
+    public int getRetryDelayInMillis(Monster monster, int attempt) {
+        return 0;
+    }
+}
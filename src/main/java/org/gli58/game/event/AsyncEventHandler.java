@@ -0,0 +1,357 @@
+package org.gli58.game.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands events over to a single writer thread through a bounded lock-free ring buffer,
+ * so monster threads don't wait on each other to print. The writer formats the events
+ * and writes them one per line in batches through one channel.
+ *
+ * When the ring buffer is full the backpressure policy applies. Events are written as
+ * soon as the writer gets to them, flush() waits until all events handled before it
+ * are written.
+ */
+public class AsyncEventHandler implements EventHandler, AutoCloseable {
+
+    private static final int BATCH_BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long WAIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final BackpressurePolicy backpressurePolicy;
+
+    /**
+     * ring buffer of events. a slot's sequence tells whether the slot is free to publish
+     * position p (sequence p) or holds the event of position p (sequence p + 1)
+     */
+    private final AtomicReferenceArray<Event> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    /**
+     * next position to publish to, shared by all monster threads
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * next position to consume. only used by the writer thread
+     */
+    private long head;
+
+    /**
+     * overflow for the SPILL policy
+     */
+    private final Queue<Event> spilled = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder spilledCount = new LongAdder();
+
+    /**
+     * number of events written out so far, written by the writer thread only
+     */
+    private volatile long writtenCount;
+
+    private volatile boolean writerIdle;
+    private volatile boolean closed;
+    private volatile boolean failed;
+
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BUFFER_SIZE);
+    private final Thread writer;
+
+    /**
+     * Writes events to standard output, which stays open when the handler is closed.
+     */
+    public AsyncEventHandler(int capacity, BackpressurePolicy backpressurePolicy) {
+        this(new FileOutputStream(FileDescriptor.out).getChannel(), false, capacity, backpressurePolicy);
+    }
+
+    /**
+     * @param channel where the events are written to. closed together with the handler
+     * @param capacity number of events the ring buffer holds. rounded up to a power of two
+     * @param backpressurePolicy what to do when the ring buffer is full
+     */
+    public AsyncEventHandler(WritableByteChannel channel, int capacity, BackpressurePolicy backpressurePolicy) {
+        this(channel, true, capacity, backpressurePolicy);
+    }
+
+    private AsyncEventHandler(WritableByteChannel channel, boolean closeChannel,
+                              int capacity, BackpressurePolicy backpressurePolicy) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel is null");
+        }
+
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity should be between 1 and " + (1 << 30));
+        }
+
+        if (backpressurePolicy == null) {
+            throw new IllegalArgumentException("backpressurePolicy is null");
+        }
+
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.backpressurePolicy = backpressurePolicy;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+
+        this.writer = new Thread(this::writeEvents, "event-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void handle(Event event) {
+        if (event == null) {
+            throw new IllegalArgumentException("event is null");
+        }
+
+        if (closed) {
+            throw new IllegalStateException("event handler is closed");
+        }
+
+        while (!tryPublish(event)) {
+            switch (backpressurePolicy) {
+                case DROP:
+                    droppedCount.increment();
+                    return;
+                case SPILL:
+                    spilled.add(event);
+                    spilledCount.increment();
+                    acceptedCount.incrementAndGet();
+                    wakeUpWriter();
+                    return;
+                case BLOCK:
+                    if (failed) {
+                        droppedCount.increment();
+                        return;
+                    }
+                    wakeUpWriter();
+                    LockSupport.parkNanos(WAIT_PARK_NANOS);
+                    break;
+            }
+        }
+
+        acceptedCount.incrementAndGet();
+        wakeUpWriter();
+    }
+
+    /**
+     * @return false if the ring buffer is full
+     */
+    private boolean tryPublish(Event event) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, event);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                //slot still holds the event of one round earlier
+                return false;
+            }
+            //else another thread published to this position already. try the next one
+        }
+    }
+
+    private void wakeUpWriter() {
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    @Override
+    public void flush() {
+        long target = acceptedCount.get();
+        while (writtenCount < target && !failed) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(WAIT_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Writes out the events handled so far, then stops the writer and closes the channel.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join();
+            if (closeChannel) {
+                channel.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("failed to close event channel", e);
+        }
+    }
+
+    /**
+     * @return number of events dropped because the buffer was full, or the channel failed
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return number of events that went to the overflow queue
+     */
+    public long getSpilledCount() {
+        return spilledCount.sum();
+    }
+
+    private void writeEvents() {
+        try {
+            writeEventsUntilClosed();
+        } catch (RuntimeException e) {
+            logger.error("failed to format events. further events are dropped", e);
+            failed = true;
+        }
+    }
+
+    private void writeEventsUntilClosed() {
+        long written = 0;
+
+        while (true) {
+            int count = drain();
+
+            if (count > 0) {
+                written += count;
+                writeBatch();
+                writtenCount = written;
+                continue;
+            }
+
+            if (closed) {
+                return;
+            }
+
+            //nothing to write. wait for the next event, re-checking after announcing
+            //being idle so an event published in between is not missed
+            writerIdle = true;
+            if (isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            writerIdle = false;
+        }
+    }
+
+    private boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1 && spilled.isEmpty();
+    }
+
+    /**
+     * Formats events from the ring buffer, then from the overflow queue, into the
+     * batch buffer, writing the buffer out whenever it fills up.
+     *
+     * @return number of events taken
+     */
+    private int drain() {
+        int count = 0;
+
+        while (true) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+
+            Event event = slots.get(index);
+            slots.lazySet(index, null);
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+
+            append(event);
+            count++;
+        }
+
+        Event event;
+        while ((event = spilled.poll()) != null) {
+            append(event);
+            count++;
+        }
+
+        return count;
+    }
+
+    private void append(Event event) {
+        if (failed) {
+            droppedCount.increment();
+            return;
+        }
+
+        byte[] line = (event.getAsString() + '\n').getBytes(StandardCharsets.UTF_8);
+
+        if (line.length > batch.remaining()) {
+            writeBatch();
+        }
+
+        if (line.length > batch.remaining()) {
+            write(ByteBuffer.wrap(line));
+        } else {
+            batch.put(line);
+        }
+    }
+
+    private void writeBatch() {
+        batch.flip();
+        write(batch);
+        batch.clear();
+    }
+
+    private void write(ByteBuffer buffer) {
+        if (failed) {
+            return;
+        }
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            //there is nothing a monster can do about it. stop writing, don't stop the game
+            logger.error("failed to write events. further events are dropped", e);
+            failed = true;
+        }
+    }
+}
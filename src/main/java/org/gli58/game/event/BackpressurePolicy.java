@@ -0,0 +1,22 @@
+package org.gli58.game.event;
+
+/**
+ * What an asynchronous event handler does with an event when its buffer is full.
+ */
+public enum BackpressurePolicy {
+    /**
+     * the monster thread handling the event waits until there is room
+     */
+    BLOCK,
+
+    /**
+     * the event is dropped and counted
+     */
+    DROP,
+
+    /**
+     * the event goes to an unbounded overflow queue, so nothing is lost and no monster
+     * waits. events from the overflow queue can be written out of order.
+     */
+    SPILL
+}
@@ -9,4 +9,11 @@ package org.gli58.game.event;
  */
 public interface EventHandler {
     void handle(Event event);
+
+    /**
+     * Called by the game when it finishes. Handlers that hold on to events, e.g.
+     * to deliver them in batches, deliver all events handled so far before returning.
+     */
+    default void flush() {
+    }
 }
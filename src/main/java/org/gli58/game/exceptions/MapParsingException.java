@@ -1,6 +1,10 @@
 package org.gli58.game.exceptions;
 
 public class MapParsingException extends RuntimeException {
+    public MapParsingException(String message) {
+        super(message);
+    }
+
     public MapParsingException(String message, Throwable cause) {
         super(message, cause);
     }
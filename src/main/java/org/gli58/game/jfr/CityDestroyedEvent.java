@@ -0,0 +1,36 @@
+package org.gli58.game.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("org.gli58.game.CityDestroyed")
+@Label("City Destroyed")
+@Description("Monsters fought in a city, which destroyed it and killed them")
+@Category("Monster Game")
+@StackTrace(false)
+class CityDestroyedEvent extends jdk.jfr.Event {
+    @Label("City Id")
+    int city;
+
+    @Label("City")
+    String cityName;
+
+    @Label("Monster")
+    @Description("monster that moved in")
+    long monsterId;
+
+    @Label("Opponent")
+    @Description("monster that was in the city, or another monster moving in at the same tick of the lockstep engine")
+    long opponentId;
+
+    @Label("Monsters")
+    int monsterCount;
+
+    @Label("Attempt Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long attemptDuration;
+}
@@ -0,0 +1,32 @@
+package org.gli58.game.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("org.gli58.game.LockFailed")
+@Label("City Lock Failed")
+@Description("A monster could not get the lock of the city it moves from or to, and tries the move again")
+@Category("Monster Game")
+@StackTrace(false)
+class LockFailedEvent extends jdk.jfr.Event {
+    @Label("Monster")
+    long monsterId;
+
+    @Label("Locked City Id")
+    int city;
+
+    @Label("Locked City")
+    String cityName;
+
+    @Label("Moving From Locked City")
+    @Description("true if the lock of the city moved from failed, false if that of the city moved to")
+    boolean fromCity;
+
+    @Label("Attempt Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long attemptDuration;
+}
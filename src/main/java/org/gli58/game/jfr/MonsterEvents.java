@@ -0,0 +1,101 @@
+package org.gli58.game.jfr;
+
+import jdk.jfr.EventType;
+import org.gli58.game.CityGraph;
+
+/**
+ * Emits the Java Flight Recorder events of monsters.
+ *
+ * Without a recording running, the events are not enabled and each call is a check
+ * of a flag. The event objects don't escape, so the JIT can remove them altogether.
+ * City names are only looked up for events that get committed.
+ */
+public final class MonsterEvents {
+
+    private static final EventType MOVE_COMMITTED = EventType.getEventType(MoveCommittedEvent.class);
+    private static final EventType LOCK_FAILED = EventType.getEventType(LockFailedEvent.class);
+    private static final EventType CITY_DESTROYED = EventType.getEventType(CityDestroyedEvent.class);
+
+    private MonsterEvents() {
+    }
+
+    /**
+     * @return start time of a move attempt for the durations of the events, or 0 if
+     * none of the events with a duration is recorded
+     */
+    public static long attemptStarted() {
+        return MOVE_COMMITTED.isEnabled() || LOCK_FAILED.isEnabled() || CITY_DESTROYED.isEnabled()
+                ? System.nanoTime() : 0;
+    }
+
+    public static void moveCommitted(CityGraph graph, long monsterId, long moveId,
+                                     int fromCity, int toCity, long attemptStart) {
+        MoveCommittedEvent event = new MoveCommittedEvent();
+        if (event.shouldCommit()) {
+            event.monsterId = monsterId;
+            event.moveId = moveId;
+            event.fromCity = fromCity;
+            event.fromCityName = name(graph, fromCity);
+            event.toCity = toCity;
+            event.toCityName = name(graph, toCity);
+            event.attemptDuration = since(attemptStart);
+            event.commit();
+        }
+    }
+
+    public static void lockFailed(CityGraph graph, long monsterId, int city, boolean fromCity, long attemptStart) {
+        LockFailedEvent event = new LockFailedEvent();
+        if (event.shouldCommit()) {
+            event.monsterId = monsterId;
+            event.city = city;
+            event.cityName = name(graph, city);
+            event.fromCity = fromCity;
+            event.attemptDuration = since(attemptStart);
+            event.commit();
+        }
+    }
+
+    public static void trapped(CityGraph graph, long monsterId, int city) {
+        MonsterTrappedEvent event = new MonsterTrappedEvent();
+        if (event.shouldCommit()) {
+            event.monsterId = monsterId;
+            event.city = city;
+            event.cityName = name(graph, city);
+            event.commit();
+        }
+    }
+
+    public static void tired(CityGraph graph, long monsterId, int city, long moves) {
+        MonsterTiredEvent event = new MonsterTiredEvent();
+        if (event.shouldCommit()) {
+            event.monsterId = monsterId;
+            event.city = city;
+            event.cityName = name(graph, city);
+            event.moves = moves;
+            event.commit();
+        }
+    }
+
+    public static void cityDestroyed(CityGraph graph, int city, long monsterId, long opponentId,
+                                     int monsterCount, long attemptStart) {
+        CityDestroyedEvent event = new CityDestroyedEvent();
+        if (event.shouldCommit()) {
+            event.city = city;
+            event.cityName = name(graph, city);
+            event.monsterId = monsterId;
+            event.opponentId = opponentId;
+            event.monsterCount = monsterCount;
+            event.attemptDuration = since(attemptStart);
+            event.commit();
+        }
+    }
+
+    private static String name(CityGraph graph, int city) {
+        return city == CityGraph.NO_CITY ? null : graph.getName(city);
+    }
+
+    private static long since(long attemptStart) {
+        //recording may have started during the attempt
+        return attemptStart == 0 ? 0 : System.nanoTime() - attemptStart;
+    }
+}
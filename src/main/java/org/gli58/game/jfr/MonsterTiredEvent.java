@@ -0,0 +1,24 @@
+package org.gli58.game.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.gli58.game.MonsterTired")
+@Label("Monster Tired")
+@Category("Monster Game")
+@StackTrace(false)
+class MonsterTiredEvent extends jdk.jfr.Event {
+    @Label("Monster")
+    long monsterId;
+
+    @Label("City Id")
+    int city;
+
+    @Label("City")
+    String cityName;
+
+    @Label("Moves")
+    long moves;
+}
@@ -0,0 +1,21 @@
+package org.gli58.game.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.gli58.game.MonsterTrapped")
+@Label("Monster Trapped")
+@Category("Monster Game")
+@StackTrace(false)
+class MonsterTrappedEvent extends jdk.jfr.Event {
+    @Label("Monster")
+    long monsterId;
+
+    @Label("City Id")
+    int city;
+
+    @Label("City")
+    String cityName;
+}
@@ -0,0 +1,39 @@
+package org.gli58.game.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("org.gli58.game.MoveCommitted")
+@Label("Move Committed")
+@Description("A monster moved into a city, or got placed in its first city")
+@Category("Monster Game")
+@StackTrace(false)
+@Enabled(false)
+class MoveCommittedEvent extends jdk.jfr.Event {
+    @Label("Monster")
+    long monsterId;
+
+    @Label("Move")
+    long moveId;
+
+    @Label("From City Id")
+    int fromCity;
+
+    @Label("From City")
+    String fromCityName;
+
+    @Label("To City Id")
+    int toCity;
+
+    @Label("To City")
+    String toCityName;
+
+    @Label("Attempt Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long attemptDuration;
+}
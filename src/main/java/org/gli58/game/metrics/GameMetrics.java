@@ -0,0 +1,192 @@
+package org.gli58.game.metrics;
+
+import org.gli58.game.Monster;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Counters of a game, recorded into by the monster threads with striped adders so
+ * recording doesn't add contention of its own. Monsters by status and cities remaining
+ * are read from the game when asked for.
+ */
+public class GameMetrics implements GameMetricsMBean {
+
+    private final LongAdder movesCommitted = new LongAdder();
+    private final LongAdder lockFailures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder fights = new LongAdder();
+    private final LongAdder pendingWakeUps = new LongAdder();
+    private final LatencyHistogram scheduleLag = new LatencyHistogram();
+
+    private final Supplier<Map<Monster.Status, Long>> monstersByStatus;
+    private final IntSupplier citiesRemaining;
+
+    private volatile long startNanos;
+    private volatile long finishNanos;
+
+    public GameMetrics(Supplier<Map<Monster.Status, Long>> monstersByStatus, IntSupplier citiesRemaining) {
+        if (monstersByStatus == null || citiesRemaining == null) {
+            throw new IllegalArgumentException("monstersByStatus and citiesRemaining are required");
+        }
+        this.monstersByStatus = monstersByStatus;
+        this.citiesRemaining = citiesRemaining;
+    }
+
+    public void gameStarted() {
+        startNanos = System.nanoTime();
+    }
+
+    public void gameFinished() {
+        finishNanos = System.nanoTime();
+    }
+
+    public void moveCommitted() {
+        movesCommitted.increment();
+    }
+
+    public void lockFailed() {
+        lockFailures.increment();
+    }
+
+    public void retried() {
+        retries.increment();
+    }
+
+    public void fought() {
+        fights.increment();
+    }
+
+    public void moveScheduled() {
+        pendingWakeUps.increment();
+    }
+
+    /**
+     * @param lagNanos how much later than scheduled the monster woke up
+     */
+    public void wokeUp(long lagNanos) {
+        pendingWakeUps.decrement();
+        scheduleLag.record(lagNanos);
+    }
+
+    public GameMetricsSnapshot snapshot() {
+        return new GameMetricsSnapshot(elapsedNanos(),
+                movesCommitted.sum(),
+                lockFailures.sum(),
+                retries.sum(),
+                fights.sum(),
+                getSchedulerQueueDepth(),
+                scheduleLag.getMeanNanos(),
+                scheduleLag.getPercentileNanos(99),
+                scheduleLag.getMaxNanos(),
+                monstersByStatus.get(),
+                citiesRemaining.getAsInt());
+    }
+
+    private long elapsedNanos() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long finish = finishNanos;
+        return (finish != 0 ? finish : System.nanoTime()) - start;
+    }
+
+    private double perSecond(long count) {
+        long elapsed = elapsedNanos();
+        return elapsed == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    private long monsters(Monster.Status status) {
+        return monstersByStatus.get().getOrDefault(status, 0L);
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos());
+    }
+
+    @Override
+    public long getMovesCommitted() {
+        return movesCommitted.sum();
+    }
+
+    @Override
+    public double getMovesPerSecond() {
+        return perSecond(movesCommitted.sum());
+    }
+
+    @Override
+    public long getLockFailures() {
+        return lockFailures.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getFights() {
+        return fights.sum();
+    }
+
+    @Override
+    public double getFightsPerSecond() {
+        return perSecond(fights.sum());
+    }
+
+    @Override
+    public long getSchedulerQueueDepth() {
+        //monsters may still wake up after the game shut down the scheduler
+        return Math.max(pendingWakeUps.sum(), 0);
+    }
+
+    @Override
+    public long getScheduleLagMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(scheduleLag.getMeanNanos());
+    }
+
+    @Override
+    public long getScheduleLagP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(scheduleLag.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getScheduleLagMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(scheduleLag.getMaxNanos());
+    }
+
+    @Override
+    public long getActiveMonsters() {
+        return monsters(Monster.Status.ACTIVE);
+    }
+
+    @Override
+    public long getTrappedMonsters() {
+        return monsters(Monster.Status.TRAPPED);
+    }
+
+    @Override
+    public long getKilledMonsters() {
+        return monsters(Monster.Status.KILLED);
+    }
+
+    @Override
+    public long getTiredMonsters() {
+        return monsters(Monster.Status.TIRED);
+    }
+
+    @Override
+    public long getErroredMonsters() {
+        return monsters(Monster.Status.ERRORED);
+    }
+
+    @Override
+    public int getCitiesRemaining() {
+        return citiesRemaining.getAsInt();
+    }
+}
@@ -0,0 +1,44 @@
+package org.gli58.game.metrics;
+
+/**
+ * Live metrics of a running game over JMX. Registered under
+ * org.gli58.game:type=GameMetrics,name=game-n while the game is played.
+ *
+ * Counts and rates are since the game started, durations are in microseconds.
+ */
+public interface GameMetricsMBean {
+
+    long getElapsedMillis();
+
+    long getMovesCommitted();
+
+    double getMovesPerSecond();
+
+    long getLockFailures();
+
+    long getRetries();
+
+    long getFights();
+
+    double getFightsPerSecond();
+
+    long getSchedulerQueueDepth();
+
+    long getScheduleLagMeanMicros();
+
+    long getScheduleLagP99Micros();
+
+    long getScheduleLagMaxMicros();
+
+    long getActiveMonsters();
+
+    long getTrappedMonsters();
+
+    long getKilledMonsters();
+
+    long getTiredMonsters();
+
+    long getErroredMonsters();
+
+    int getCitiesRemaining();
+}
@@ -0,0 +1,136 @@
+package org.gli58.game.metrics;
+
+import org.gli58.game.Monster;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of a game at one point in time. Counts are since the game started, and so
+ * are the rates per second. Take snapshots a while apart and compare their counts for
+ * the rates in between.
+ */
+public class GameMetricsSnapshot {
+    private final long elapsedNanos;
+    private final long movesCommitted;
+    private final long lockFailures;
+    private final long retries;
+    private final long fights;
+    private final long schedulerQueueDepth;
+    private final long scheduleLagMeanNanos;
+    private final long scheduleLagP99Nanos;
+    private final long scheduleLagMaxNanos;
+    private final Map<Monster.Status, Long> monstersByStatus;
+    private final int citiesRemaining;
+
+    public GameMetricsSnapshot(long elapsedNanos,
+                               long movesCommitted,
+                               long lockFailures,
+                               long retries,
+                               long fights,
+                               long schedulerQueueDepth,
+                               long scheduleLagMeanNanos,
+                               long scheduleLagP99Nanos,
+                               long scheduleLagMaxNanos,
+                               Map<Monster.Status, Long> monstersByStatus,
+                               int citiesRemaining) {
+        this.elapsedNanos = elapsedNanos;
+        this.movesCommitted = movesCommitted;
+        this.lockFailures = lockFailures;
+        this.retries = retries;
+        this.fights = fights;
+        this.schedulerQueueDepth = schedulerQueueDepth;
+        this.scheduleLagMeanNanos = scheduleLagMeanNanos;
+        this.scheduleLagP99Nanos = scheduleLagP99Nanos;
+        this.scheduleLagMaxNanos = scheduleLagMaxNanos;
+
+        Map<Monster.Status, Long> byStatus = new EnumMap<>(Monster.Status.class);
+        for (Monster.Status status : Monster.Status.values()) {
+            byStatus.put(status, monstersByStatus.getOrDefault(status, 0L));
+        }
+        this.monstersByStatus = Collections.unmodifiableMap(byStatus);
+        this.citiesRemaining = citiesRemaining;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getMovesCommitted() {
+        return movesCommitted;
+    }
+
+    public double getMovesPerSecond() {
+        return perSecond(movesCommitted);
+    }
+
+    public long getLockFailures() {
+        return lockFailures;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    public long getFights() {
+        return fights;
+    }
+
+    public double getFightsPerSecond() {
+        return perSecond(fights);
+    }
+
+    /**
+     * @return number of monster moves scheduled but not run yet
+     */
+    public long getSchedulerQueueDepth() {
+        return schedulerQueueDepth;
+    }
+
+    /**
+     * Schedule lag is how much later than intended a monster woke up.
+     */
+    public long getScheduleLagMeanNanos() {
+        return scheduleLagMeanNanos;
+    }
+
+    public long getScheduleLagP99Nanos() {
+        return scheduleLagP99Nanos;
+    }
+
+    public long getScheduleLagMaxNanos() {
+        return scheduleLagMaxNanos;
+    }
+
+    /**
+     * @return number of monsters for every status, including those with none
+     */
+    public Map<Monster.Status, Long> getMonstersByStatus() {
+        return monstersByStatus;
+    }
+
+    public int getCitiesRemaining() {
+        return citiesRemaining;
+    }
+
+    private double perSecond(long count) {
+        return elapsedNanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "moves " + movesCommitted +
+                ", moves/s " + Math.round(getMovesPerSecond()) +
+                ", lock failures " + lockFailures +
+                ", retries " + retries +
+                ", fights " + fights +
+                ", queue depth " + schedulerQueueDepth +
+                ", schedule lag mean/p99/max us " + TimeUnit.NANOSECONDS.toMicros(scheduleLagMeanNanos) +
+                "/" + TimeUnit.NANOSECONDS.toMicros(scheduleLagP99Nanos) +
+                "/" + TimeUnit.NANOSECONDS.toMicros(scheduleLagMaxNanos) +
+                ", monsters " + monstersByStatus +
+                ", cities " + citiesRemaining;
+    }
+}
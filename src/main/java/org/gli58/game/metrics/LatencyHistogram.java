@@ -0,0 +1,80 @@
+package org.gli58.game.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with power-of-two buckets, cheap enough to
+ * record into from every monster thread. Percentiles are reported as the upper
+ * bound of the bucket they fall into, so they are accurate within a factor of two.
+ */
+public class LatencyHistogram {
+
+    //bucket i holds values below 2^i, and at least 2^(i-1) for i > 0
+    private static final int BUCKET_COUNT = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos duration, negative durations are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets[Math.min(BUCKET_COUNT - Long.numberOfLeadingZeros(value), BUCKET_COUNT - 1)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket the percentile falls into, or 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile should be between 0 and 100");
+        }
+
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+}
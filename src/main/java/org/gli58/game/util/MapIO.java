@@ -3,6 +3,8 @@ package org.gli58.game.util;
 import org.gli58.game.exceptions.MapParsingException;
 import org.gli58.game.exceptions.MapSavingToFileException;
 import org.gli58.game.City;
+import org.gli58.game.CityGraph;
+import org.gli58.game.CityGraphImage;
 import org.gli58.game.Direction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,7 +12,7 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Stream;
@@ -60,68 +62,109 @@ public class MapIO {
     private MapIO() {} //prevents direct instantiation by client
 
     public static Set<City> getCitiesFromClasspathResource(String resourcePath) {
+        return getCityGraphFromClasspathResource(resourcePath).getCities();
+    }
+
+    public static Set<City> getCitiesFromStream(Stream<String> lines) {
+        return getCityGraphFromStream(lines).getCities();
+    }
+
+    public static CityGraph getCityGraphFromClasspathResource(String resourcePath) {
         ClassLoader classLoader = MapIO.class.getClassLoader();
 
         try {
             URI resourceUri = classLoader.getResource(resourcePath).toURI();
-
-            return getCitiesFromStream(Files.lines(Paths.get(resourceUri)));
+            return getCityGraphFromFile(Paths.get(resourceUri));
 
         } catch (URISyntaxException e) {
             throw new MapParsingException("failed to parse " + resourcePath, e);
+        }
+    }
+
+    /**
+     * Parses a map file without decoding it into lines and tokens first, which is
+     * much faster than parsing a stream of lines on large maps. Lines may end with
+     * \n or \r\n. Large files are parsed on as many threads as there are processors.
+     */
+    public static CityGraph getCityGraphFromFile(Path file) {
+        return getCityGraphFromFile(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Same as getCityGraphFromFile(Path), on up to parallelism threads. The file is split
+     * in chunks of at least a few megabytes, so small files are parsed on the calling thread.
+     * Cities get the same ids however many threads are used.
+     */
+    public static CityGraph getCityGraphFromFile(Path file, int parallelism) {
+        try {
+            return ParallelMapParser.parse(file, parallelism);
 
         } catch (IOException e) {
-            throw new MapParsingException("failed to parse " + resourcePath, e);
+            throw new MapParsingException("failed to parse " + file, e);
         }
     }
 
-    public static Set<City> getCitiesFromStream(Stream<String> lines) {
+    /**
+     * Loads a map saved by writeCityGraphImage, with no parsing. See MapImageConverter
+     * for converting a map file once.
+     */
+    public static CityGraph getCityGraphFromImage(Path file) {
+        return CityGraphImage.read(file);
+    }
+
+    /**
+     * Saves the graph as a binary image, with the same ids, names and roads as it has now.
+     */
+    public static void writeCityGraphImage(CityGraph graph, Path file) {
+        CityGraphImage.write(graph, file);
+    }
+
+    public static CityGraph getCityGraphFromStream(Stream<String> lines) {
         return fromStreamOfCities(lines);
     }
 
-    private static Set<City> fromStreamOfCities(Stream<String> lines) {
-        //Note explicitly using LinkedHashSet to maintain the order of cities parsed -
-        //not essential but somewhat nice
+    private static CityGraph fromStreamOfCities(Stream<String> lines) {
+        //Note cities get their ids in the order they are parsed -
+        //not essential but somewhat nice, as that is also the order they are written in
 
-        Map<String, City> cities = new LinkedHashMap<>();
-        return lines.map(line -> parseOneCity(cities, line)).collect(toCollection(LinkedHashSet::new));
+        CityGraph.Builder builder = new CityGraph.Builder();
+        lines.forEachOrdered(line -> parseOneCity(builder, line));
+        return builder.build();
     }
 
-    private static City parseOneCity(Map<String, City> cities, String line) {
+    private static void parseOneCity(CityGraph.Builder builder, String line) {
         String[] parts = line.split(FIELD_SEPARATOR);
 
         if (parts == null || parts.length < 2) { //2 here assuming city name plus at least one neighbor
             throw new IllegalArgumentException(
                     "a city needs to have at least one neighbor " + line);
         }
-        City fromCity = cities.computeIfAbsent(parts[0], City::new);
+        int fromCity = builder.addCity(parts[0]);
 
         for (int i=1; i<parts.length; i++) {
             String neighbor = parts[i];
             switch (neighbor.charAt(0)) {
                 case 'n':
-                    City north = cities.computeIfAbsent(neighbor.substring(NORTH_PREFIX_LEN), City::new);
-                    fromCity.addNeighbor(Direction.NORTH, north);
+                    int north = builder.referenceCity(neighbor.substring(NORTH_PREFIX_LEN));
+                    builder.addNeighbor(fromCity, Direction.NORTH, north);
                     break;
                 case 'e':
-                    City east = cities.computeIfAbsent(neighbor.substring(EAST_PREFIX_LEN), City::new);
-                    fromCity.addNeighbor(Direction.EAST, east);
+                    int east = builder.referenceCity(neighbor.substring(EAST_PREFIX_LEN));
+                    builder.addNeighbor(fromCity, Direction.EAST, east);
                     break;
                 case 's':
-                    City south = cities.computeIfAbsent(neighbor.substring(SOUTH_PREFIX_LEN), City::new);
-                    fromCity.addNeighbor(Direction.SOUTH, south);
+                    int south = builder.referenceCity(neighbor.substring(SOUTH_PREFIX_LEN));
+                    builder.addNeighbor(fromCity, Direction.SOUTH, south);
                     break;
                 case 'w':
-                    City west = cities.computeIfAbsent(neighbor.substring(WEST_PREFIX_LEN), City::new);
-                    fromCity.addNeighbor(Direction.WEST, west);
+                    int west = builder.referenceCity(neighbor.substring(WEST_PREFIX_LEN));
+                    builder.addNeighbor(fromCity, Direction.WEST, west);
                     break;
 
                 default:
                     throw new IllegalArgumentException("unknown neighbor type " + neighbor);
             }
         }
-
-        return fromCity;
     }
 
     public static void writeCitiesToFile(Set<City> cities, String fileName) {
@@ -129,15 +172,19 @@ public class MapIO {
     }
 
     public static void writeCitiesToFile(Set<City> cities, File file) {
-        try (PrintWriter writer = new PrintWriter(file, "UTF-8"))
-        {
-            writeCities(cities, writer);
+        writeCitiesToFile(cities, file.toPath(), Runtime.getRuntime().availableProcessors());
+    }
 
-        } catch (FileNotFoundException e) {
-            throw new MapSavingToFileException("cannot save cities to file " + file.getAbsolutePath(), e);
+    /**
+     * Writes the same bytes as writeCities, encoding the lines of chunks of cities on up to
+     * parallelism threads, straight from the names in the city graph to UTF-8.
+     */
+    public static void writeCitiesToFile(Set<City> cities, Path file, int parallelism) {
+        try {
+            ParallelMapWriter.write(cities, file, parallelism);
 
-        } catch (UnsupportedEncodingException e) {
-            throw new MapSavingToFileException("cannot save cities to file", e);
+        } catch (IOException e) {
+            throw new MapSavingToFileException("cannot save cities to file " + file.toAbsolutePath(), e);
         }
     }
 
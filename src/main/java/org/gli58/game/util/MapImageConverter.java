@@ -0,0 +1,42 @@
+package org.gli58.game.util;
+
+import org.gli58.game.CityGraph;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts a map file into a binary image, which games and batch runs can load
+ * through MapIO.getCityGraphFromImage instead of parsing the map every time:
+ *
+ * java -cp coding-exercise.jar org.gli58.game.util.MapImageConverter map.txt map.img
+ */
+public class MapImageConverter {
+
+    private MapImageConverter() {}
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("usage: MapImageConverter <map file> <image file>");
+            System.exit(2);
+        }
+
+        Path mapFile = Paths.get(args[0]);
+        Path imageFile = Paths.get(args[1]);
+
+        long start = System.nanoTime();
+        CityGraph graph = MapIO.getCityGraphFromFile(mapFile);
+        long parsed = System.nanoTime();
+        MapIO.writeCityGraphImage(graph, imageFile);
+        long written = System.nanoTime();
+        MapIO.getCityGraphFromImage(imageFile);
+        long loaded = System.nanoTime();
+
+        System.out.println(String.format("%d cities: parsed in %d ms, image written in %d ms, loads in %d ms",
+                graph.size(),
+                TimeUnit.NANOSECONDS.toMillis(parsed - start),
+                TimeUnit.NANOSECONDS.toMillis(written - parsed),
+                TimeUnit.NANOSECONDS.toMillis(loaded - written)));
+    }
+}
@@ -0,0 +1,215 @@
+package org.gli58.game.util;
+
+import org.gli58.game.CityGraph;
+import org.gli58.game.Direction;
+import org.gli58.game.MapSource;
+import org.gli58.game.exceptions.MapParsingException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Parses a map file in place: the file is memory-mapped and its bytes are scanned for
+ * the separators and the direction prefixes directly. Names go into the graph as byte
+ * ranges of the mapped file, so there is no String, line or token object per city.
+ *
+ * Files larger than a mapping can be are mapped one window at a time, each window
+ * ending at a line break.
+ */
+class MappedMapParser {
+
+    private static final int MAX_WINDOW_SIZE = 1 << 30;
+
+    private static final byte SEPARATOR = ' ';
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private static final byte[] NORTH_PREFIX = "north=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SOUTH_PREFIX = "south=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EAST_PREFIX = "east=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WEST_PREFIX = "west=".getBytes(StandardCharsets.US_ASCII);
+
+    //lines ending like this can be copied as they are when writing the map
+    private static final boolean CARRIAGE_RETURN_LINE_SEPARATOR = "\r\n".equals(System.lineSeparator());
+    private static final boolean NEWLINE_LINE_SEPARATOR = "\n".equals(System.lineSeparator());
+
+    private MappedMapParser() {}
+
+    static CityGraph parse(Path file) throws IOException {
+        return parse(file, MAX_WINDOW_SIZE);
+    }
+
+    //window size is only smaller for tests
+    static CityGraph parse(Path file, int maxWindowSize) throws IOException {
+        CityGraph.Builder builder = new CityGraph.Builder();
+        builder.source(new MapSource(file));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            long lineNumber = 1;
+
+            while (position < size) {
+                int windowSize = (int) Math.min(maxWindowSize, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+
+                int end = windowSize;
+                if (position + windowSize < size) {
+                    //the rest of the last line goes to the next window
+                    end = lastIndexOf(window, NEWLINE, windowSize) + 1;
+                    if (end == 0) {
+                        throw new MapParsingException("line " + lineNumber + " is longer than " + maxWindowSize + " bytes");
+                    }
+                }
+
+                lineNumber = parseLines(builder, window, 0, end, lineNumber, position);
+                position += end;
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Parses the lines in buffer[from, to), the last one may or may not end with a line break.
+     *
+     * @param lineNumber number of the first line, for error messages
+     * @param fileOffset offset of buffer[0] in the file, for the source lines of the cities
+     * @return number of the line after the last one parsed
+     */
+    static long parseLines(CityGraph.Builder builder, ByteBuffer buffer, int from, int to, long lineNumber, long fileOffset) {
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = indexOf(buffer, NEWLINE, lineStart, to);
+            int contentEnd = lineEnd;
+            boolean carriageReturn = contentEnd > lineStart && buffer.get(contentEnd - 1) == CARRIAGE_RETURN;
+            if (carriageReturn) {
+                contentEnd--;
+            }
+
+            int city = parseLine(builder, buffer, lineStart, contentEnd, lineNumber);
+
+            boolean separatorAsWritten = lineEnd < to
+                    && (carriageReturn ? CARRIAGE_RETURN_LINE_SEPARATOR : NEWLINE_LINE_SEPARATOR);
+            if (city != CityGraph.NO_CITY && separatorAsWritten) {
+                builder.sourceLine(city, fileOffset + lineStart, lineEnd + 1 - lineStart);
+            }
+
+            lineNumber++;
+            lineStart = lineEnd + 1;
+        }
+        return lineNumber;
+    }
+
+    /**
+     * @return id of the city if the line is exactly how it would be written, i.e. with its
+     * neighbors in the order of the directions, otherwise NO_CITY
+     */
+    private static int parseLine(CityGraph.Builder builder, ByteBuffer buffer, int start, int end, long lineNumber) {
+        //trailing separators are dropped, as String.split() of the old parser did
+        int contentEnd = end;
+        while (contentEnd > start && buffer.get(contentEnd - 1) == SEPARATOR) {
+            contentEnd--;
+        }
+
+        int nameEnd = indexOf(buffer, SEPARATOR, start, contentEnd);
+        if (nameEnd == contentEnd) {
+            throw error("a city needs to have at least one neighbor", buffer, start, end, lineNumber);
+        }
+        if (nameEnd == start) {
+            throw error("city name is missing", buffer, start, end, lineNumber);
+        }
+
+        int fromCity = builder.addCity(buffer, start, nameEnd - start);
+        int lastDirection = -1;
+        boolean asWritten = contentEnd == end;
+
+        int tokenStart = nameEnd + 1;
+        while (tokenStart <= contentEnd) {
+            int tokenEnd = indexOf(buffer, SEPARATOR, tokenStart, contentEnd);
+
+            Direction direction;
+            int nameStart;
+            if (startsWith(buffer, tokenStart, tokenEnd, NORTH_PREFIX)) {
+                direction = Direction.NORTH;
+                nameStart = tokenStart + NORTH_PREFIX.length;
+            } else if (startsWith(buffer, tokenStart, tokenEnd, SOUTH_PREFIX)) {
+                direction = Direction.SOUTH;
+                nameStart = tokenStart + SOUTH_PREFIX.length;
+            } else if (startsWith(buffer, tokenStart, tokenEnd, EAST_PREFIX)) {
+                direction = Direction.EAST;
+                nameStart = tokenStart + EAST_PREFIX.length;
+            } else if (startsWith(buffer, tokenStart, tokenEnd, WEST_PREFIX)) {
+                direction = Direction.WEST;
+                nameStart = tokenStart + WEST_PREFIX.length;
+            } else {
+                throw error("unknown neighbor type " + decode(buffer, tokenStart, tokenEnd), buffer, start, end, lineNumber);
+            }
+
+            if (nameStart == tokenEnd) {
+                throw error("neighbor name is missing", buffer, start, end, lineNumber);
+            }
+
+            int neighbor = builder.referenceCity(buffer, nameStart, tokenEnd - nameStart);
+            builder.addNeighbor(fromCity, direction, neighbor);
+
+            asWritten &= direction.ordinal() > lastDirection;
+            lastDirection = direction.ordinal();
+            tokenStart = tokenEnd + 1;
+        }
+        return asWritten ? fromCity : CityGraph.NO_CITY;
+    }
+
+    /**
+     * @return index of the first b in buffer[from, to), or to
+     */
+    private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return index of the last b in buffer[0, to), or -1
+     */
+    private static int lastIndexOf(ByteBuffer buffer, byte b, int to) {
+        for (int i = to - 1; i >= 0; i--) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(from + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static MapParsingException error(String message, ByteBuffer buffer, int lineStart, int lineEnd, long lineNumber) {
+        return new MapParsingException("line " + lineNumber + ": " + message + ": " + decode(buffer, lineStart, lineEnd));
+    }
+}
@@ -0,0 +1,188 @@
+package org.gli58.game.util;
+
+import org.gli58.game.CityGraph;
+import org.gli58.game.MapSource;
+import org.gli58.game.exceptions.MapParsingException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses a map file on several threads. The file is split into chunks at line breaks,
+ * each chunk is memory-mapped and parsed into a graph builder of its own, so threads
+ * only intern the names of their own chunk. The graph is then built from the builders
+ * on the same threads, see CityGraph.Builder.build(List, ...), which gives cities the
+ * same ids as parsing the file on one thread.
+ */
+class ParallelMapParser {
+
+    static final int MIN_CHUNK_SIZE = 4 << 20;
+    private static final int MAX_CHUNK_SIZE = 1 << 30;
+
+    private static final byte NEWLINE = '\n';
+
+    private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+    private ParallelMapParser() {}
+
+    static CityGraph parse(Path file, int parallelism) throws IOException {
+        return parse(file, parallelism, MIN_CHUNK_SIZE);
+    }
+
+    //chunks are only smaller for tests
+    static CityGraph parse(Path file, int parallelism, int minChunkSize) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism should be at least 1");
+        }
+
+        MapSource source = new MapSource(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, parallelism, minChunkSize);
+            int chunkCount = bounds.length - 1;
+            if (chunkCount <= 1 || parallelism == 1) {
+                return MappedMapParser.parse(file);
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, chunkCount), runnable -> {
+                Thread thread = new Thread(runnable, "map-parser-" + THREAD_SEQUENCE.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            try {
+                List<Future<Chunk>> chunks = new ArrayList<>(chunkCount);
+                for (int i = 0; i < chunkCount; i++) {
+                    long start = bounds[i];
+                    long end = bounds[i + 1];
+                    chunks.add(executor.submit(() -> parseChunk(channel, start, end)));
+                }
+
+                List<CityGraph.Builder> builders = new ArrayList<>(chunkCount);
+                long lineNumber = 1;
+                for (int i = 0; i < chunkCount; i++) {
+                    Chunk chunk = await(chunks.get(i), channel, bounds[i], bounds[i + 1], lineNumber);
+                    builders.add(chunk.builder);
+                    lineNumber += chunk.lineCount;
+                }
+                return CityGraph.Builder.build(builders, source, executor, Math.min(parallelism, chunkCount));
+
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Offsets where chunks start, plus the size of the file. Every chunk but the last
+     * ends right after a line break.
+     */
+    private static long[] chunkBounds(FileChannel channel, int parallelism, int minChunkSize) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(minChunkSize, (size + parallelism - 1) / parallelism));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long start = 0;
+        while (start + chunkSize < size) {
+            long bound = nextLineStart(channel, start + chunkSize, size);
+            if (bound - start > MAX_CHUNK_SIZE) {
+                throw new MapParsingException("a line after byte " + start + " is longer than " + MAX_CHUNK_SIZE + " bytes");
+            }
+            if (bound == size) {
+                break;
+            }
+            bounds.add(bound);
+            start = bound;
+        }
+        if (size - start > MAX_CHUNK_SIZE) {
+            throw new MapParsingException("a line after byte " + start + " is longer than " + MAX_CHUNK_SIZE + " bytes");
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return offset right after the first line break at or after position - 1, or size
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == NEWLINE) {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private static Chunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        CityGraph.Builder builder = new CityGraph.Builder();
+        //lines are counted from the start of the chunk, the caller knows where it starts
+        long lineCount = MappedMapParser.parseLines(builder, buffer, 0, buffer.limit(), 1, start) - 1;
+        return new Chunk(builder, lineCount);
+    }
+
+    private static Chunk await(Future<Chunk> chunk, FileChannel channel, long start, long end, long lineNumber) throws IOException {
+        try {
+            return chunk.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MapParsingException("interrupted while parsing", e);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MapParsingException) {
+                //the error counted lines from the start of the chunk. now that all lines
+                //before the chunk are counted, parse it again for the error with the line number
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                MappedMapParser.parseLines(new CityGraph.Builder(), buffer, 0, buffer.limit(), lineNumber, start);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static class Chunk {
+        private final CityGraph.Builder builder;
+        private final long lineCount;
+
+        private Chunk(CityGraph.Builder builder, long lineCount) {
+            this.builder = builder;
+            this.lineCount = lineCount;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.gli58.game.util;
+
+import org.gli58.game.City;
+import org.gli58.game.CityGraph;
+import org.gli58.game.Direction;
+import org.gli58.game.MapSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes cities in the same format as MapIO.writeCities, without Strings: names are
+ * copied as UTF-8 bytes from the city graph into direct buffers. Chunks of cities are
+ * encoded on several threads, and the buffers are written in order with gathering
+ * writes, then reused for later chunks.
+ *
+ * If the graph was parsed from a file that is still the same, the lines of unchanged
+ * cities are copied from it instead, one transfer per run of consecutive lines, and
+ * only the changed cities are encoded. Then writing costs as much as the map changed.
+ */
+class ParallelMapWriter {
+
+    static final int CHUNK_SIZE = 32 * 1024;
+
+    //buffers written with one gathering write at most
+    private static final int MAX_GATHER = 16;
+
+    private static final byte SEPARATOR = ' ';
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[][] PREFIXES = new byte[Direction.values().length][];
+
+    static {
+        PREFIXES[Direction.NORTH.ordinal()] = "north=".getBytes(StandardCharsets.US_ASCII);
+        PREFIXES[Direction.SOUTH.ordinal()] = "south=".getBytes(StandardCharsets.US_ASCII);
+        PREFIXES[Direction.EAST.ordinal()] = "east=".getBytes(StandardCharsets.US_ASCII);
+        PREFIXES[Direction.WEST.ordinal()] = "west=".getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+    private final CityGraph graph;
+    private final int[] ids;
+    private final int chunkSize;
+
+    private final Queue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    private ParallelMapWriter(CityGraph graph, int[] ids, int chunkSize) {
+        this.graph = graph;
+        this.ids = ids;
+        this.chunkSize = chunkSize;
+    }
+
+    static void write(Collection<City> cities, Path file, int parallelism) throws IOException {
+        write(cities, file, parallelism, CHUNK_SIZE);
+    }
+
+    //chunks are only smaller for tests
+    static void write(Collection<City> cities, Path file, int parallelism, int chunkSize) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism should be at least 1");
+        }
+
+        //the graph the cities are on, or a copy with just them on the map
+        CityGraph graph = CityGraph.of(cities);
+        int[] ids = new int[cities.size()];
+        int i = 0;
+        for (City city : cities) {
+            ids[i++] = graph.idOf(city);
+        }
+
+        MapSource source = graph.getSource();
+        if (source != null && source.isUnchanged()
+                && !(Files.exists(file) && Files.isSameFile(file, source.getFile()))) {
+            try (FileChannel sourceChannel = FileChannel.open(source.getFile(), StandardOpenOption.READ);
+                 FileChannel channel = open(file)) {
+                new ParallelMapWriter(graph, ids, chunkSize).spliceTo(channel, sourceChannel);
+            }
+            return;
+        }
+
+        try (FileChannel channel = open(file)) {
+            new ParallelMapWriter(graph, ids, chunkSize).writeTo(channel, parallelism);
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private void spliceTo(FileChannel channel, FileChannel sourceChannel) throws IOException {
+        ByteBuffer[] encoded = new ByteBuffer[1];
+        int i = 0;
+        while (i < ids.length) {
+            long offset = graph.getSourceLineOffset(ids[i]);
+            int end = i + 1;
+
+            if (offset == CityGraph.NO_LINE) {
+                //changed cities, encoded a chunk at most at a time
+                while (end < ids.length && end - i < chunkSize && graph.getSourceLineOffset(ids[end]) == CityGraph.NO_LINE) {
+                    end++;
+                }
+                encoded[0] = encode(i, end);
+                writeFully(channel, encoded, 1);
+                encoded[0].clear();
+                freeBuffers.add(encoded[0]);
+
+            } else {
+                //unchanged cities whose lines follow each other in the source
+                long length = graph.getSourceLineLength(ids[i]);
+                while (end < ids.length && graph.getSourceLineOffset(ids[end]) == offset + length) {
+                    length += graph.getSourceLineLength(ids[end]);
+                    end++;
+                }
+                transferFully(sourceChannel, offset, length, channel);
+            }
+
+            i = end;
+        }
+    }
+
+    private static void transferFully(FileChannel source, long offset, long length, FileChannel target) throws IOException {
+        while (length > 0) {
+            long transferred = source.transferTo(offset, length, target);
+            if (transferred <= 0) {
+                throw new IOException("map source ended before byte " + (offset + length));
+            }
+            offset += transferred;
+            length -= transferred;
+        }
+    }
+
+    private void writeTo(FileChannel channel, int parallelism) throws IOException {
+        int chunkCount = (ids.length + chunkSize - 1) / chunkSize;
+        ExecutorService executor = parallelism > 1 && chunkCount > 1
+                ? Executors.newFixedThreadPool(Math.min(parallelism, chunkCount), runnable -> {
+                    Thread thread = new Thread(runnable, "map-writer-" + THREAD_SEQUENCE.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+
+        try {
+            //keep a few chunks per thread encoded ahead of the one being written
+            int window = executor == null ? 1 : parallelism * 2;
+            Deque<Future<ByteBuffer>> encoded = new ArrayDeque<>();
+            int nextChunk = 0;
+            ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+            while (nextChunk < chunkCount || !encoded.isEmpty()) {
+                while (nextChunk < chunkCount && encoded.size() < window) {
+                    int from = nextChunk * chunkSize;
+                    int to = Math.min(from + chunkSize, ids.length);
+                    encoded.add(submit(executor, () -> encode(from, to)));
+                    nextChunk++;
+                }
+
+                //the next chunk in order, and the ones after it that are ready too
+                int count = 0;
+                gather[count++] = await(encoded.poll());
+                while (count < MAX_GATHER && !encoded.isEmpty() && encoded.peek().isDone()) {
+                    gather[count++] = await(encoded.poll());
+                }
+
+                writeFully(channel, gather, count);
+                for (int i = 0; i < count; i++) {
+                    gather[i].clear();
+                    freeBuffers.add(gather[i]);
+                    gather[i] = null;
+                }
+            }
+
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static Future<ByteBuffer> submit(ExecutorService executor, Callable<ByteBuffer> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+        FutureTask<ByteBuffer> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+    private static ByteBuffer await(Future<ByteBuffer> future) throws IOException {
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing cities", e);
+
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer[] buffers, int count) throws IOException {
+        int first = 0;
+        while (first < count) {
+            channel.write(buffers, first, count - first);
+            while (first < count && !buffers[first].hasRemaining()) {
+                first++;
+            }
+        }
+    }
+
+    /**
+     * @return the lines of cities ids[from, to), ready to be written
+     */
+    private ByteBuffer encode(int from, int to) {
+        ByteBuffer buffer = takeBuffer(encodedLength(from, to));
+
+        for (int i = from; i < to; i++) {
+            int id = ids[i];
+            graph.putName(id, buffer);
+            for (Direction direction : DIRECTIONS) {
+                int neighbor = graph.getNeighbor(id, direction);
+                if (neighbor != CityGraph.NO_CITY) {
+                    buffer.put(SEPARATOR);
+                    buffer.put(PREFIXES[direction.ordinal()]);
+                    graph.putName(neighbor, buffer);
+                }
+            }
+            buffer.put(LINE_SEPARATOR);
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private int encodedLength(int from, int to) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            int id = ids[i];
+            length += graph.getNameLength(id) + LINE_SEPARATOR.length;
+            for (Direction direction : DIRECTIONS) {
+                int neighbor = graph.getNeighbor(id, direction);
+                if (neighbor != CityGraph.NO_CITY) {
+                    length += 1 + PREFIXES[direction.ordinal()].length + graph.getNameLength(neighbor);
+                }
+            }
+        }
+        return length;
+    }
+
+    private ByteBuffer takeBuffer(int capacity) {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer == null || buffer.capacity() < capacity) {
+            //a chunk of longer lines than before. the small buffer is left to the gc
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+        return buffer;
+    }
+}
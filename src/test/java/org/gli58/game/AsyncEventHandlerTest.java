@@ -0,0 +1,155 @@
+package org.gli58.game;
+
+import org.gli58.game.event.AsyncEventHandler;
+import org.gli58.game.event.BackpressurePolicy;
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncEventHandlerTest {
+
+    private static final int THREADS = 8;
+    private static final int EVENTS_PER_THREAD = 5000;
+
+    @Test
+    public void blockingKeepsEveryEventInOrderPerThread() throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncEventHandler handler = new AsyncEventHandler(Channels.newChannel(out), 16, BackpressurePolicy.BLOCK);
+
+        publishConcurrently(handler);
+        handler.close();
+
+        List<String> lines = lines(out);
+        assertThat(lines).hasSize(THREADS * EVENTS_PER_THREAD);
+        assertThat(handler.getDroppedCount()).isZero();
+
+        //a single ring buffer keeps the order of events of the same thread
+        int[] next = new int[THREADS];
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            int thread = Integer.parseInt(parts[1]);
+            assertThat(Integer.parseInt(parts[2])).isEqualTo(next[thread]++);
+        }
+    }
+
+    @Test
+    public void spillingKeepsEveryEvent() throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncEventHandler handler = new AsyncEventHandler(Channels.newChannel(out), 16, BackpressurePolicy.SPILL);
+
+        publishConcurrently(handler);
+        handler.flush();
+
+        assertThat(lines(out)).hasSize(THREADS * EVENTS_PER_THREAD).doesNotHaveDuplicates();
+        assertThat(handler.getDroppedCount()).isZero();
+        handler.close();
+    }
+
+    @Test
+    public void droppingWhileWriterIsStuck() throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CountDownLatch unblocked = new CountDownLatch(1);
+        WritableByteChannel slowChannel = new WritableByteChannel() {
+            private final WritableByteChannel target = Channels.newChannel(out);
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                try {
+                    unblocked.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return target.write(src);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        AsyncEventHandler handler = new AsyncEventHandler(slowChannel, 4, BackpressurePolicy.DROP);
+
+        for (int i = 0; i < 100; i++) {
+            int eventNumber = i;
+            handler.handle(() -> "event 0 " + eventNumber);
+        }
+        unblocked.countDown();
+        handler.close();
+
+        //the writer holds at most one batch while stuck, besides the ring buffer
+        assertThat(handler.getDroppedCount()).isGreaterThan(0);
+        assertThat(lines(out).size() + handler.getDroppedCount()).isEqualTo(100);
+    }
+
+    @Test
+    public void gameFlushesEventsWhenFinished() {
+        List<String> lines = Arrays.asList(
+                "Acton east=Concord",
+                "Concord east=Lexington west=Acton",
+                "Lexington east=Belmont west=Concord",
+                "Belmont east=Boston west=Lexington",
+                "Boston west=Belmont"
+        );
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncEventHandler handler = new AsyncEventHandler(Channels.newChannel(out), 1024, BackpressurePolicy.BLOCK);
+
+        Game game = new Game.Builder(cities, 2)
+                .minMoves(100)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .placementProvider((cityList, monster) -> cityList.stream()
+                        .filter(c -> c.getName().equals(monster.getId() == 1 ? "Acton" : "Boston")).findAny().get())
+                .moveProvider((monster, directions) -> monster.getId() == 1 ? Direction.EAST : Direction.WEST)
+                .durationProvider(monster -> monster.getId() == 1 ? 100 : 120)
+                .eventHandler(handler)
+                .build();
+
+        game.startGame();
+
+        assertThat(lines(out)).containsExactly("Lexington has been destroyed by monster 1 and monster 2!");
+        handler.close();
+    }
+
+    private static void publishConcurrently(AsyncEventHandler handler) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                    int eventNumber = i;
+                    handler.handle(() -> "event " + thread + " " + eventNumber);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+    }
+
+    private static List<String> lines(ByteArrayOutputStream out) {
+        String text;
+        synchronized (out) {
+            text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+        return text.isEmpty() ? new ArrayList<>() : Arrays.asList(text.split("\n"));
+    }
+}
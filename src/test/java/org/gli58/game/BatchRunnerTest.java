@@ -0,0 +1,100 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BatchRunnerTest {
+
+    @Test
+    public void testRowPerGridPoint() {
+        List<String> lines = run(Engine.VIRTUAL_CLOCK);
+
+        assertThat(lines).hasSize(5);
+        assertThat(lines.get(0)).isEqualTo(BatchRunner.HEADER);
+        assertThat(lines.subList(1, 5))
+                .extracting(line -> line.substring(0, line.indexOf(",", line.indexOf(",") + 1)))
+                .containsExactlyInAnyOrder("50,10", "50,200", "400,10", "400,200");
+
+        for (String line : lines.subList(1, 5)) {
+            String[] columns = line.split(",");
+            assertThat(columns).hasSize(BatchRunner.HEADER.split(",").length);
+            assertThat(columns[2]).isEqualTo("20");
+
+            //survival mean, min and max
+            assertThat(Double.parseDouble(columns[3])).isBetween(0.0, 1.0);
+            assertThat(Double.parseDouble(columns[5])).isLessThanOrEqualTo(Double.parseDouble(columns[9]));
+        }
+    }
+
+    @Test
+    public void testSameSeedsSameStatistics() {
+        assertThat(sorted(run(Engine.VIRTUAL_CLOCK))).isEqualTo(sorted(run(Engine.VIRTUAL_CLOCK)));
+        assertThat(sorted(run(Engine.LOCKSTEP))).isEqualTo(sorted(run(Engine.LOCKSTEP)));
+    }
+
+    @Test
+    public void testDestroyedShareOfCitiesOnTheMap() {
+        //one city on the map, with roads to three that are not
+        CityGraph.Builder builder = new CityGraph.Builder();
+        int foo = builder.addCity("Foo");
+        builder.addNeighbor(foo, Direction.NORTH, builder.referenceCity("Bar"));
+        builder.addNeighbor(foo, Direction.SOUTH, builder.referenceCity("Baz"));
+        builder.addNeighbor(foo, Direction.WEST, builder.referenceCity("Qux"));
+
+        StringWriter out = new StringWriter();
+        new BatchRunner.Builder(builder.build())
+                .monsterCounts(2)
+                .minMoves(10)
+                .seeds(5)
+                .build()
+                .run(out);
+
+        //both monsters are placed in the city and fight. mean, min and max of destroyed
+        String[] columns = out.toString().split(System.lineSeparator())[1].split(",");
+        assertThat(Double.parseDouble(columns[10])).isEqualTo(1.0);
+        assertThat(Double.parseDouble(columns[12])).isEqualTo(1.0);
+        assertThat(Double.parseDouble(columns[16])).isEqualTo(1.0);
+    }
+
+    @Test
+    public void testDistribution() {
+        assertThat(BatchRunner.distribution(new double[]{4, 1, 3, 2, 5, 6, 7, 8, 9, 10}))
+                .isEqualTo("5.50000,2.87228,1.00000,1.00000,5.00000,9.00000,10.0000");
+    }
+
+    @Test
+    public void testRealTimeEngine() {
+        assertThatThrownBy(() -> new BatchRunner.Builder(MapIO.getCityGraphFromClasspathResource("map.txt"))
+                .monsterCounts(10)
+                .engine(Engine.REAL_TIME)
+                .build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<String> run(Engine engine) {
+        StringWriter out = new StringWriter();
+        new BatchRunner.Builder(MapIO.getCityGraphFromClasspathResource("map.txt"))
+                .monsterCounts(50, 400)
+                .minMoves(10, 200)
+                .seeds(20)
+                .firstSeed(11)
+                .engine(engine)
+                .parallelism(3)
+                .build()
+                .run(out);
+        return Arrays.asList(out.toString().split(System.lineSeparator()));
+    }
+
+    private static List<String> sorted(List<String> lines) {
+        String[] sorted = lines.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+}
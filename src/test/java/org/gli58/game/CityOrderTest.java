@@ -0,0 +1,119 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CityOrderTest {
+
+    private static final int WIDTH = 60;
+
+    @Test
+    public void testNeighborsCloseTogether() {
+        CityGraph graph = shuffledGrid(WIDTH, 50);
+
+        assertThat(bandwidth(graph)).isGreaterThan(1000);
+        assertThat(bandwidth(graph.renumbered(CityOrder.BFS))).isLessThanOrEqualTo(2 * WIDTH);
+        assertThat(bandwidth(graph.renumbered(CityOrder.REVERSE_CUTHILL_MCKEE))).isLessThanOrEqualTo(WIDTH + 1);
+        assertThat(graph.renumbered(CityOrder.FILE)).isSameAs(graph);
+    }
+
+    @Test
+    public void testSameMapAfterRenumbering() {
+        CityGraph graph = MapIO.getCityGraphFromClasspathResource("map.txt");
+        //a destroyed city, and one only known as a neighbor
+        graph.removeCity(graph.indexOf("Denalmo"));
+
+        for (CityOrder order : new CityOrder[]{CityOrder.BFS, CityOrder.REVERSE_CUTHILL_MCKEE}) {
+            CityGraph renumbered = graph.renumbered(order);
+
+            assertThat(renumbered.size()).isEqualTo(graph.size());
+            assertThat(MapIO.writeCitiesAsString(renumbered.getCities()).split("\n"))
+                    .containsExactlyInAnyOrder(MapIO.writeCitiesAsString(graph.getCities()).split("\n"));
+
+            //cities on the map come first
+            int onMap = renumbered.getCities().size();
+            for (int id = 0; id < renumbered.size(); id++) {
+                assertThat(renumbered.isOnMap(id)).isEqualTo(id < onMap);
+            }
+            assertThat(renumbered.indexOf("Denalmo")).isGreaterThanOrEqualTo(onMap);
+        }
+    }
+
+    @Test
+    public void testGameOnRenumberedMap() {
+        CityGraph graph = MapIO.getCityGraphFromClasspathResource("map.txt");
+        CapturingEventHandler eventHandler = new CapturingEventHandler();
+
+        Game game = new Game.Builder(graph, 500)
+                .minMoves(1000)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .cityOrder(CityOrder.REVERSE_CUTHILL_MCKEE)
+                .eventHandler(eventHandler)
+                .build();
+        GameResult result = game.startGame();
+
+        assertThat(result.getCities()).hasSize(graph.getCities().size() - eventHandler.getEventStrings().size());
+        //the map given to the builder is untouched
+        assertThat(graph.getCities()).hasSize(MapIO.getCitiesFromClasspathResource("map.txt").size());
+    }
+
+    @Test
+    public void testResumingInAnotherOrder() {
+        CityGraph graph = MapIO.getCityGraphFromClasspathResource("map.txt");
+        GameCheckpoint checkpoint = new GameCheckpoint(graph, new int[graph.size()], 10, 1,
+                new int[]{CityGraph.NO_CITY}, new long[]{1}, new Monster.Status[]{Monster.Status.ACTIVE},
+                new int[]{GameCheckpoint.NOT_SCHEDULED});
+
+        assertThatThrownBy(() -> new Game.Builder(checkpoint).cityOrder(CityOrder.BFS).build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static int bandwidth(CityGraph graph) {
+        int bandwidth = 0;
+        for (int id = 0; id < graph.size(); id++) {
+            for (Direction direction : Direction.values()) {
+                int neighbor = graph.getNeighbor(id, direction);
+                if (neighbor != CityGraph.NO_CITY) {
+                    bandwidth = Math.max(bandwidth, Math.abs(neighbor - id));
+                }
+            }
+        }
+        return bandwidth;
+    }
+
+    private static CityGraph shuffledGrid(int width, int height) {
+        List<String> lines = new ArrayList<>();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                StringBuilder line = new StringBuilder(name(x, y));
+                if (y > 0) {
+                    line.append(" north=").append(name(x, y - 1));
+                }
+                if (y < height - 1) {
+                    line.append(" south=").append(name(x, y + 1));
+                }
+                if (x < width - 1) {
+                    line.append(" east=").append(name(x + 1, y));
+                }
+                if (x > 0) {
+                    line.append(" west=").append(name(x - 1, y));
+                }
+                lines.add(line.toString());
+            }
+        }
+        Collections.shuffle(lines, new Random(5));
+        return MapIO.getCityGraphFromStream(lines.stream());
+    }
+
+    private static String name(int x, int y) {
+        return "X" + (char) ('a' + x / 26) + (char) ('a' + x % 26) + "y" + (char) ('a' + y / 26) + (char) ('a' + y % 26);
+    }
+}
@@ -0,0 +1,147 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameAsyncTest {
+
+    @Test
+    public void testGamesSharingThreads() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<CompletableFuture<GameResult>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Game game = new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), 200)
+                        .minMoves(50)
+                        .scheduler(scheduler)
+                        .executor(executor)
+                        .durationProvider(monster -> (int) (monster.getId() % 5))
+                        .eventHandler(event -> {})
+                        .build();
+                results.add(game.startAsync());
+            }
+            //a virtual-clock game in between takes a thread of the executor
+            results.add(new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), 200)
+                    .minMoves(50)
+                    .engine(Engine.VIRTUAL_CLOCK)
+                    .executor(executor)
+                    .eventHandler(event -> {})
+                    .build()
+                    .startAsync());
+
+            int cityCount = MapIO.getCitiesFromClasspathResource("map.txt").size();
+            for (CompletableFuture<GameResult> future : results) {
+                GameResult result = future.get(60, TimeUnit.SECONDS);
+                assertThat(result.isStopped()).isFalse();
+                assertThat(result.getMonsterCount(Monster.Status.ACTIVE)).isZero();
+                assertThat(result.getMonsterCountsByStatus().values().stream().mapToLong(Long::longValue).sum())
+                        .isEqualTo(200);
+                assertThat(result.getCities()).hasSize(cityCount - (int) result.getFightCount());
+            }
+
+            //still usable by other games
+            assertThat(scheduler.isShutdown()).isFalse();
+
+        } finally {
+            scheduler.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSameResultAsBlockingGame() throws Exception {
+        CapturingEventHandler played = new CapturingEventHandler();
+        Game game = seededGame(played);
+        game.startGame();
+
+        GameResult result = seededGame(new CapturingEventHandler()).startAsync().get(60, TimeUnit.SECONDS);
+
+        assertThat(result.getCities()).isEqualTo(game.getCities());
+        assertThat(result.getFightCount()).isEqualTo(played.getEventStrings().size());
+        assertThat(result.getMonsterCount(Monster.Status.KILLED)).isEqualTo(
+                game.getMonsters().stream().filter(m -> m.getStatus() == Monster.Status.KILLED).count());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Game game = pacingGame()
+                .durationProvider(monster -> 10)
+                .build();
+
+        CompletableFuture<GameResult> future = game.startAsync();
+        Thread.sleep(100);
+        game.cancel();
+
+        GameResult result = future.get(10, TimeUnit.SECONDS);
+        assertThat(result.isStopped()).isTrue();
+        assertThat(result.getMonsterCount(Monster.Status.ACTIVE)).isEqualTo(1);
+        assertThat(result.getCities()).hasSize(2);
+    }
+
+    @Test
+    public void testCancellingTheFuture() throws Exception {
+        Game game = pacingGame()
+                .engine(Engine.VIRTUAL_CLOCK)
+                .build();
+
+        CompletableFuture<GameResult> future = game.startAsync();
+        while (game.getMonsters().isEmpty()) {
+            Thread.sleep(10);
+        }
+        Monster monster = game.getMonsters().iterator().next();
+        while (monster.getMoveId() < 10) {
+            Thread.sleep(10);
+        }
+        assertThat(future.cancel(true)).isTrue();
+        assertThat(future.isCancelled()).isTrue();
+
+        //the monster stops moving
+        Thread.sleep(100);
+        long moveId = monster.getMoveId();
+        Thread.sleep(100);
+        assertThat(monster.getMoveId()).isEqualTo(moveId);
+    }
+
+    @Test
+    public void testTimeBudget() throws Exception {
+        Game game = pacingGame()
+                .engine(Engine.LOCKSTEP)
+                .threads(1)
+                .timeBudget(200)
+                .build();
+
+        GameResult result = game.startAsync().get(10, TimeUnit.SECONDS);
+        assertThat(result.isStopped()).isTrue();
+        assertThat(result.getMonsterCount(Monster.Status.ACTIVE)).isEqualTo(1);
+    }
+
+    //a monster that has nobody to fight, going back and forth for a very long time
+    private Game.Builder pacingGame() {
+        Set<City> cities = MapIO.getCitiesFromStream(Arrays.asList("Acton east=Concord", "Concord west=Acton").stream());
+        return new Game.Builder(cities, 1)
+                .minMoves(Integer.MAX_VALUE - 1)
+                .eventHandler(event -> {});
+    }
+
+    private Game seededGame(CapturingEventHandler eventHandler) {
+        return new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), 500)
+                .minMoves(1000)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .seed(3)
+                .eventHandler(eventHandler)
+                .build();
+    }
+}
@@ -0,0 +1,170 @@
+package org.gli58.game;
+
+import org.gli58.game.exceptions.MapParsingException;
+import org.gli58.game.util.MapIO;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GameCheckpointTest {
+
+    private final List<String> lines = Arrays.asList(
+            "Acton east=Concord",
+            "Concord east=Lexington west=Acton",
+            "Lexington east=Belmont west=Concord",
+            "Belmont east=Boston west=Lexington",
+            "Boston west=Belmont"
+    );
+
+    @Rule
+    public TemporaryFolder checkpointFolder = new TemporaryFolder();
+
+    private MonsterPlacementProvider placementProvider;
+    private MonsterMoveProvider moveProvider;
+    private ResidenceDurationProvider durationProvider;
+
+    @Before
+    public void setup() {
+        placementProvider = (cities, monster) -> {
+            String name = monster.getId() == 1 ? "Acton" : "Boston";
+            return cities.stream().filter(c -> c.getName().equals(name)).findAny().get();
+        };
+
+        moveProvider = (monster, directions) -> monster.getId() == 1 ? Direction.EAST : Direction.WEST;
+
+        //monster 1 gets to Lexington at 1500ms, monster 2 at 1800ms
+        durationProvider = monster -> monster.getId() == 1 ? 500 : 600;
+    }
+
+    @Test
+    public void testResumingCheckpointTakenWhilePlaying() throws Exception {
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        CapturingEventHandler eventHandler = new CapturingEventHandler();
+        Game game = twoMonsterGame(new Game.Builder(cities, 2), Engine.REAL_TIME, eventHandler);
+
+        Thread player = new Thread(game::startGame);
+        player.start();
+
+        //both monsters are placed, nobody fought yet
+        Thread.sleep(700);
+        Path file = checkpointFolder.newFile("game.checkpoint").toPath();
+        game.checkpoint(file);
+        player.join();
+
+        assertThat(eventHandler.getEventStrings())
+                .containsExactly("Lexington has been destroyed by monster 1 and monster 2!");
+
+        GameCheckpoint checkpoint = GameCheckpoint.read(file);
+        assertThat(checkpoint.getMonsterCount()).isEqualTo(2);
+        assertThat(checkpoint.statuses).containsOnly(Monster.Status.ACTIVE);
+        assertThat(checkpoint.cityStates).doesNotContain(Game.DESTROYED);
+        for (int delay : checkpoint.wakeUpDelays) {
+            assertThat(delay).isBetween(0, 600);
+        }
+
+        //the rest of the game without waiting
+        CapturingEventHandler resumedEventHandler = new CapturingEventHandler();
+        Game resumed = twoMonsterGame(new Game.Builder(checkpoint), Engine.VIRTUAL_CLOCK, resumedEventHandler);
+        resumed.startGame();
+
+        assertThat(resumedEventHandler.getEventStrings())
+                .containsExactly("Lexington has been destroyed by monster 1 and monster 2!");
+        assertThat(resumed.getCities())
+                .hasSize(4)
+                .doesNotContain(new City("Lexington"));
+        assertThat(resumed.getMonsters())
+                .extracting(Monster::getStatus)
+                .containsOnly(Monster.Status.KILLED);
+    }
+
+    @Test
+    public void testResumingFinishedGame() {
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        Game game = twoMonsterGame(new Game.Builder(cities, 2), Engine.VIRTUAL_CLOCK, new CapturingEventHandler());
+        game.startGame();
+
+        Path file = checkpointFolder.getRoot().toPath().resolve("finished.checkpoint");
+        game.checkpoint(file);
+
+        CapturingEventHandler eventHandler = new CapturingEventHandler();
+        Game resumed = twoMonsterGame(new Game.Builder(GameCheckpoint.read(file)), Engine.LOCKSTEP, eventHandler);
+        resumed.startGame();
+
+        assertThat(eventHandler.getEventStrings()).isEmpty();
+        assertThat(resumed.getCities()).isEqualTo(game.getCities());
+        assertThat(resumed.getMonsters())
+                .extracting(Monster::getStatus)
+                .containsOnly(Monster.Status.KILLED);
+    }
+
+    @Test
+    public void testReadingCheckpointInWindows() {
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        Game game = twoMonsterGame(new Game.Builder(cities, 2), Engine.VIRTUAL_CLOCK, new CapturingEventHandler());
+        game.startGame();
+
+        Path file = checkpointFolder.getRoot().toPath().resolve("windows.checkpoint");
+        game.checkpoint(file);
+
+        //windows smaller than the image, so the image and the game are both read across windows
+        GameCheckpoint whole = GameCheckpoint.read(file);
+        GameCheckpoint windowed = GameCheckpoint.read(file, 24);
+
+        assertThat(windowed.getCityGraph().getCities()).isEqualTo(whole.getCityGraph().getCities());
+        assertThat(windowed.cityStates).isEqualTo(whole.cityStates);
+        assertThat(windowed.monsterCities).isEqualTo(whole.monsterCities);
+        assertThat(windowed.moveIds).isEqualTo(whole.moveIds);
+        assertThat(windowed.statuses).isEqualTo(whole.statuses);
+        assertThat(windowed.wakeUpDelays).isEqualTo(whole.wakeUpDelays);
+        assertThat(windowed.nextFightEventId).isEqualTo(whole.nextFightEventId);
+    }
+
+    @Test
+    public void testCheckpointBeforeGameStarted() {
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        Game game = twoMonsterGame(new Game.Builder(cities, 2), Engine.VIRTUAL_CLOCK, new CapturingEventHandler());
+
+        assertThatThrownBy(() -> game.checkpoint(checkpointFolder.getRoot().toPath().resolve("early.checkpoint")))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testLoadingCorruptCheckpoint() throws IOException {
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        Game game = twoMonsterGame(new Game.Builder(cities, 2), Engine.VIRTUAL_CLOCK, new CapturingEventHandler());
+        game.startGame();
+
+        Path file = checkpointFolder.getRoot().toPath().resolve("corrupt.checkpoint");
+        game.checkpoint(file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 10] ^= 1;
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> GameCheckpoint.read(file))
+                .isInstanceOf(MapParsingException.class)
+                .hasMessageContaining("checksum mismatch");
+    }
+
+    private Game twoMonsterGame(Game.Builder builder, Engine engine, CapturingEventHandler eventHandler) {
+        return builder
+                .minMoves(100)
+                .engine(engine)
+                .placementProvider(placementProvider)
+                .moveProvider(moveProvider)
+                .durationProvider(durationProvider)
+                .eventHandler(eventHandler)
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package org.gli58.game;
+
+import org.gli58.game.metrics.GameMetricsSnapshot;
+import org.gli58.game.metrics.LatencyHistogram;
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameMetricsTest {
+
+    @Test
+    public void countsMovesAndFightsOfLexingtonGame() throws Exception {
+        List<String> lines = Arrays.asList(
+                "Acton east=Concord",
+                "Concord east=Lexington west=Acton",
+                "Lexington east=Belmont west=Concord",
+                "Belmont east=Boston west=Lexington",
+                "Boston west=Belmont"
+        );
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("org.gli58.game:type=GameMetrics,*");
+        List<Object> movesSeenOverJmx = new ArrayList<>();
+
+        Game game = new Game.Builder(cities, 2)
+                .minMoves(100)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .placementProvider((cityList, monster) -> cityList.stream()
+                        .filter(c -> c.getName().equals(monster.getId() == 1 ? "Acton" : "Boston")).findAny().get())
+                .moveProvider((monster, directions) -> monster.getId() == 1 ? Direction.EAST : Direction.WEST)
+                .durationProvider(monster -> monster.getId() == 1 ? 100 : 120)
+                .eventHandler(event -> {
+                    try {
+                        for (ObjectName name : server.queryNames(pattern, null)) {
+                            movesSeenOverJmx.add(server.getAttribute(name, "MovesCommitted"));
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .build();
+
+        game.startGame();
+
+        //monster 1 got placed in Acton and moved to Concord and Lexington, monster 2 got
+        //placed in Boston and moved to Belmont, then into monster 1 in Lexington
+        GameMetricsSnapshot snapshot = game.getMetricsSnapshot();
+        assertThat(snapshot.getMovesCommitted()).isEqualTo(5);
+        assertThat(snapshot.getFights()).isEqualTo(1);
+        assertThat(snapshot.getLockFailures()).isZero();
+        assertThat(snapshot.getRetries()).isZero();
+        assertThat(snapshot.getScheduleLagMaxNanos()).isZero();
+        assertThat(snapshot.getMonstersByStatus())
+                .containsEntry(Monster.Status.KILLED, 2L)
+                .containsEntry(Monster.Status.ACTIVE, 0L);
+        assertThat(snapshot.getCitiesRemaining()).isEqualTo(4);
+        assertThat(snapshot.getMovesPerSecond()).isPositive();
+
+        //registered while the game was played only
+        assertThat(movesSeenOverJmx).containsExactly(5L);
+        assertThat(server.queryNames(pattern, null)).isEmpty();
+    }
+
+    @Test
+    public void histogramPercentilesAreBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(5000);
+
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getPercentileNanos(50)).isEqualTo(127);
+        assertThat(histogram.getPercentileNanos(99)).isEqualTo(127);
+        assertThat(histogram.getPercentileNanos(100)).isEqualTo(5000);
+        assertThat(histogram.getMaxNanos()).isEqualTo(5000);
+        assertThat(histogram.getMeanNanos()).isEqualTo((99 * 100 + 5000) / 100);
+    }
+}
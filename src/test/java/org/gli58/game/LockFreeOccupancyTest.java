@@ -0,0 +1,123 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LockFreeOccupancyTest {
+
+    @Test
+    public void twoMonsterFightInLexington() {
+        List<String> lines = Arrays.asList(
+                "Acton east=Concord",
+                "Concord east=Lexington west=Acton",
+                "Lexington east=Belmont west=Concord",
+                "Belmont east=Boston west=Lexington",
+                "Boston west=Belmont"
+        );
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        CapturingEventHandler capturingEventHandler = new CapturingEventHandler();
+
+        Game game = new Game.Builder(cities, 2)
+                .minMoves(100)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .occupancy(Occupancy.LOCK_FREE)
+                .placementProvider((cityList, monster) -> cityList.stream()
+                        .filter(c -> c.getName().equals(monster.getId() == 1 ? "Acton" : "Boston")).findAny().get())
+                .moveProvider((monster, directions) -> monster.getId() == 1 ? Direction.EAST : Direction.WEST)
+                .durationProvider(monster -> monster.getId() == 1 ? 100 : 120)
+                .eventHandler(capturingEventHandler)
+                .build();
+
+        game.startGame();
+
+        assertThat(game.getCities())
+                .hasSize(4)
+                .doesNotContain(new City("Lexington"));
+
+        assertThat(capturingEventHandler.getEventStrings())
+                .containsExactly("Lexington has been destroyed by monster 1 and monster 2!");
+    }
+
+    @Test
+    public void goingBackToTheCityMovedFromIsNoMove() {
+        List<String> lines = Arrays.asList(
+                "Acton east=Concord",
+                "Concord east=Lexington west=Acton",
+                "Lexington west=Concord"
+        );
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        //residences long enough for scheduled moves not to run
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        Game[] game = new Game[1];
+
+        game[0] = new Game.Builder(cities, 1)
+                .minMoves(100)
+                .scheduler(scheduler)
+                .occupancy(Occupancy.LOCK_FREE)
+                .placementProvider((cityList, monster) -> new City("Concord"))
+                //Lexington gets destroyed right after it is picked, while the monster is on the road
+                .moveProvider((monster, directions) -> {
+                    game[0].destroyCity(game[0].getCityId(new City("Lexington")));
+                    return Direction.EAST;
+                })
+                .durationProvider(monster -> 60_000)
+                .eventHandler(event -> {})
+                .build();
+
+        try {
+            game[0].prepareMonsters();
+            Monster monster = game[0].getMonster(1);
+            monster.run();
+            assertThat(monster.getMoveId()).isEqualTo(2);
+
+            monster.run();
+            assertThat(monster.getOccupiedCityId()).isEqualTo(game[0].getCityId(new City("Concord")));
+            assertThat(monster.getMoveId()).isEqualTo(2);
+            assertThat(monster.getRetryCount()).isEqualTo(1);
+
+            //the move is made from Concord, where only Acton is left to go to
+            monster.run();
+            assertThat(monster.getOccupiedCityId()).isEqualTo(game[0].getCityId(new City("Acton")));
+            assertThat(monster.getMoveId()).isEqualTo(3);
+
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void playingEntireWorldUnderContention() {
+        final Set<City> cities = MapIO.getCitiesFromClasspathResource("map.txt");
+        CapturingEventHandler capturingEventHandler = new CapturingEventHandler();
+
+        //no residence at all, so monsters keep racing for the same cities
+        Game game = new Game.Builder(cities, 2000)
+                .minMoves(500)
+                .threads(8)
+                .occupancy(Occupancy.LOCK_FREE)
+                .durationProvider(monster -> 0)
+                .eventHandler(capturingEventHandler)
+                .build();
+
+        game.startGame();
+
+        assertThat(game.getMonsters())
+                .hasSize(2000)
+                .extracting(Monster::getStatus)
+                .doesNotContain(Monster.Status.ACTIVE, Monster.Status.ERRORED);
+
+        //every fight destroys exactly one city and kills exactly two monsters
+        int fights = capturingEventHandler.getEventStrings().size();
+        assertThat(game.getCities()).hasSize(cities.size() - fights);
+        assertThat(game.getMonsters().stream().filter(m -> m.getStatus() == Monster.Status.KILLED).count())
+                .isEqualTo(2L * fights);
+    }
+}
@@ -0,0 +1,122 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LockstepGameTest {
+
+    private final List<String> lines = Arrays.asList(
+            "Acton east=Concord",
+            "Concord east=Lexington west=Acton",
+            "Lexington east=Belmont west=Concord",
+            "Belmont east=Boston west=Lexington",
+            "Boston west=Belmont"
+    );
+
+    @Test
+    public void twoMonstersMeetHalfway() {
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        CapturingEventHandler capturingEventHandler = new CapturingEventHandler();
+
+        Game game = new Game.Builder(cities, 2)
+                .minMoves(100)
+                .engine(Engine.LOCKSTEP)
+                .placementProvider((cityList, monster) -> byName(cityList, monster.getId() == 1 ? "Acton" : "Boston"))
+                .moveProvider((monster, directions) -> monster.getId() == 1 ? Direction.EAST : Direction.WEST)
+                .eventHandler(capturingEventHandler)
+                .build();
+
+        game.startGame();
+
+        assertThat(game.getCities())
+                .hasSize(4)
+                .doesNotContain(new City("Lexington"));
+
+        assertThat(capturingEventHandler.getEventStrings())
+                .containsExactly("Lexington has been destroyed by monster 1 and monster 2!");
+    }
+
+    @Test
+    public void monstersPlacedInTheSameCityFight() {
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        CapturingEventHandler capturingEventHandler = new CapturingEventHandler();
+
+        //2 and 3 are both placed in Concord, which cuts monster 1 off in Acton
+        Game game = new Game.Builder(cities, 3)
+                .minMoves(100)
+                .engine(Engine.LOCKSTEP)
+                .placementProvider((cityList, monster) -> byName(cityList, monster.getId() == 1 ? "Acton" : "Concord"))
+                .moveProvider((monster, directions) -> Direction.WEST)
+                .eventHandler(capturingEventHandler)
+                .build();
+
+        game.startGame();
+
+        assertThat(capturingEventHandler.getEventStrings())
+                .containsExactly("Concord has been destroyed by monster 2 and monster 3!");
+
+        assertThat(game.getMonsters())
+                .extracting(Monster::getStatus)
+                .containsOnly(Monster.Status.KILLED, Monster.Status.TRAPPED);
+    }
+
+    @Test
+    public void sameOutcomeForAnyNumberOfThreads() {
+        List<String> worldWithOneThread = new ArrayList<>();
+        List<String> eventsWithOneThread = playEntireWorld(1, worldWithOneThread);
+
+        List<String> worldWithEightThreads = new ArrayList<>();
+        List<String> eventsWithEightThreads = playEntireWorld(8, worldWithEightThreads);
+
+        assertThat(eventsWithOneThread).isNotEmpty();
+        assertThat(eventsWithEightThreads).isEqualTo(eventsWithOneThread);
+        assertThat(worldWithEightThreads).isEqualTo(worldWithOneThread);
+    }
+
+    private List<String> playEntireWorld(int threads, List<String> remainingWorld) {
+        final Set<City> cities = MapIO.getCitiesFromClasspathResource("map.txt");
+
+        //choices only depend on the monster and how many moves it made so far
+        final ConcurrentMap<Long, AtomicLong> movesByMonster = new ConcurrentHashMap<>();
+        MonsterMoveProvider moveProvider = (monster, directions) -> {
+            long move = movesByMonster.computeIfAbsent(monster.getId(), id -> new AtomicLong()).incrementAndGet();
+            return directions.get((int) ((monster.getId() * 31 + move * 17) % directions.size()));
+        };
+        MonsterPlacementProvider placementProvider = (cityList, monster) -> {
+            List<City> sorted = cityList.stream().sorted(Comparator.comparing(City::getName)).collect(toList());
+            return sorted.get((int) ((monster.getId() * 7919) % sorted.size()));
+        };
+
+        List<String> events = new ArrayList<>();
+        Game game = new Game.Builder(cities, 500)
+                .minMoves(200)
+                .threads(threads)
+                .engine(Engine.LOCKSTEP)
+                .placementProvider(placementProvider)
+                .moveProvider(moveProvider)
+                .eventHandler(event -> events.add(event.getAsString()))
+                .build();
+
+        game.startGame();
+
+        remainingWorld.addAll(Arrays.asList(MapIO.writeCitiesAsString(game.getCities()).split(System.lineSeparator())));
+        remainingWorld.sort(null);
+        return events;
+    }
+
+    private static City byName(List<City> cities, String name) {
+        return cities.stream().filter(c -> c.getName().equals(name)).findAny().get();
+    }
+}
@@ -0,0 +1,79 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadingAcrossWindows() throws IOException {
+        Path file = folder.newFile("values.bin").toPath();
+        int[] ints = new int[100];
+        byte[] bytes = new byte[37];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = i * 1000003;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            ChecksumWriter writer = new ChecksumWriter(channel);
+            writer.putByte((byte) 7);
+            writer.putLong(Long.MIN_VALUE + 1);
+            writer.putInts(ints, ints.length);
+            writer.putBytes(bytes, 0, bytes.length);
+            writer.putInt(-1);
+            writer.finish();
+        }
+
+        //windows smaller than most values, so values and arrays are split between windows
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedReader reader = new MappedReader(channel, 3, 10);
+            reader.startChecksum();
+            assertThat(reader.get()).isEqualTo((byte) 7);
+            assertThat(reader.getLong()).isEqualTo(Long.MIN_VALUE + 1);
+            int[] readInts = new int[ints.length];
+            reader.getInts(readInts, 0, readInts.length);
+            assertThat(readInts).isEqualTo(ints);
+            byte[] readBytes = new byte[bytes.length];
+            reader.getBytes(readBytes, 0, readBytes.length);
+            assertThat(readBytes).isEqualTo(bytes);
+            assertThat(reader.getInt()).isEqualTo(-1);
+
+            assertThat(reader.checksum()).isEqualTo(reader.getInt());
+            assertThat(reader.remaining()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testReadingImageInWindows() {
+        CityGraph graph = MapIO.getCityGraphFromClasspathResource("map.txt");
+        Path file = folder.getRoot().toPath().resolve("map.img");
+        CityGraphImage.write(graph, file);
+
+        CityGraph loaded = CityGraphImage.read(file, Storage.HEAP, 100, DirectMemory.CHUNK_SHIFT);
+        //off the heap, windows and buffers of 64 bytes end in different places
+        CityGraph loadedOffHeap = CityGraphImage.read(file, Storage.OFF_HEAP, 100, 6);
+
+        assertThat(MapIO.writeCitiesAsString(loaded.getCities()))
+                .isEqualTo(MapIO.writeCitiesAsString(graph.getCities()));
+        assertThat(loadedOffHeap.getStorage()).isEqualTo(Storage.OFF_HEAP);
+        assertThat(MapIO.writeCitiesAsString(loadedOffHeap.getCities()))
+                .isEqualTo(MapIO.writeCitiesAsString(graph.getCities()));
+    }
+}
@@ -0,0 +1,134 @@
+package org.gli58.game;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MonsterJfrEventsTest {
+
+    private static final List<String> LINES = Arrays.asList(
+            "Acton east=Concord",
+            "Concord east=Lexington west=Acton",
+            "Lexington east=Belmont west=Concord",
+            "Belmont east=Boston west=Lexington",
+            "Boston west=Belmont"
+    );
+
+    @Test
+    public void recordsMovesAndFightOfLexingtonGame() throws IOException {
+        final Set<City> cities = MapIO.getCitiesFromStream(LINES.stream());
+
+        Game game = new Game.Builder(cities, 2)
+                .minMoves(100)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .placementProvider((cityList, monster) -> cityList.stream()
+                        .filter(c -> c.getName().equals(monster.getId() == 1 ? "Acton" : "Boston")).findAny().get())
+                .moveProvider((monster, directions) -> monster.getId() == 1 ? Direction.EAST : Direction.WEST)
+                .durationProvider(monster -> monster.getId() == 1 ? 100 : 120)
+                .eventHandler(event -> {})
+                .build();
+
+        List<RecordedEvent> events = record(game::startGame);
+
+        List<String> moves = events.stream()
+                .filter(e -> e.getEventType().getName().equals("org.gli58.game.MoveCommitted"))
+                .map(e -> e.getLong("monsterId") + ":" + e.getString("fromCityName") + "->" + e.getString("toCityName"))
+                .collect(toList());
+        assertThat(moves).containsExactlyInAnyOrder(
+                "1:null->Acton", "1:Acton->Concord", "1:Concord->Lexington",
+                "2:null->Boston", "2:Boston->Belmont");
+
+        List<RecordedEvent> destroyed = events.stream()
+                .filter(e -> e.getEventType().getName().equals("org.gli58.game.CityDestroyed"))
+                .collect(toList());
+        assertThat(destroyed).hasSize(1);
+        assertThat(destroyed.get(0).getString("cityName")).isEqualTo("Lexington");
+        assertThat(destroyed.get(0).getLong("monsterId")).isEqualTo(2);
+        assertThat(destroyed.get(0).getLong("opponentId")).isEqualTo(1);
+    }
+
+    @Test
+    public void recordsLockFailureOnCityMovedTo() throws Exception {
+        final Set<City> cities = MapIO.getCitiesFromStream(LINES.stream());
+
+        Game game = new Game.Builder(cities, 1)
+                .minMoves(100)
+                .scheduler(new ScheduledThreadPoolExecutor(1) {
+                    @Override
+                    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                        return null;
+                    }
+                })
+                .placementProvider((cityList, monster) -> new City("Acton"))
+                .retryPolicy((monster, attempt) -> 0)
+                .eventHandler(event -> {})
+                .build();
+        game.prepareMonsters();
+        Monster monster = game.getMonster(1);
+        monster.run();
+
+        //Concord is locked by another thread while the monster tries to move there
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch attempted = new CountDownLatch(1);
+        Thread lockHolder = new Thread(() -> {
+            Lock lock = game.getCityLock(game.getCityId(new City("Concord")));
+            lock.lock();
+            try {
+                locked.countDown();
+                attempted.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        lockHolder.start();
+        locked.await();
+
+        List<RecordedEvent> events = record(monster::run);
+        attempted.countDown();
+        lockHolder.join();
+
+        List<RecordedEvent> failures = events.stream()
+                .filter(e -> e.getEventType().getName().equals("org.gli58.game.LockFailed"))
+                .collect(toList());
+        assertThat(failures).hasSize(1);
+        assertThat(failures.get(0).getString("cityName")).isEqualTo("Concord");
+        assertThat(failures.get(0).getBoolean("fromCity")).isFalse();
+        assertThat(failures.get(0).getLong("monsterId")).isEqualTo(1);
+    }
+
+    private static List<RecordedEvent> record(Runnable action) throws IOException {
+        Path file = Files.createTempFile("monster-events", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : Arrays.asList("MoveCommitted", "LockFailed", "MonsterTrapped",
+                    "MonsterTired", "CityDestroyed")) {
+                recording.enable("org.gli58.game." + name);
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
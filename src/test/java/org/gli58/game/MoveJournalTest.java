@@ -0,0 +1,137 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MoveJournalTest {
+
+    @Rule
+    public TemporaryFolder journalFolder = new TemporaryFolder();
+
+    @Test
+    public void testSameSeedSameGame() {
+        CapturingEventHandler first = new CapturingEventHandler();
+        Game game = seededGame(42, first);
+        game.startGame();
+
+        CapturingEventHandler second = new CapturingEventHandler();
+        Game again = seededGame(42, second);
+        again.startGame();
+
+        assertThat(first.getEventStrings()).isNotEmpty();
+        assertThat(second.getEventStrings()).isEqualTo(first.getEventStrings());
+        assertThat(again.getCities()).isEqualTo(game.getCities());
+        assertThat(statuses(again)).isEqualTo(statuses(game));
+    }
+
+    @Test
+    public void testReplayingVirtualClockGame() throws Exception {
+        Path journal = journalFolder.newFile("virtual-clock.journal").toPath();
+        assertReplaysTheSame(new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), 1000)
+                .minMoves(10_000)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .seed(7), journal);
+    }
+
+    @Test
+    public void testReplayingLockstepGame() throws Exception {
+        Path journal = journalFolder.newFile("lockstep.journal").toPath();
+        assertReplaysTheSame(new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), 3000)
+                .minMoves(1000)
+                .threads(4)
+                .engine(Engine.LOCKSTEP), journal);
+    }
+
+    @Test
+    public void testReplayingLockFreeGameUnderContention() throws Exception {
+        Path journal = journalFolder.newFile("lock-free.journal").toPath();
+        assertReplaysTheSame(new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), 2000)
+                .minMoves(500)
+                .threads(8)
+                .occupancy(Occupancy.LOCK_FREE)
+                .durationProvider(monster -> 0), journal);
+    }
+
+    @Test
+    public void testReadingJournalInWindows() throws Exception {
+        Path journal = journalFolder.newFile("windows.journal").toPath();
+        new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), 100)
+                .minMoves(100)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .seed(3)
+                .journal(journal)
+                .eventHandler(event -> {})
+                .build()
+                .startGame();
+
+        //windows that end within records
+        MoveJournal.Records whole = MoveJournal.read(journal);
+        MoveJournal.Records windowed = MoveJournal.read(journal, 100);
+
+        assertThat(windowed.size()).isEqualTo(whole.size()).isGreaterThan(100);
+        assertThat(windowed.types).isEqualTo(whole.types);
+        assertThat(windowed.monsterIds).isEqualTo(whole.monsterIds);
+        assertThat(windowed.cities).isEqualTo(whole.cities);
+        assertThat(windowed.values).isEqualTo(whole.values);
+    }
+
+    @Test
+    public void testIdsThatDontFitAreNotJournaled() throws Exception {
+        Path file = journalFolder.newFile("ids.journal").toPath();
+        MoveJournal journal = MoveJournal.create(file, 2, 10, 100);
+
+        assertThatThrownBy(() -> journal.moved(1, 3, Integer.MAX_VALUE + 1L))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> journal.fought(Integer.MAX_VALUE + 1L, 3, 2))
+                .isInstanceOf(IllegalArgumentException.class);
+        journal.moved(1, 3, Integer.MAX_VALUE);
+        journal.close();
+
+        MoveJournal.Records records = MoveJournal.read(file);
+        assertThat(records.size()).isEqualTo(1);
+        assertThat(records.values[0]).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    private void assertReplaysTheSame(Game.Builder builder, Path journal) {
+        CapturingEventHandler played = new CapturingEventHandler();
+        Game game = builder.journal(journal).eventHandler(played).build();
+        game.startGame();
+
+        //a new map, as the game removed the destroyed cities from its own
+        CapturingEventHandler replayed = new CapturingEventHandler();
+        Game replay = new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), game.getMonsters().size())
+                .engine(Engine.REPLAY)
+                .journal(journal)
+                .eventHandler(replayed)
+                .build();
+        replay.startGame();
+
+        assertThat(replayed.getEventStrings()).isEqualTo(played.getEventStrings());
+        assertThat(replay.getCities()).isEqualTo(game.getCities());
+        assertThat(statuses(replay)).isEqualTo(statuses(game));
+    }
+
+    private Game seededGame(long seed, CapturingEventHandler eventHandler) {
+        Set<City> cities = MapIO.getCitiesFromClasspathResource("map.txt");
+        return new Game.Builder(cities, 500)
+                .minMoves(1000)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .seed(seed)
+                .eventHandler(eventHandler)
+                .build();
+    }
+
+    private static Map<Long, Monster.Status> statuses(Game game) {
+        return game.getMonsters().stream().collect(Collectors.toMap(Monster::getId, Monster::getStatus));
+    }
+}
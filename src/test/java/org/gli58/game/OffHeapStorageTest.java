@@ -0,0 +1,200 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapStorageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameGameOnAndOffTheHeap() {
+        for (Engine engine : new Engine[]{Engine.VIRTUAL_CLOCK, Engine.LOCKSTEP}) {
+            List<String> worldOnHeap = new ArrayList<>();
+            List<String> eventsOnHeap = playEntireWorld(engine, Storage.HEAP, worldOnHeap);
+
+            List<String> worldOffHeap = new ArrayList<>();
+            List<String> eventsOffHeap = playEntireWorld(engine, Storage.OFF_HEAP, worldOffHeap);
+
+            assertThat(eventsOnHeap).isNotEmpty();
+            assertThat(eventsOffHeap).as(engine.toString()).isEqualTo(eventsOnHeap);
+            assertThat(worldOffHeap).as(engine.toString()).isEqualTo(worldOnHeap);
+        }
+    }
+
+    @Test
+    public void playingEntireWorldOffTheHeapUnderContention() {
+        final Set<City> cities = MapIO.getCitiesFromClasspathResource("map.txt");
+        String map = MapIO.writeCitiesAsString(cities);
+        CapturingEventHandler capturingEventHandler = new CapturingEventHandler();
+
+        Game game = new Game.Builder(cities, 2000)
+                .minMoves(500)
+                .threads(8)
+                .occupancy(Occupancy.LOCK_FREE)
+                .storage(Storage.OFF_HEAP)
+                .durationProvider(monster -> 0)
+                .eventHandler(capturingEventHandler)
+                .build();
+
+        GameResult result = game.startGame();
+
+        assertThat(result.getCities()).hasSize(cities.size() - capturingEventHandler.getEventStrings().size());
+        //roads to destroyed cities are removed from the map
+        assertThat(result.getCities()).allMatch(city -> result.getCities().containsAll(city.getNeighbors().values()));
+        assertThat(result.getMonsterCount(Monster.Status.ACTIVE)).isZero();
+
+        //the game was played on a copy off the heap, the map given is left as it is
+        assertThat(game.getCityGraph().getStorage()).isEqualTo(Storage.OFF_HEAP);
+        CityGraph graph = cities.iterator().next().getGraph();
+        assertThat(graph.getStorage()).isEqualTo(Storage.HEAP);
+        assertThat(graph.neighbors).isNotNull();
+        assertThat(MapIO.writeCitiesAsString(cities)).isEqualTo(map);
+    }
+
+    @Test
+    public void sameGraphOnAndOffTheHeap() throws IOException {
+        CityGraph graph = MapIO.getCityGraphFromClasspathResource("map.txt");
+        String cities = MapIO.writeCitiesAsString(graph.getCities());
+        //buffers of 64 bytes
+        CityGraph offHeap = graph.inStorage(Storage.OFF_HEAP, 6);
+        assertThat(graph.getStorage()).isEqualTo(Storage.HEAP);
+        assertThat(offHeap.getStorage()).isEqualTo(Storage.OFF_HEAP);
+
+        assertThat(MapIO.writeCitiesAsString(offHeap.getCities())).isEqualTo(cities);
+        for (int id = 0; id < graph.size(); id++) {
+            assertThat(offHeap.indexOf(graph.getName(id))).isEqualTo(id);
+        }
+        assertThat(offHeap.indexOf("Atlantis")).isEqualTo(CityGraph.NO_CITY);
+        assertThat(MapIO.writeCitiesAsString(offHeap.renumbered(CityOrder.REVERSE_CUTHILL_MCKEE).getCities()))
+                .isEqualTo(MapIO.writeCitiesAsString(graph.renumbered(CityOrder.REVERSE_CUTHILL_MCKEE).getCities()));
+
+        Path image = folder.getRoot().toPath().resolve("map.img");
+        CityGraphImage.write(offHeap, image);
+        assertThat(MapIO.writeCitiesAsString(CityGraphImage.read(image).getCities())).isEqualTo(cities);
+
+        offHeap.removeCity(0);
+        CityGraph onHeap = offHeap.inStorage(Storage.HEAP);
+        graph.removeCity(0);
+        assertThat(onHeap.getStorage()).isEqualTo(Storage.HEAP);
+        assertThat(MapIO.writeCitiesAsString(onHeap.getCities())).isEqualTo(MapIO.writeCitiesAsString(graph.getCities()));
+        assertThat(MapIO.writeCitiesAsString(offHeap.getCities())).isEqualTo(MapIO.writeCitiesAsString(graph.getCities()));
+    }
+
+    @Test
+    public void readingWorldOffTheHeapKeepsItsRoadsAndNamesOffTheHeap() {
+        //a grid of 300 x 300 cities
+        int side = 300;
+        int cityCount = side * side;
+        CityGraph.Builder builder = new CityGraph.Builder();
+        for (int i = 0; i < cityCount; i++) {
+            int id = builder.addCity("city" + i);
+            if (i % side != side - 1) {
+                builder.addNeighbor(id, Direction.EAST, builder.referenceCity("city" + (i + 1)));
+            }
+            if (i + side < cityCount) {
+                builder.addNeighbor(id, Direction.SOUTH, builder.referenceCity("city" + (i + side)));
+            }
+        }
+        Path image = folder.getRoot().toPath().resolve("grid.img");
+        CityGraphImage.write(builder.build(), image);
+
+        //once before measuring, so loading classes isn't measured
+        CityGraphImage.read(image, Storage.OFF_HEAP);
+        CityGraphImage.read(image, Storage.HEAP);
+
+        long onHeap = allocatedBytes(() -> CityGraphImage.read(image, Storage.HEAP));
+        long offHeap = allocatedBytes(() -> CityGraphImage.read(image, Storage.OFF_HEAP));
+
+        //roads and name offsets are 20 bytes per city, which cities are on the map one.
+        //off the heap, not even a bit per city is left on it
+        assertThat(onHeap).isGreaterThan(21L * cityCount);
+        assertThat(offHeap).isLessThan(cityCount / 8);
+
+        //nor for the table the names are looked up in
+        CityGraph graph = CityGraphImage.read(image, Storage.OFF_HEAP);
+        long lookup = allocatedBytes(() -> assertThat(graph.indexOf("city4242")).isEqualTo(4242));
+        assertThat(lookup).isLessThan(cityCount / 8);
+    }
+
+    private static long allocatedBytes(Runnable runnable) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        runnable.run();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+    }
+
+    @Test
+    public void stateSpanningManyBuffers() {
+        CityGraph onHeap = MapIO.getCityGraphFromClasspathResource("map.txt");
+        //buffers of 64 bytes
+        CityGraph graph = onHeap.inStorage(Storage.OFF_HEAP, 6);
+        OffHeapGameState state = new OffHeapGameState(graph, 1001, 6);
+
+        for (int city = 0; city < graph.size(); city++) {
+            for (Direction direction : CityGraph.DIRECTIONS) {
+                assertThat(state.getNeighbor(city, direction.ordinal())).isEqualTo(onHeap.getNeighbor(city, direction));
+            }
+        }
+
+        state.setCityState(70, 3);
+        assertThat(state.compareAndSetCityState(70, Game.VACANT, 5)).isFalse();
+        assertThat(state.compareAndSetCityState(70, 3, Game.DESTROYED)).isTrue();
+        assertThat(state.isDestroyed(70)).isTrue();
+        assertThat(state.isDestroyed(69)).isFalse();
+        assertThat(state.isDestroyed(71)).isFalse();
+
+        //statuses of 4 monsters share an int
+        byte killed = (byte) Monster.Status.KILLED.ordinal();
+        byte tired = (byte) Monster.Status.TIRED.ordinal();
+        assertThat(state.compareAndSetMonsterStatus(1000, (byte) 0, killed)).isTrue();
+        assertThat(state.compareAndSetMonsterStatus(999, (byte) 0, tired)).isTrue();
+        assertThat(state.compareAndSetMonsterStatus(1000, (byte) 0, tired)).isFalse();
+        assertThat(state.getMonsterStatus(1000)).isEqualTo(killed);
+        assertThat(state.getMonsterStatus(999)).isEqualTo(tired);
+        assertThat(state.getMonsterStatus(998)).isZero();
+
+        state.setMonsterCity(1000, 42);
+        state.setMoveCount(1000, 7);
+        assertThat(state.getMonsterCity(1000)).isEqualTo(42);
+        assertThat(state.getMonsterCity(999)).isEqualTo(CityGraph.NO_CITY);
+        assertThat(state.getMoveCount(1000)).isEqualTo(7);
+
+        //the roads of the state are the ones of the graph
+        state.removeNeighbor(0, Direction.EAST.ordinal());
+        assertThat(graph.getNeighbor(0, Direction.EAST)).isEqualTo(CityGraph.NO_CITY);
+    }
+
+    private List<String> playEntireWorld(Engine engine, Storage storage, List<String> remainingWorld) {
+        final Set<City> cities = MapIO.getCitiesFromClasspathResource("map.txt");
+
+        List<String> events = new ArrayList<>();
+        Game game = new Game.Builder(cities, 500)
+                .minMoves(200)
+                .threads(1)
+                .engine(engine)
+                .storage(storage)
+                .seed(17)
+                .eventHandler(event -> events.add(event.getAsString()))
+                .build();
+
+        game.startGame();
+
+        remainingWorld.addAll(Arrays.asList(MapIO.writeCitiesAsString(game.getCities()).split(System.lineSeparator())));
+        remainingWorld.sort(null);
+        return events;
+    }
+}
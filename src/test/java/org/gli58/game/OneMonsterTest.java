@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Stream;
@@ -35,4 +36,24 @@ public class OneMonsterTest {
             assertThat(monsters.iterator().next().getStatus()).isEqualTo(Monster.Status.TRAPPED);
         }
     }
+
+    @Test
+    public void oneMonsterOnHandBuiltMap() {
+        City acton = new City("Acton");
+        City concord = new City("Concord");
+        acton.addNeighbor(Direction.EAST, concord);
+        concord.addNeighbor(Direction.WEST, acton);
+        assertThat(acton.getNeighbor(Direction.EAST)).isSameAs(concord);
+
+        Game game = new Game.Builder(new HashSet<>(Arrays.asList(acton, concord)), 1)
+                .minMoves(10)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .build();
+
+        game.startGame();
+
+        Monster monster = game.getMonsters().iterator().next();
+        assertThat(monster.getStatus()).isEqualTo(Monster.Status.TIRED);
+        assertThat(game.getCities()).containsExactlyInAnyOrder(acton, concord);
+    }
 }
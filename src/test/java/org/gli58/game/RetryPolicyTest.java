@@ -0,0 +1,125 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void spinsThenFallsBackWhileCityIsLocked() throws InterruptedException {
+        List<String> lines = Arrays.asList(
+                "Acton east=Concord",
+                "Concord west=Acton"
+        );
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        RecordingScheduler scheduler = new RecordingScheduler();
+
+        Game game = new Game.Builder(cities, 1)
+                .minMoves(100)
+                .scheduler(scheduler)
+                .placementProvider((cityList, monster) -> new City("Acton"))
+                .durationProvider(monster -> 7)
+                .retryPolicy(new SpinRetryPolicy(3, (monster, attempt) -> 42))
+                .eventHandler(event -> {})
+                .build();
+
+        game.prepareMonsters();
+        Monster monster = game.getMonster(1);
+        monster.run();
+
+        //keep Concord locked by another thread, so the monster cannot move there
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch moved = new CountDownLatch(1);
+        Thread lockHolder = new Thread(() -> {
+            Lock lock = game.getCityLock(game.getCityId(new City("Concord")));
+            lock.lock();
+            try {
+                locked.countDown();
+                moved.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        lockHolder.start();
+        locked.await();
+
+        monster.run();
+        moved.countDown();
+        lockHolder.join();
+
+        //three spins, then the fallback schedules the fourth retry
+        assertThat(monster.getLockFailureCount()).isEqualTo(4);
+        assertThat(monster.getRetryCount()).isEqualTo(4);
+        assertThat(game.getLockFailureCount()).isEqualTo(4);
+        assertThat(game.getRetryCount()).isEqualTo(4);
+        assertThat(scheduler.delays).containsExactly(7L, 42L);
+
+        //the failed move is tried again, it is not counted as a move
+        monster.run();
+        assertThat(monster.getOccupiedCityId()).isEqualTo(game.getCityId(new City("Concord")));
+        assertThat(scheduler.delays).containsExactly(7L, 42L, 7L);
+    }
+
+    @Test
+    public void exponentialBackoffStaysBelowDoubledCeiling() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(10, 100);
+        Monster monster = new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), 1).build().getMonster(1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(policy.getRetryDelayInMillis(monster, 1)).isBetween(0, 10);
+            assertThat(policy.getRetryDelayInMillis(monster, 2)).isBetween(0, 20);
+            assertThat(policy.getRetryDelayInMillis(monster, 4)).isBetween(0, 80);
+            assertThat(policy.getRetryDelayInMillis(monster, 40)).isBetween(0, 100);
+        }
+    }
+
+    @Test
+    public void exponentialBackoffIsSeeded() {
+        assertThat(backoffDelays(17)).isEqualTo(backoffDelays(17));
+        assertThat(backoffDelays(17)).isNotEqualTo(backoffDelays(18));
+    }
+
+    private static List<Integer> backoffDelays(long seed) {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(10, 1000);
+        Game game = new Game.Builder(MapIO.getCitiesFromClasspathResource("map.txt"), 2)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .seed(seed)
+                .build();
+        game.prepareMonsters();
+
+        List<Integer> delays = new ArrayList<>();
+        for (int attempt = 1; attempt <= 20; attempt++) {
+            delays.add(policy.getRetryDelayInMillis(game.getMonster(1 + attempt % 2), attempt));
+        }
+        return delays;
+    }
+
+    //records the delays of scheduled moves instead of running them
+    private static class RecordingScheduler extends ScheduledThreadPoolExecutor {
+        private final List<Long> delays = new ArrayList<>();
+
+        RecordingScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            delays.add(delay);
+            return null;
+        }
+    }
+}
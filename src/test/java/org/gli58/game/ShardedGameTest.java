@@ -0,0 +1,79 @@
+package org.gli58.game;
+
+import org.gli58.game.event.EventHandler;
+import org.gli58.game.event.FightEvent;
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardedGameTest {
+
+    @Test
+    public void testSameGameForAnyNumberOfWorkers() {
+        CapturingEventHandler onOne = new CapturingEventHandler();
+        GameResult one = shardedGame(1, onOne).startGame();
+
+        CapturingEventHandler onThree = new CapturingEventHandler();
+        GameResult three = shardedGame(3, onThree).startGame();
+
+        assertThat(onOne.getEventStrings()).isNotEmpty();
+        assertThat(onThree.getEventStrings()).isEqualTo(onOne.getEventStrings());
+        assertThat(three.getCities()).isEqualTo(one.getCities());
+        assertThat(three.getMonsterCountsByStatus()).isEqualTo(one.getMonsterCountsByStatus());
+        assertThat(three.getMoveCount()).isEqualTo(one.getMoveCount());
+    }
+
+    @Test
+    public void testFinalWorld() {
+        CapturingEventHandler eventHandler = new CapturingEventHandler();
+        List<FightEvent> fights = new ArrayList<>();
+        GameResult result = shardedGame(4, event -> {
+            fights.add((FightEvent) event);
+            eventHandler.handle(event);
+        }).startGame();
+
+        int cityCount = MapIO.getCitiesFromClasspathResource("map.txt").size();
+        assertThat(result.getFightCount()).isEqualTo(eventHandler.getEventStrings().size());
+        assertThat(result.getCities()).hasSize(cityCount - eventHandler.getEventStrings().size());
+        assertThat(result.getMonsterCount(Monster.Status.ACTIVE)).isZero();
+        assertThat(result.getMonsterCountsByStatus().values().stream().mapToLong(Long::longValue).sum()).isEqualTo(600);
+
+        //monsters of the fights are only known by their id on the coordinator
+        assertThat(fights.stream().mapToLong(fight -> fight.getMonsters().size()).sum())
+                .isEqualTo(result.getMonsterCount(Monster.Status.KILLED));
+        assertThat(fights).flatExtracting(FightEvent::getMonsters)
+                .extracting(Monster::getStatus)
+                .containsOnly(Monster.Status.KILLED);
+
+        //written in the usual format, with no roads left to destroyed cities
+        String written = MapIO.writeCitiesAsString(result.getCities());
+        Set<City> reread = MapIO.getCitiesFromStream(Arrays.stream(written.split("\n")));
+        assertThat(reread).hasSize(result.getCities().size());
+        assertThat(reread).allMatch(city -> result.getCities().containsAll(city.getNeighbors().values()));
+    }
+
+    @Test
+    public void testMoreWorkersThanCities() {
+        Set<City> cities = MapIO.getCitiesFromStream(Arrays.asList("Acton east=Concord", "Concord west=Acton").stream());
+
+        assertThatThrownBy(() -> new ShardedGame.Builder(CityGraph.of(cities), 2).workers(3).build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ShardedGame shardedGame(int workers, EventHandler eventHandler) {
+        return new ShardedGame.Builder(MapIO.getCityGraphFromClasspathResource("map.txt"), 600)
+                .minMoves(300)
+                .workers(workers)
+                .seed(9)
+                .workerJvmArgs("-Xmx64m", "-XX:TieredStopAtLevel=1")
+                .eventHandler(eventHandler)
+                .build();
+    }
+}
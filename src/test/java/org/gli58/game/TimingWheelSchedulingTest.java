@@ -0,0 +1,84 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TimingWheelSchedulingTest {
+
+    @Test
+    public void twoMonsterFightInLexington() {
+        List<String> lines = Arrays.asList(
+                "Acton east=Concord",
+                "Concord east=Lexington west=Acton",
+                "Lexington east=Belmont west=Concord",
+                "Belmont east=Boston west=Lexington",
+                "Boston west=Belmont"
+        );
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        CapturingEventHandler capturingEventHandler = new CapturingEventHandler();
+
+        Game game = new Game.Builder(cities, 2)
+                .minMoves(100)
+                .threads(2)
+                .scheduling(Scheduling.TIMING_WHEEL)
+                .placementProvider((cityList, monster) -> cityList.stream()
+                        .filter(c -> c.getName().equals(monster.getId() == 1 ? "Acton" : "Boston")).findAny().get())
+                .moveProvider((monster, directions) -> monster.getId() == 1 ? Direction.EAST : Direction.WEST)
+                .durationProvider(monster -> monster.getId() == 1 ? 100 : 120)
+                .eventHandler(capturingEventHandler)
+                .build();
+
+        game.startGame();
+
+        assertThat(game.getCities())
+                .hasSize(4)
+                .doesNotContain(new City("Lexington"));
+
+        assertThat(capturingEventHandler.getEventStrings())
+                .containsExactly("Lexington has been destroyed by monster 1 and monster 2!");
+    }
+
+    @Test
+    public void playingEntireWorldWithLongAndShortStays() {
+        final Set<City> cities = MapIO.getCitiesFromClasspathResource("map.txt");
+        CapturingEventHandler capturingEventHandler = new CapturingEventHandler();
+
+        //wake-ups right away, within a turn of the wheel and a few turns away
+        Game game = new Game.Builder(cities, 2000)
+                .minMoves(5)
+                .threads(4)
+                .scheduling(Scheduling.TIMING_WHEEL)
+                .durationProvider(monster -> (int) (monster.getId() % 3) * 600)
+                .eventHandler(capturingEventHandler)
+                .build();
+
+        game.startGame();
+
+        assertThat(game.getMonsters())
+                .hasSize(2000)
+                .extracting(Monster::getStatus)
+                .doesNotContain(Monster.Status.ACTIVE, Monster.Status.ERRORED);
+
+        int fights = capturingEventHandler.getEventStrings().size();
+        assertThat(game.getCities()).hasSize(cities.size() - fights);
+    }
+
+    @Test
+    public void testTimingWheelWithExecutor() {
+        final Set<City> cities = MapIO.getCitiesFromClasspathResource("map.txt");
+
+        assertThatThrownBy(() -> new Game.Builder(cities, 2)
+                .scheduling(Scheduling.TIMING_WHEEL)
+                .scheduler(new ScheduledThreadPoolExecutor(1))
+                .build())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -6,10 +6,12 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -175,4 +177,39 @@ public class TwoMonsterTest {
             //rest of assertion is identical as that of Lexington
         }
     }
+
+    @Test
+    public void fightIsReportedWithCitiesUnlocked() {
+        List<String> lines = Arrays.asList(
+                "Acton east=Concord",
+                "Concord east=Lexington west=Acton",
+                "Lexington east=Belmont west=Concord",
+                "Belmont east=Boston west=Lexington",
+                "Boston west=Belmont"
+        );
+        final Set<City> cities = MapIO.getCitiesFromStream(lines.stream());
+        List<Boolean> lockHeld = new ArrayList<>();
+        Game[] game = new Game[1];
+
+        game[0] = new Game.Builder(cities, 2)
+                .minMoves(100)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .placementProvider(placementProvider)
+                .moveProvider(moveProvider)
+                .durationProvider(monster -> monster.getId() == 1 ? 100 : 120)
+                .eventHandler(event -> {
+                    CityGraph graph = game[0].getCityGraph();
+                    for (int city = 0; city < graph.size(); city++) {
+                        lockHeld.add(((ReentrantLock) game[0].getCityLock(city)).isHeldByCurrentThread());
+                    }
+                    capturingEventHandler.handle(event);
+                })
+                .build();
+
+        game[0].startGame();
+
+        assertThat(capturingEventHandler.getEventStrings())
+                .containsExactly("Lexington has been destroyed by monster 1 and monster 2!");
+        assertThat(lockHeld).isNotEmpty().doesNotContain(true);
+    }
 }
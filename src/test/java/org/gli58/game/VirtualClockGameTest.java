@@ -0,0 +1,111 @@
+package org.gli58.game;
+
+import org.gli58.game.util.MapIO;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VirtualClockGameTest {
+
+    private final List<String> lines = Arrays.asList(
+            "Acton east=Concord",
+            "Concord east=Lexington west=Acton",
+            "Lexington east=Belmont west=Concord",
+            "Belmont east=Boston west=Lexington",
+            "Boston west=Belmont"
+    );
+
+    private MonsterPlacementProvider placementProvider;
+    private MonsterMoveProvider moveProvider;
+    private CapturingEventHandler capturingEventHandler;
+
+    @Before
+    public void setup() {
+        placementProvider = (cities, monster) -> {
+            String name = monster.getId() == 1 ? "Acton" : "Boston";
+            return cities.stream().filter(c -> c.getName().equals(name)).findAny().get();
+        };
+
+        moveProvider = (monster, directions) -> monster.getId() == 1 ? Direction.EAST : Direction.WEST;
+
+        capturingEventHandler = new CapturingEventHandler();
+    }
+
+    @Test
+    public void twoMonsterFightInLexington() {
+        try (Stream<String> inputCities = lines.stream()) {
+            final Set<City> cities = MapIO.getCitiesFromStream(inputCities);
+
+            Game game = twoMonsterGame(cities, monster -> monster.getId() == 1 ? 100 : 120);
+            game.startGame();
+
+            assertThat(game.getCities())
+                    .hasSize(4)
+                    .doesNotContain(new City("Lexington"));
+
+            assertThat(capturingEventHandler.getEventStrings())
+                    .containsExactly("Lexington has been destroyed by monster 1 and monster 2!");
+
+            assertThat(game.getMonsters())
+                    .extracting(Monster::getStatus)
+                    .containsOnly(Monster.Status.KILLED);
+        }
+    }
+
+    @Test
+    public void twoMonsterFightInBelmont() {
+        //both monsters want to move at 500ms. monster 2 scheduled its move first so it moves first
+        try (Stream<String> inputCities = lines.stream()) {
+            final Set<City> cities = MapIO.getCitiesFromStream(inputCities);
+
+            Game game = twoMonsterGame(cities, monster -> monster.getId() == 1 ? 100 : 250);
+            game.startGame();
+
+            assertThat(game.getCities())
+                    .hasSize(4)
+                    .doesNotContain(new City("Belmont"));
+
+            assertThat(capturingEventHandler.getEventStrings())
+                    .containsExactly("Belmont has been destroyed by monster 1 and monster 2!");
+        }
+    }
+
+    @Test
+    public void playingEntireWorldXWithoutWaiting() {
+        final Set<City> cities = MapIO.getCitiesFromClasspathResource("map.txt");
+
+        //would take minutes of wall-clock time with the real-time engine
+        Game game = new Game.Builder(cities, 1000)
+                .minMoves(10_000)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .eventHandler(capturingEventHandler)
+                .build();
+
+        game.startGame();
+
+        assertThat(game.getMonsters())
+                .hasSize(1000)
+                .extracting(Monster::getStatus)
+                .doesNotContain(Monster.Status.ACTIVE, Monster.Status.ERRORED);
+
+        //every fight destroys exactly one city
+        assertThat(game.getCities()).hasSize(cities.size() - capturingEventHandler.getEventStrings().size());
+    }
+
+    private Game twoMonsterGame(Set<City> cities, ResidenceDurationProvider durationProvider) {
+        return new Game.Builder(cities, 2)
+                .minMoves(100)
+                .engine(Engine.VIRTUAL_CLOCK)
+                .placementProvider(placementProvider)
+                .moveProvider(moveProvider)
+                .durationProvider(durationProvider)
+                .eventHandler(capturingEventHandler)
+                .build();
+    }
+}
@@ -1,6 +1,9 @@
 package org.gli58.game.util;
 
 import org.gli58.game.City;
+import org.gli58.game.CityGraph;
+import org.gli58.game.Direction;
+import org.gli58.game.exceptions.MapParsingException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -9,15 +12,19 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.joining;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 
 //import java.util.stream.Collectors;
 
@@ -52,6 +59,35 @@ public class MapParsingAndSavingTest {
         }
     }
 
+    @Test
+    public void testParsingIntoCityGraph() {
+        List<String> lines = Arrays.asList(
+            "Concord east=Lexington west=Acton",
+            "Lexington west=Concord"
+        );
+
+        final CityGraph graph = MapIO.getCityGraphFromStream(lines.stream());
+
+        //cities on the map come first, in the order of their lines
+        assertThat(graph.size()).isEqualTo(3);
+        assertThat(graph.getName(0)).isEqualTo("Concord");
+        assertThat(graph.getName(1)).isEqualTo("Lexington");
+        assertThat(graph.getName(2)).isEqualTo("Acton");
+
+        assertThat(graph.getNeighbor(0, Direction.EAST)).isEqualTo(1);
+        assertThat(graph.getNeighbor(0, Direction.WEST)).isEqualTo(2);
+        assertThat(graph.getNeighbor(0, Direction.NORTH)).isEqualTo(CityGraph.NO_CITY);
+        assertThat(graph.getNeighbor(1, Direction.WEST)).isEqualTo(0);
+
+        //Acton only shows up as a neighbor
+        assertThat(graph.isOnMap(2)).isFalse();
+        assertThat(graph.getCities().size()).isEqualTo(2);
+
+        City concord = graph.getCity(0);
+        assertThat(concord).isEqualTo(new City("Concord"));
+        assertThat(concord.getNeighbor(Direction.EAST).getName()).isEqualTo("Lexington");
+    }
+
     @Test
     public void testParsingAndSavingTheEntireMap() throws IOException {
 
@@ -77,4 +113,243 @@ public class MapParsingAndSavingTest {
         assertThat(inputIter.hasNext()).isFalse();
         assertThat(outputIter.hasNext()).isFalse();
     }
+
+    @Test
+    public void testParsingFileSameAsStream() throws IOException {
+        File inputFile = new File(this.getClass().getClassLoader().getResource("map.txt").getFile());
+
+        CityGraph fromFile = MapIO.getCityGraphFromFile(inputFile.toPath());
+        CityGraph fromStream;
+        try (Stream<String> lines = Files.lines(inputFile.toPath())) {
+            fromStream = MapIO.getCityGraphFromStream(lines);
+        }
+
+        assertThat(fromFile.size()).isEqualTo(fromStream.size());
+        assertThat(MapIO.writeCitiesAsString(fromFile.getCities()))
+                .isEqualTo(MapIO.writeCitiesAsString(fromStream.getCities()));
+    }
+
+    @Test
+    public void testParsingFileInWindowsWithCarriageReturns() throws IOException {
+        List<String> lines = Arrays.asList(
+            "Denalmo north=Agixo-A south=Amolusnisnu east=Elolesme west=Migina",
+            "Asnu north=Ago-Mo south=Emexisno east=Dinexe west=Amiximine",
+            "Esmosno north=Emexege south=Anegu east=Axesminilmo west=Dosmolixo",
+            "Age north=Enusmu south=Amilolna east=Mo-Mulu west=Denalmo"
+        );
+        File file = mapOutputFolder.newFile("crlf.txt");
+        Files.write(file.toPath(), String.join("\r\n", lines).getBytes(StandardCharsets.UTF_8));
+
+        //windows smaller than two lines, so every window ends within a line
+        CityGraph graph = MappedMapParser.parse(file.toPath(), 100);
+
+        assertThat(graph.getCities().size()).isEqualTo(4);
+        assertThat(graph.getNeighbor(3, Direction.WEST)).isEqualTo(0);
+        assertThat(MapIO.writeCitiesAsString(graph.getCities()))
+                .isEqualTo(MapIO.writeCitiesAsString(MapIO.getCitiesFromStream(lines.stream())));
+    }
+
+    @Test
+    public void testParsingFileWithTrailingSpaces() throws IOException {
+        List<String> lines = Arrays.asList(
+            "Acton east=Concord ",
+            "Concord east=Lexington west=Acton  ",
+            "Lexington west=Concord"
+        );
+        File file = mapOutputFolder.newFile("trailing.txt");
+        Files.write(file.toPath(), lines);
+
+        //same as the lines without the spaces, which split() drops
+        CityGraph graph = MapIO.getCityGraphFromFile(file.toPath());
+        assertThat(MapIO.writeCitiesAsString(graph.getCities()))
+                .isEqualTo(MapIO.writeCitiesAsString(MapIO.getCitiesFromStream(lines.stream())));
+        assertThat(graph.getNeighbor(graph.indexOf("Concord"), Direction.WEST)).isEqualTo(graph.indexOf("Acton"));
+
+        //not copied as they are when written
+        assertThat(graph.getSourceLineOffset(graph.indexOf("Acton"))).isEqualTo(CityGraph.NO_LINE);
+        assertThat(graph.getSourceLineOffset(graph.indexOf("Lexington"))).isNotEqualTo(CityGraph.NO_LINE);
+    }
+
+    @Test
+    public void testParsingFileReportsLineNumber() throws IOException {
+        File file = mapOutputFolder.newFile("bad.txt");
+        Files.write(file.toPath(), Arrays.asList(
+            "Concord east=Lexington west=Acton",
+            "Lexington up=Concord"
+        ));
+
+        assertThatThrownBy(() -> MapIO.getCityGraphFromFile(file.toPath()))
+                .isInstanceOf(MapParsingException.class)
+                .hasMessage("line 2: unknown neighbor type up=Concord: Lexington up=Concord");
+    }
+
+    @Test
+    public void testParsingFileInChunksSameAsOneThread() throws IOException {
+        File inputFile = new File(this.getClass().getClassLoader().getResource("map.txt").getFile());
+
+        assertSameGraph(ParallelMapParser.parse(inputFile.toPath(), 4, 1000), MappedMapParser.parse(inputFile.toPath()));
+    }
+
+    @Test
+    public void testParsingFileInChunksWithCitiesInMoreThanOneChunk() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            //roads to cities with no line of their own, some of them only referenced in later chunks
+            lines.add("City" + i + " north=Far" + (i * 7 % 100) + " east=City" + (i + 1));
+        }
+        //lines of a city in more than one chunk add to each other
+        lines.add(421, "City3 south=City421");
+        lines.add("City42 west=Far7");
+        lines.add("Far3 south=City0");
+        File file = mapOutputFolder.newFile("spread.txt");
+        Files.write(file.toPath(), lines);
+
+        CityGraph oneThread = MappedMapParser.parse(file.toPath());
+        for (int parallelism = 2; parallelism <= 8; parallelism *= 2) {
+            assertSameGraph(ParallelMapParser.parse(file.toPath(), parallelism, 100), oneThread);
+        }
+        int city3 = oneThread.indexOf("City3");
+        assertThat(oneThread.getNeighbor(city3, Direction.SOUTH)).isEqualTo(oneThread.indexOf("City421"));
+        assertThat(oneThread.getSourceLineOffset(city3)).isEqualTo(CityGraph.NO_LINE);
+        assertThat(oneThread.getSourceLineOffset(oneThread.indexOf("City4"))).isNotEqualTo(CityGraph.NO_LINE);
+    }
+
+    private static void assertSameGraph(CityGraph chunked, CityGraph oneThread) {
+        assertThat(chunked.size()).isEqualTo(oneThread.size());
+        for (int id = 0; id < oneThread.size(); id++) {
+            assertThat(chunked.getName(id)).isEqualTo(oneThread.getName(id));
+            assertThat(chunked.isOnMap(id)).isEqualTo(oneThread.isOnMap(id));
+            assertThat(chunked.getSourceLineOffset(id)).isEqualTo(oneThread.getSourceLineOffset(id));
+            if (oneThread.getSourceLineOffset(id) != CityGraph.NO_LINE) {
+                assertThat(chunked.getSourceLineLength(id)).isEqualTo(oneThread.getSourceLineLength(id));
+            }
+            for (Direction direction : Direction.values()) {
+                assertThat(chunked.getNeighbor(id, direction)).isEqualTo(oneThread.getNeighbor(id, direction));
+            }
+        }
+    }
+
+    @Test
+    public void testParsingFileInChunksReportsLineNumber() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            lines.add("City" + i + " east=City" + (i + 1));
+        }
+        lines.set(321, "City321 up=City322");
+        File file = mapOutputFolder.newFile("bad.txt");
+        Files.write(file.toPath(), lines);
+
+        assertThatThrownBy(() -> ParallelMapParser.parse(file.toPath(), 4, 100))
+                .isInstanceOf(MapParsingException.class)
+                .hasMessage("line 322: unknown neighbor type up=City322: City321 up=City322");
+    }
+
+    @Test
+    public void testWritingAndLoadingImage() throws IOException {
+        CityGraph graph = MapIO.getCityGraphFromStream(Stream.of(
+            "Acton east=Concord",
+            "Concord east=Lexington west=Acton",
+            "Lexington east=Belmont west=Concord north=Bedford"
+        ));
+        //destroyed cities stay destroyed
+        int concord = graph.indexOf("Concord");
+        graph.removeCity(concord);
+        graph.removeNeighbor(graph.indexOf("Acton"), Direction.EAST);
+        graph.removeNeighbor(graph.indexOf("Lexington"), Direction.WEST);
+
+        File file = mapOutputFolder.newFile("map.img");
+        MapIO.writeCityGraphImage(graph, file.toPath());
+        CityGraph loaded = MapIO.getCityGraphFromImage(file.toPath());
+
+        assertThat(loaded.size()).isEqualTo(graph.size());
+        for (int id = 0; id < graph.size(); id++) {
+            assertThat(loaded.getName(id)).isEqualTo(graph.getName(id));
+            assertThat(loaded.isOnMap(id)).isEqualTo(graph.isOnMap(id));
+            for (Direction direction : Direction.values()) {
+                assertThat(loaded.getNeighbor(id, direction)).isEqualTo(graph.getNeighbor(id, direction));
+            }
+        }
+        assertThat(MapIO.writeCitiesAsString(loaded.getCities()))
+                .isEqualTo(MapIO.writeCitiesAsString(graph.getCities()));
+    }
+
+    @Test
+    public void testLoadingCorruptImage() throws IOException {
+        File inputFile = new File(this.getClass().getClassLoader().getResource("map.txt").getFile());
+        File file = mapOutputFolder.newFile("map.img");
+        MapIO.writeCityGraphImage(MapIO.getCityGraphFromFile(inputFile.toPath()), file.toPath());
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file.toPath(), bytes);
+
+        assertThatThrownBy(() -> MapIO.getCityGraphFromImage(file.toPath()))
+                .isInstanceOf(MapParsingException.class)
+                .hasMessageEndingWith("checksum mismatch");
+
+        assertThatThrownBy(() -> MapIO.getCityGraphFromImage(inputFile.toPath()))
+                .isInstanceOf(MapParsingException.class)
+                .hasMessageEndingWith("not a city graph image");
+    }
+
+    @Test
+    public void testWritingInChunksSameAsPrintWriter() throws IOException {
+        Set<City> cities = MapIO.getCitiesFromClasspathResource("map.txt");
+        //every other city, which is not the map of any graph and gets copied into a new one
+        Set<City> someCities = new LinkedHashSet<>();
+        Iterator<City> iterator = cities.iterator();
+        while (iterator.hasNext()) {
+            someCities.add(iterator.next());
+            if (iterator.hasNext()) {
+                iterator.next();
+            }
+        }
+
+        for (Set<City> written : Arrays.asList(cities, someCities)) {
+            File file = mapOutputFolder.newFile();
+            ParallelMapWriter.write(written, file.toPath(), 4, 100);
+
+            StringWriter expected = new StringWriter();
+            MapIO.writeCities(written, new PrintWriter(expected));
+            assertThat(Files.readAllBytes(file.toPath()))
+                    .isEqualTo(expected.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testWritingSplicesUnchangedLines() throws IOException {
+        File input = mapOutputFolder.newFile("input.txt");
+        Files.write(input.toPath(), (String.join(System.lineSeparator(),
+            "Acton east=Concord",
+            "Concord east=Lexington west=Acton",
+            "Lexington west=Concord east=Belmont",
+            "Belmont east=Boston west=Lexington",
+            "Boston west=Belmont",
+            "Acton north=Bedford",
+            "Bedford south=Acton") + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        CityGraph graph = MapIO.getCityGraphFromFile(input.toPath());
+
+        //lines copied as they are: unchanged ones in the order they would be written
+        assertThat(graph.getSourceLineOffset(graph.indexOf("Concord"))).isEqualTo(19);
+        assertThat(graph.getSourceLineLength(graph.indexOf("Concord"))).isEqualTo("Concord east=Lexington west=Acton".length() + System.lineSeparator().length());
+        assertThat(graph.getSourceLineOffset(graph.indexOf("Lexington"))).isEqualTo(CityGraph.NO_LINE);
+        assertThat(graph.getSourceLineOffset(graph.indexOf("Acton"))).isEqualTo(CityGraph.NO_LINE);
+
+        //Boston is destroyed
+        int boston = graph.indexOf("Boston");
+        graph.removeCity(boston);
+        graph.getCity(graph.indexOf("Belmont")).removeNeighbor(Direction.EAST);
+        assertThat(graph.getSourceLineOffset(graph.indexOf("Belmont"))).isEqualTo(CityGraph.NO_LINE);
+
+        File output = mapOutputFolder.newFile("output.txt");
+        MapIO.writeCitiesToFile(graph.getCities(), output.toPath(), 2);
+        assertThat(new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8))
+                .isEqualTo(MapIO.writeCitiesAsString(graph.getCities()));
+
+        //a changed source file can't be copied from
+        Files.write(input.toPath(), "Bedford south=Acton".getBytes(StandardCharsets.UTF_8));
+        MapIO.writeCitiesToFile(graph.getCities(), output.toPath(), 2);
+        assertThat(new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8))
+                .isEqualTo(MapIO.writeCitiesAsString(graph.getCities()));
+    }
 }